@@ -0,0 +1,87 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+/*
+ * Generates a docker image tarfile (in docker save format) with the given number of layers, each containing the given number
+ * of files of random content, plus a dpkg database in the base layer, so that benchmarks need neither Docker nor network.
+ */
+public class SyntheticImage {
+    public static final String IMAGE_REPO = "synthetic";
+    public static final String IMAGE_TAG = "1.0";
+    private static final String CONFIG_FILENAME = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef.json";
+
+    public static File createImageTarfile(final File dir, final int layerCount, final int filesPerLayer, final int fileSize) throws IOException {
+        final File imageTarfile = new File(dir, String.format("%s_%s.tar", IMAGE_REPO, IMAGE_TAG));
+        final Random random = new Random(layerCount * 31L + filesPerLayer);
+        final List<String> layers = new ArrayList<>(layerCount);
+        try (TarArchiveOutputStream imageTarOutputStream = new TarArchiveOutputStream(new BufferedOutputStream(new FileOutputStream(imageTarfile)))) {
+            imageTarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (int layerIndex = 0; layerIndex < layerCount; layerIndex++) {
+                final String layer = String.format("%064x", layerIndex + 1);
+                layers.add(layer + "/layer.tar");
+                addEntry(imageTarOutputStream, layer + "/layer.tar", createLayerTar(random, layerIndex, filesPerLayer, fileSize));
+            }
+            addEntry(imageTarOutputStream, CONFIG_FILENAME, "{}".getBytes(StandardCharsets.UTF_8));
+            final StringBuilder manifest = new StringBuilder();
+            manifest.append(String.format("[{\"Config\":\"%s\",\"RepoTags\":[\"%s:%s\"],\"Layers\":[", CONFIG_FILENAME, IMAGE_REPO, IMAGE_TAG));
+            for (int i = 0; i < layers.size(); i++) {
+                manifest.append(i == 0 ? "" : ",").append('"').append(layers.get(i)).append('"');
+            }
+            manifest.append("]}]");
+            addEntry(imageTarOutputStream, "manifest.json", manifest.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return imageTarfile;
+    }
+
+    public static void createFileSystem(final File rootDir, final int fileCount, final int fileSize) throws IOException {
+        final Random random = new Random(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            final File file = new File(rootDir, String.format("usr/share/dir%03d/file%05d", i % 100, i));
+            file.getParentFile().mkdirs();
+            try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+                fileOutputStream.write(randomContent(random, fileSize));
+            }
+        }
+    }
+
+    private static byte[] createLayerTar(final Random random, final int layerIndex, final int filesPerLayer, final int fileSize) throws IOException {
+        final ByteArrayOutputStream layerTarBytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream layerTarOutputStream = new TarArchiveOutputStream(layerTarBytes)) {
+            layerTarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            if (layerIndex == 0) {
+                addEntry(layerTarOutputStream, "var/lib/dpkg/status", randomContent(random, fileSize));
+                addEntry(layerTarOutputStream, "etc/os-release", "ID=ubuntu\n".getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < filesPerLayer; i++) {
+                addEntry(layerTarOutputStream, String.format("usr/share/layer%03d/dir%03d/file%05d", layerIndex, i % 100, i), randomContent(random, fileSize));
+            }
+        }
+        return layerTarBytes.toByteArray();
+    }
+
+    private static byte[] randomContent(final Random random, final int size) {
+        final byte[] content = new byte[size];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private static void addEntry(final TarArchiveOutputStream tarOutputStream, final String name, final byte[] content) throws IOException {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(content);
+        tarOutputStream.closeArchiveEntry();
+    }
+}
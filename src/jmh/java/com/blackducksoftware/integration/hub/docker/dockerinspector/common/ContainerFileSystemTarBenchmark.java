@@ -0,0 +1,60 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.SyntheticImage;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.imageinspector.linux.FileSys;
+
+// The tar.gz that Output.createContainerFileSystemTarIfRequested() writes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ContainerFileSystemTarBenchmark {
+
+    @Param({ "5000" })
+    private int fileCount;
+
+    private File workingDir;
+    private File containerFileSystemRootDir;
+    private File containerFileSystemTarFile;
+
+    @Setup(Level.Trial)
+    public void createContainerFileSystem() throws IOException {
+        workingDir = TestUtils.createTempDirectory();
+        containerFileSystemRootDir = new File(workingDir, "containerFileSystem");
+        SyntheticImage.createFileSystem(containerFileSystemRootDir, fileCount, 4096);
+        containerFileSystemTarFile = new File(workingDir, "containerfilesystem.tar.gz");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteContainerFileSystem() {
+        TestUtils.deleteDirIfExists(workingDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteContainerFileSystemTarFile() {
+        FileUtils.deleteQuietly(containerFileSystemTarFile);
+    }
+
+    @Benchmark
+    public File createTarGz() throws IOException, CompressorException {
+        new FileSys(containerFileSystemRootDir).createTarGz(containerFileSystemTarFile);
+        return containerFileSystemTarFile;
+    }
+}
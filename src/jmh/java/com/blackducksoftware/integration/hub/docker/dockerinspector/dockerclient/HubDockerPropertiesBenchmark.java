@@ -0,0 +1,54 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+
+// Writing the properties file handed to the inspector sub-container
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HubDockerPropertiesBenchmark {
+
+    private File workingDir;
+    private HubDockerProperties hubDockerProperties;
+    private String propertiesFilePath;
+
+    @Setup(Level.Trial)
+    public void createHubDockerProperties() throws IOException, IllegalAccessException, NoSuchFieldException {
+        workingDir = TestUtils.createTempDirectory();
+        propertiesFilePath = new File(workingDir, "config/application.properties").getAbsolutePath();
+        final Config config = new Config();
+        config.init();
+        hubDockerProperties = new HubDockerProperties();
+        final Field configField = HubDockerProperties.class.getDeclaredField("config");
+        configField.setAccessible(true);
+        configField.set(hubDockerProperties, config);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkingDir() {
+        TestUtils.deleteDirIfExists(workingDir);
+    }
+
+    @Benchmark
+    public void loadAndSave() throws IOException, IllegalAccessException {
+        hubDockerProperties.load();
+        hubDockerProperties.set("docker.tar", "/opt/blackduck/hub-docker-inspector/target/synthetic_1.0.tar");
+        hubDockerProperties.save(propertiesFilePath);
+    }
+}
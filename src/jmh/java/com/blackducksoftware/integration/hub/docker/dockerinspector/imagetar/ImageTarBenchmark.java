@@ -0,0 +1,81 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.SyntheticImage;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
+
+// Reading the docker image tarfile: manifest parsing, OS detection, and splitting it into layer tars
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImageTarBenchmark {
+
+    @Param({ "5", "20" })
+    private int layerCount;
+
+    @Param({ "1000" })
+    private int filesPerLayer;
+
+    private File workingDir;
+    private File imageTarfile;
+    private File extractionDir;
+
+    @Setup(Level.Trial)
+    public void createImageTarfile() throws IOException {
+        workingDir = TestUtils.createTempDirectory();
+        imageTarfile = SyntheticImage.createImageTarfile(workingDir, layerCount, filesPerLayer, 4096);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteImageTarfile() {
+        TestUtils.deleteDirIfExists(workingDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void createExtractionDir() {
+        extractionDir = new File(workingDir, "extraction");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteExtractionDir() {
+        FileUtils.deleteQuietly(extractionDir);
+    }
+
+    @Benchmark
+    public List<String> parseManifest() throws IOException {
+        return new DockerTarManifest().getConfigFilenames(imageTarfile);
+    }
+
+    @Benchmark
+    public Optional<ImageInspectorOsEnum> detectTargetOs() {
+        return new TargetOsScanner().detectInspectorOs(imageTarfile, SyntheticImage.IMAGE_REPO, SyntheticImage.IMAGE_TAG);
+    }
+
+    @Benchmark
+    public List<File> extractLayerTars() throws IOException {
+        try (InputStream imageTarInputStream = new BufferedInputStream(new FileInputStream(imageTarfile))) {
+            return new DockerTarStreamExtractor().extract(imageTarInputStream, extractionDir, null);
+        }
+    }
+}
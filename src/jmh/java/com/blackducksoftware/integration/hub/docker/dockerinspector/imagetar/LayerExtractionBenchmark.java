@@ -0,0 +1,75 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.SyntheticImage;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
+
+// Building the container file system from the layer tars
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LayerExtractionBenchmark {
+
+    @Param({ "1", "4" })
+    private int threadCount;
+
+    // Only the package manager databases, as when the container file system is not requested
+    @Param({ "false", "true" })
+    private boolean selective;
+
+    private File workingDir;
+    private List<File> layerTars;
+    private List<ManifestLayerMapping> layerMappings;
+
+    @Setup(Level.Trial)
+    public void createLayerTars() throws IOException {
+        workingDir = TestUtils.createTempDirectory();
+        final File imageTarfile = SyntheticImage.createImageTarfile(workingDir, 10, 1000, 4096);
+        try (InputStream imageTarInputStream = new BufferedInputStream(new FileInputStream(imageTarfile))) {
+            layerTars = new DockerTarStreamExtractor().extract(imageTarInputStream, new File(workingDir, "layers"), null);
+        }
+        final List<String> layers = new ArrayList<>();
+        for (final File layerTar : layerTars) {
+            layers.add(layerTar.getParentFile().getName());
+        }
+        layerMappings = Arrays.asList(new ManifestLayerMapping(SyntheticImage.IMAGE_REPO, SyntheticImage.IMAGE_TAG, layers));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLayerTars() {
+        TestUtils.deleteDirIfExists(workingDir);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteContainerFileSystem() {
+        FileUtils.deleteQuietly(new File(workingDir, DockerTarStreamExtractor.TAR_EXTRACTION_DIRECTORY));
+    }
+
+    @Benchmark
+    public File extractDockerLayers() throws IOException {
+        final List<String> pathAllowList = selective ? Arrays.asList("var/lib/dpkg", "etc/os-release") : null;
+        return new ParallelLayerExtractor(threadCount, pathAllowList).extractDockerLayers(workingDir, SyntheticImage.IMAGE_REPO, SyntheticImage.IMAGE_TAG, layerTars, layerMappings);
+    }
+}
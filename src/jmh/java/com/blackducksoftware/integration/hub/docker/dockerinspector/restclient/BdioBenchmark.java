@@ -0,0 +1,86 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.bdio.BdioReader;
+import com.blackducksoftware.integration.hub.bdio.BdioWriter;
+import com.blackducksoftware.integration.hub.bdio.SimpleBdioFactory;
+import com.blackducksoftware.integration.hub.bdio.graph.MutableDependencyGraph;
+import com.blackducksoftware.integration.hub.bdio.model.Forge;
+import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
+import com.blackducksoftware.integration.hub.bdio.model.externalid.ExternalId;
+import com.blackducksoftware.integration.hub.imageinspector.lib.PackageManagerEnum;
+import com.google.gson.Gson;
+
+// Handling the BDIO returned by the image inspector service
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BdioBenchmark {
+
+    @Param({ "100", "2000" })
+    private int componentCount;
+
+    private final RestClientInspector restClientInspector = new RestClientInspector();
+    private File bdioFile;
+    private SimpleBdioDocument bdioDocument;
+
+    @Setup(Level.Trial)
+    public void createBdio() throws IOException {
+        final SimpleBdioFactory simpleBdioFactory = new SimpleBdioFactory();
+        final Forge forge = PackageManagerEnum.DPKG.getForge();
+        final MutableDependencyGraph dependencyGraph = simpleBdioFactory.createMutableDependencyGraph();
+        for (int i = 0; i < componentCount; i++) {
+            final String name = String.format("package%05d", i);
+            final ExternalId componentExternalId = simpleBdioFactory.createArchitectureExternalId(forge, name, "1.0." + i, "amd64");
+            dependencyGraph.addChildToRoot(simpleBdioFactory.createDependency(name, "1.0." + i, componentExternalId));
+        }
+        final ExternalId projectExternalId = simpleBdioFactory.createPathExternalId(forge, "synthetic_1.0_var_lib_dpkg");
+        final SimpleBdioDocument simpleBdioDocument = simpleBdioFactory.createSimpleBdioDocument("synthetic_1.0_var_lib_dpkg", "synthetic", "1.0", projectExternalId, dependencyGraph);
+        bdioFile = File.createTempFile("BdioBenchmark", ".jsonld");
+        try (BdioWriter bdioWriter = simpleBdioFactory.createBdioWriter(new FileWriter(bdioFile))) {
+            simpleBdioFactory.writeSimpleBdioDocument(bdioWriter, simpleBdioDocument);
+        }
+        bdioDocument = parseBdio();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBdio() {
+        bdioFile.delete();
+    }
+
+    // Reading the whole document: what deriving the BDIO filename used to cost
+    @Benchmark
+    public SimpleBdioDocument parseBdio() throws IOException {
+        try (BdioReader bdioReader = new BdioReader(new Gson(), new BufferedInputStream(new FileInputStream(bdioFile)))) {
+            return bdioReader.readSimpleBdioDocument();
+        }
+    }
+
+    @Benchmark
+    public String deriveBdioFilename() throws IntegrationException {
+        return new BdioFilename(bdioDocument.billOfMaterials.spdxName, bdioDocument.project.name, bdioDocument.project.version, bdioDocument.project.bdioExternalIdentifier.externalIdMetaData.forge.getName()).getBdioFilename();
+    }
+
+    @Benchmark
+    public String parseBdioAndDeriveBdioFilename() throws IOException, IntegrationException {
+        return restClientInspector.deriveOutputBdioFilename(bdioFile);
+    }
+}
@@ -23,31 +23,41 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
 import javax.annotation.PostConstruct;
 
+import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.CustomScopeConfigurer;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchInspector;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.HubProjectName;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.Inspector;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.Output;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.JobScope;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.daemon.InspectionDaemon;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerexec.DissectedImage;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.help.formatter.UsageFormatter;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.HubClient;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.MetricsEndpoint;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.imageinspector.api.PkgMgrDataNotFoundException;
 import com.blackducksoftware.integration.hub.imageinspector.lib.ImageInfoDerived;
@@ -100,11 +110,33 @@ public class DockerEnvImageInspector {
     @Autowired
     private UsageFormatter usageFormatter;
 
+    @Autowired
+    private BatchInspector batchInspector;
+
+    @Autowired
+    private InspectionDaemon inspectionDaemon;
+
+    @Autowired
+    private PhaseTimings phaseTimings;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
+    @Autowired
+    private MetricsEndpoint metricsEndpoint;
+
     public static void main(final String[] args) {
         new SpringApplicationBuilder(DockerEnvImageInspector.class).logStartupInfo(false).run(args);
         logger.warn("The program is not expected to get here.");
     }
 
+    @Bean
+    public static CustomScopeConfigurer jobScopeConfigurer() {
+        final CustomScopeConfigurer configurer = new CustomScopeConfigurer();
+        configurer.addScope(Config.JOB_SCOPE, new JobScope());
+        return configurer;
+    }
+
     @PostConstruct
     public void inspectImage() {
         int returnCode = -1;
@@ -114,32 +146,94 @@ public class DockerEnvImageInspector {
             if (!initAndValidate(config)) {
                 System.exit(0);
             }
-            try {
-                final Inspector inspector = chooseInspector();
-                returnCode = inspector.getBdio(dissectedImage);
-            } catch (final PkgMgrDataNotFoundException e) {
-                logger.info("Pkg mgr not found; generating empty BDIO file");
-                final ImageInfoDerived imageInfoDerived = imageInspector.generateEmptyBdio(config.getDockerImageRepo(), config.getDockerImageTag(), dissectedImage.getLayerMappings(), hubProjectName.getHubProjectName(config),
-                        hubProjectName.getHubProjectVersion(config), dissectedImage.getDockerTarFile(), dissectedImage.getTargetImageFileSystemRootDir(), dissectedImage.getTargetOs(), config.getHubCodelocationPrefix());
-                output.writeBdioFile(dissectedImage, imageInfoDerived);
-                output.uploadBdio(dissectedImage);
-                output.createContainerFileSystemTarIfRequested(dissectedImage.getTargetImageFileSystemRootDir());
-                output.provideOutput();
-                returnCode = output.reportResultsPkgMgrDataNotFound(dissectedImage);
-                output.cleanUp(null);
+            if (inspectionDaemon.isApplicable()) {
+                startMetricsEndpoint();
+                returnCode = inspectionDaemon.serve(() -> inspectBatchEntry());
+            } else if (batchInspector.isApplicable()) {
+                startMetricsEndpoint();
+                returnCode = batchInspector.inspectImages(() -> inspectBatchEntry());
+            } else {
+                returnCode = inspect(dissectedImage);
             }
         } catch (final Throwable e) {
-            final String msg = String.format("Error inspecting image: %s", e.getMessage());
-            logger.error(msg);
-            final String trace = ExceptionUtils.getStackTrace(e);
-            logger.debug(String.format("Stack trace: %s", trace));
-            resultFile.write(new Gson(), programPaths.getHubDockerHostResultPath(), false, msg, dissectedImage.getTargetOs(), dissectedImage.getRunOnImageName(), dissectedImage.getRunOnImageTag(),
-                    dissectedImage.getDockerTarFile() == null ? "" : dissectedImage.getDockerTarFile().getName(), dissectedImage.getBdioFilename());
+            reportError(e, dissectedImage);
         }
+        metricsEndpoint.stop();
+        writeMetricsTextfile();
         logger.info(String.format("Returning %d", returnCode));
         System.exit(returnCode);
     }
 
+    private int inspectBatchEntry() {
+        final DissectedImage dissectedImage = new DissectedImage();
+        try {
+            initImageName();
+            logger.info(String.format("Inspecting image:tag %s:%s", config.getDockerImageRepo(), config.getDockerImageTag()));
+            return inspect(dissectedImage);
+        } catch (final Throwable e) {
+            reportError(e, dissectedImage);
+            return -1;
+        }
+    }
+
+    private int inspect(final DissectedImage dissectedImage) throws IntegrationException, IOException, InterruptedException, CompressorException {
+        phaseTimings.reset();
+        try {
+            final Inspector inspector = chooseInspector();
+            final int returnCode = inspector.getBdio(dissectedImage);
+            inspectorMetrics.recordImageInspected(returnCode == 0);
+            return returnCode;
+        } catch (final PkgMgrDataNotFoundException e) {
+            logger.info("Pkg mgr not found; generating empty BDIO file");
+            final ImageInfoDerived imageInfoDerived = imageInspector.generateEmptyBdio(config.getDockerImageRepo(), config.getDockerImageTag(), dissectedImage.getLayerMappings(), hubProjectName.getHubProjectName(config),
+                    hubProjectName.getHubProjectVersion(config), dissectedImage.getDockerTarFile(), dissectedImage.getTargetImageFileSystemRootDir(), dissectedImage.getTargetOs(), config.getHubCodelocationPrefix());
+            output.writeBdioFile(dissectedImage, imageInfoDerived);
+            output.uploadBdio(dissectedImage);
+            output.createContainerFileSystemTarIfRequested(dissectedImage.getTargetImageFileSystemRootDir());
+            output.provideOutput();
+            final int returnCode = output.reportResultsPkgMgrDataNotFound(dissectedImage);
+            output.cleanUp(null);
+            inspectorMetrics.recordImageInspected(returnCode == 0);
+            return returnCode;
+        } finally {
+            writeTimingsFile();
+        }
+    }
+
+    private void writeTimingsFile() {
+        if (config.isOnHost() && programPaths.getUserOutputDir() != null) {
+            phaseTimings.writeTimingsFile(new File(programPaths.getUserOutputDir()));
+        }
+    }
+
+    private void startMetricsEndpoint() {
+        if (config.getMetricsPort() > 0) {
+            try {
+                metricsEndpoint.start(config.getMetricsPort());
+            } catch (final IOException e) {
+                logger.warn(String.format("Unable to serve metrics on port %d: %s", config.getMetricsPort(), e.getMessage()));
+            }
+        }
+    }
+
+    private void writeMetricsTextfile() {
+        if (StringUtils.isNotBlank(config.getMetricsTextfilePath())) {
+            inspectorMetrics.writeTextfile(new File(config.getMetricsTextfilePath()));
+        }
+    }
+
+    private void reportError(final Throwable e, final DissectedImage dissectedImage) {
+        final String msg = String.format("Error inspecting image: %s", e.getMessage());
+        logger.error(msg);
+        inspectorMetrics.recordImageInspected(false);
+        inspectorMetrics.recordFailure(e);
+        final String trace = ExceptionUtils.getStackTrace(e);
+        logger.debug(String.format("Stack trace: %s", trace));
+        resultFile.write(new Gson(), programPaths.getHubDockerHostResultPath(), false, msg, dissectedImage.getTargetOs(), dissectedImage.getRunOnImageName(), dissectedImage.getRunOnImageTag(),
+                dissectedImage.getDockerTarFile() == null ? "" : dissectedImage.getDockerTarFile().getName(), dissectedImage.getBdioFilename());
+        phaseTimings.addToResultFile(programPaths.getHubDockerHostResultPath());
+    }
+
     private void logMsgAboutRestClientMode() {
         if (config.isOnHost() && !config.isImageInspectorServiceStart() && StringUtils.isBlank(config.getImageInspectorUrl())) {
             final StringBuilder sb = new StringBuilder();
@@ -216,8 +310,11 @@ public class DockerEnvImageInspector {
                 logger.warn(String.format("Unable to phone home: %s", e.getMessage()));
             }
         }
-        initImageName();
-        logger.info(String.format("Inspecting image:tag %s:%s", config.getDockerImageRepo(), config.getDockerImageTag()));
+        // In batch and daemon modes, each image name is resolved as its inspection starts
+        if (!batchInspector.isApplicable() && !inspectionDaemon.isApplicable()) {
+            initImageName();
+            logger.info(String.format("Inspecting image:tag %s:%s", config.getDockerImageRepo(), config.getDockerImageTag()));
+        }
         if (config.isOnHost()) {
             hubClient.testHubConnection();
         }
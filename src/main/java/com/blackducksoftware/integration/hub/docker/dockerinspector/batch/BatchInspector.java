@@ -0,0 +1,263 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.JobScope;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.BdioUpload;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.BdioUploader;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.PendingUploads;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarManifest;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.SharedLayerTars;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ImageInspectorClientStartServices;
+import com.blackducksoftware.integration.hub.imageinspector.result.Result;
+import com.blackducksoftware.integration.hub.imageinspector.result.ResultFile;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Inspects each image/tarfile in the batch on a bounded pool of worker threads. Config and ProgramPaths are job scoped,
+ * so each image is inspected as a job with a Config of its own, re-targeted at the image before running the (single image)
+ * inspection.
+ * A worker doesn't wait for an image's BDIO upload to the Hub before starting on its next image; the uploads are waited
+ * for (and their failures reported) at the end.
+ */
+@Component
+public class BatchInspector {
+    private static final String RESULT_JSON_FILENAME = "result.json";
+    private static final String BATCH_RESULT_JSON_FILENAME = "batchResult.json";
+    private static final String SHARED_LAYER_TARS_DIR = "sharedLayerTars";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private ProgramPaths programPaths;
+
+    @Autowired
+    private ResultFile resultFile;
+
+    @Autowired
+    private PendingUploads pendingUploads;
+
+    @Autowired
+    private BdioUploader bdioUploader;
+
+    @Autowired
+    private SharedLayerTars sharedLayerTars;
+
+    @Autowired
+    private ImageInspectorClientStartServices imageInspectorClientStartServices;
+
+    public boolean isApplicable() {
+        return StringUtils.isNotBlank(config.getDockerImages()) || StringUtils.isNotBlank(config.getDockerImagesFile()) || isAllImagesInTarfile();
+    }
+
+    private boolean isAllImagesInTarfile() {
+        return config.isDockerTarInspectAllImages() && StringUtils.isNotBlank(config.getDockerTar());
+    }
+
+    public int inspectImages(final IntSupplier imageInspection) throws IntegrationException, IOException {
+        final String batchOutputPath = config.getOutputPath();
+        if (StringUtils.isBlank(batchOutputPath)) {
+            throw new IntegrationException("Batch mode (docker.images, docker.images.file, or docker.tar.inspect.all.images) requires output.path");
+        }
+        if (isAllImagesInTarfile()) {
+            return inspectAllImagesInTarfile(new File(config.getDockerTar()), imageInspection);
+        }
+        return inspectTargets(new BatchTargetList(config.getDockerImages(), config.getDockerImagesFile()).getTargets(), imageInspection);
+    }
+
+    // The images share the tarfile's layer tars, which are extracted (at most) once
+    private int inspectAllImagesInTarfile(final File dockerTarFile, final IntSupplier imageInspection) throws IntegrationException, IOException {
+        final List<String> repoTags = new DockerTarManifest().getRepoTags(dockerTarFile);
+        if (repoTags.isEmpty()) {
+            throw new IntegrationException(String.format("Found no images (with a repo:tag) in %s", dockerTarFile.getAbsolutePath()));
+        }
+        final List<BatchTarget> targets = new ArrayList<>(repoTags.size());
+        for (final String repoTag : repoTags) {
+            targets.add(new BatchTarget(targets.size() + 1, dockerTarFile.getAbsolutePath(), repoTag));
+        }
+        sharedLayerTars.share(dockerTarFile, new File(programPaths.getHubDockerWorkingDirPath(), SHARED_LAYER_TARS_DIR));
+        try {
+            return inspectTargets(targets, imageInspection);
+        } finally {
+            sharedLayerTars.release(dockerTarFile, config.isCleanupWorkingDir());
+        }
+    }
+
+    private int inspectTargets(final List<BatchTarget> targets, final IntSupplier imageInspection) throws IOException {
+        final String batchOutputPath = config.getOutputPath();
+        final int threadCount = Math.max(1, Math.min(config.getBatchThreadCount(), targets.size()));
+        logger.info(String.format("Batch mode: inspecting %d images/tarfiles using %d threads", targets.size(), threadCount));
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        final List<Future<PendingBatchResult>> futures = new ArrayList<>(targets.size());
+        for (final BatchTarget target : targets) {
+            futures.add(executor.submit(() -> startTarget(target, new File(batchOutputPath, target.getJobName()), imageInspection)));
+        }
+        executor.shutdown();
+        final List<BatchResult> results = new ArrayList<>(targets.size());
+        int failureCount = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            BatchResult result;
+            try {
+                result = awaitUploads(futures.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                result = new BatchResult(targets.get(i).getDescription(), false, String.format("Error inspecting image: %s", e.getMessage()), null, null, 0L);
+            }
+            if (!result.isSucceeded()) {
+                failureCount++;
+            }
+            results.add(result);
+        }
+        imageInspectorClientStartServices.cleanUpServiceContainers();
+        final File batchResultFile = new File(batchOutputPath, BATCH_RESULT_JSON_FILENAME);
+        logger.info(String.format("Batch mode: %d of %d images/tarfiles inspected successfully; summary: %s", targets.size() - failureCount, targets.size(), batchResultFile.getAbsolutePath()));
+        FileUtils.write(batchResultFile, new Gson().toJson(results), StandardCharsets.UTF_8);
+        return failureCount == 0 ? 0 : -1;
+    }
+
+    // Also used by daemon mode, which runs each job through the same steps on its own worker threads
+    public BatchResult inspectTarget(final BatchTarget target, final File targetOutputDir, final IntSupplier imageInspection) {
+        return awaitUploads(startTarget(target, targetOutputDir, imageInspection));
+    }
+
+    // The target's BDIO uploads may still be running when this returns
+    private PendingBatchResult startTarget(final BatchTarget target, final File targetOutputDir, final IntSupplier imageInspection) {
+        return JobScope.runJob(() -> startTargetJob(target, targetOutputDir, imageInspection));
+    }
+
+    private PendingBatchResult startTargetJob(final BatchTarget target, final File targetOutputDir, final IntSupplier imageInspection) {
+        logger.info(String.format("Batch mode: inspecting %s", target.getDescription()));
+        final long startTime = System.currentTimeMillis();
+        config.setDockerImage(target.isTarfile() ? "" : target.getTarget());
+        config.setDockerTar(target.isTarfile() ? target.getTarget() : "");
+        config.setDockerImageId("");
+        config.setDockerImageRepo("");
+        config.setDockerImageTag("");
+        if (target.getTarfileImageRepo() != null) {
+            config.setDockerImageRepo(target.getTarfileImageRepo());
+            config.setDockerImageTag(target.getTarfileImageTag());
+        }
+        config.setOutputPath(targetOutputDir.getAbsolutePath());
+        programPaths.init(target.getJobName());
+        targetOutputDir.mkdirs();
+
+        pendingUploads.startDeferring();
+        final int returnCode;
+        final List<Future<BdioUpload>> uploads;
+        try {
+            returnCode = imageInspection.getAsInt();
+        } finally {
+            uploads = pendingUploads.stopDeferring();
+        }
+        return new PendingBatchResult(deriveResult(target, targetOutputDir, returnCode, System.currentTimeMillis() - startTime), uploads);
+    }
+
+    private BatchResult awaitUploads(final PendingBatchResult pendingResult) {
+        final BatchResult result = pendingResult.result;
+        if (pendingResult.uploads.isEmpty()) {
+            return result;
+        }
+        try {
+            long hubUploadMilliseconds = 0L;
+            for (final BdioUpload upload : bdioUploader.await(pendingResult.uploads)) {
+                hubUploadMilliseconds += upload.getElapsedMilliseconds();
+            }
+            return new BatchResult(result.getTarget(), result.isSucceeded(), result.getMessage(), result.getOutputPath(), result.getBdioFilename(), result.getElapsedMilliseconds(), hubUploadMilliseconds);
+        } catch (final IntegrationException e) {
+            final String message = String.format("Error uploading BDIO to the Hub: %s", e.getMessage());
+            logger.error(String.format("Batch mode: %s: %s", result.getTarget(), message));
+            markResultFileFailed(new File(result.getOutputPath(), RESULT_JSON_FILENAME), message);
+            return new BatchResult(result.getTarget(), false, message, result.getOutputPath(), result.getBdioFilename(), result.getElapsedMilliseconds());
+        }
+    }
+
+    private void markResultFileFailed(final File targetResultFile, final String message) {
+        try {
+            final JsonObject resultJson = new JsonParser().parse(FileUtils.readFileToString(targetResultFile, StandardCharsets.UTF_8)).getAsJsonObject();
+            resultJson.addProperty("succeeded", false);
+            resultJson.addProperty("message", message);
+            FileUtils.write(targetResultFile, new Gson().toJson(resultJson), StandardCharsets.UTF_8);
+        } catch (final IOException | RuntimeException e) {
+            logger.warn(String.format("Unable to update result file %s: %s", targetResultFile.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    private BatchResult deriveResult(final BatchTarget target, final File targetOutputDir, final int returnCode, final long elapsedMilliseconds) {
+        final Gson gson = new Gson();
+        final File targetResultFile = new File(targetOutputDir, RESULT_JSON_FILENAME);
+        final File runDirResultFile = new File(programPaths.getHubDockerHostResultPath());
+        Result result = null;
+        if (targetResultFile.exists()) {
+            result = resultFile.read(gson, targetResultFile.getAbsolutePath());
+        } else if (runDirResultFile.exists()) {
+            result = resultFile.read(gson, runDirResultFile.getAbsolutePath());
+        }
+        final boolean succeeded = returnCode == 0 && (result == null || result.isSucceeded());
+        String message = succeeded ? "Success" : String.format("Failed with return code %d", returnCode);
+        String bdioFilename = null;
+        if (result != null) {
+            message = result.getMessage();
+            bdioFilename = result.getBdioFilename();
+        }
+        if (!targetResultFile.exists()) {
+            resultFile.write(gson, targetResultFile.getAbsolutePath(), succeeded, message, null, null, null, target.isTarfile() ? new File(target.getTarget()).getName() : "", bdioFilename);
+        }
+        logger.info(String.format("Batch mode: %s: %s (%d ms)", target.getDescription(), message, elapsedMilliseconds));
+        return new BatchResult(target.getDescription(), succeeded, message, targetOutputDir.getAbsolutePath(), bdioFilename, elapsedMilliseconds);
+    }
+
+    private static class PendingBatchResult {
+        private final BatchResult result;
+        private final List<Future<BdioUpload>> uploads;
+
+        private PendingBatchResult(final BatchResult result, final List<Future<BdioUpload>> uploads) {
+            this.result = result;
+            this.uploads = uploads;
+        }
+    }
+}
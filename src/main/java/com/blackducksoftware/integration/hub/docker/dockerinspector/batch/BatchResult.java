@@ -0,0 +1,77 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.batch;
+
+public class BatchResult {
+    private final String target;
+    private final boolean succeeded;
+    private final String message;
+    private final String outputPath;
+    private final String bdioFilename;
+    private final long elapsedMilliseconds;
+    private final Long hubUploadMilliseconds;
+
+    public BatchResult(final String target, final boolean succeeded, final String message, final String outputPath, final String bdioFilename, final long elapsedMilliseconds) {
+        this(target, succeeded, message, outputPath, bdioFilename, elapsedMilliseconds, null);
+    }
+
+    // hubUploadMilliseconds: total time spent uploading the BDIO (which can overlap the next image's inspection), or null if it wasn't uploaded
+    public BatchResult(final String target, final boolean succeeded, final String message, final String outputPath, final String bdioFilename, final long elapsedMilliseconds, final Long hubUploadMilliseconds) {
+        this.target = target;
+        this.succeeded = succeeded;
+        this.message = message;
+        this.outputPath = outputPath;
+        this.bdioFilename = bdioFilename;
+        this.elapsedMilliseconds = elapsedMilliseconds;
+        this.hubUploadMilliseconds = hubUploadMilliseconds;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    public String getBdioFilename() {
+        return bdioFilename;
+    }
+
+    public long getElapsedMilliseconds() {
+        return elapsedMilliseconds;
+    }
+
+    public Long getHubUploadMilliseconds() {
+        return hubUploadMilliseconds;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.batch;
+
+import java.io.File;
+
+import org.apache.commons.lang3.StringUtils;
+
+public class BatchTarget {
+    private static final String TARFILE_SUFFIX = ".tar";
+    private final int index;
+    private final String target;
+    private final boolean tarfile;
+    private final String tarfileImageRepoTag;
+
+    public BatchTarget(final int index, final String target) {
+        this.index = index;
+        this.target = target;
+        this.tarfile = target.endsWith(TARFILE_SUFFIX) || new File(target).isFile();
+        this.tarfileImageRepoTag = null;
+    }
+
+    // One of several images in a docker tarfile
+    public BatchTarget(final int index, final String tarfilePath, final String imageRepoTag) {
+        this.index = index;
+        this.target = tarfilePath;
+        this.tarfile = true;
+        this.tarfileImageRepoTag = imageRepoTag;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public boolean isTarfile() {
+        return tarfile;
+    }
+
+    // Null unless the target is one of several images in a docker tarfile
+    public String getTarfileImageRepo() {
+        return tarfileImageRepoTag == null ? null : StringUtils.substringBeforeLast(tarfileImageRepoTag, ":");
+    }
+
+    public String getTarfileImageTag() {
+        return tarfileImageRepoTag == null ? null : StringUtils.substringAfterLast(tarfileImageRepoTag, ":");
+    }
+
+    public String getDescription() {
+        return tarfileImageRepoTag == null ? target : String.format("%s (%s)", tarfileImageRepoTag, target);
+    }
+
+    // Used for the target's output dir and run ID, so it must be unique within the batch and filesystem-safe
+    public String getJobName() {
+        final String name = tarfileImageRepoTag != null ? tarfileImageRepoTag : tarfile ? new File(target).getName() : target;
+        return String.format("%03d_%s", index, name.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+}
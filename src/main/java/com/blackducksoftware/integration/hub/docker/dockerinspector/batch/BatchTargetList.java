@@ -0,0 +1,64 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+public class BatchTargetList {
+    private static final String COMMENT_PREFIX = "#";
+    private final List<BatchTarget> targets = new ArrayList<>();
+
+    public BatchTargetList(final String commaSeparatedTargets, final String targetListFilePath) throws IOException {
+        if (StringUtils.isNotBlank(commaSeparatedTargets)) {
+            for (final String target : commaSeparatedTargets.split(",")) {
+                add(target);
+            }
+        }
+        if (StringUtils.isNotBlank(targetListFilePath)) {
+            for (final String line : FileUtils.readLines(new File(targetListFilePath), StandardCharsets.UTF_8)) {
+                if (!line.trim().startsWith(COMMENT_PREFIX)) {
+                    add(line);
+                }
+            }
+        }
+    }
+
+    public List<BatchTarget> getTargets() {
+        return targets;
+    }
+
+    private void add(final String target) {
+        final String trimmedTarget = target.trim();
+        if (StringUtils.isNotBlank(trimmedTarget)) {
+            targets.add(new BatchTarget(targets.size() + 1, trimmedTarget));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.ProgramVersion;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.HubProjectName;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.PullPolicy;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarManifest;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.OciImageLayout;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.registry.RegistryImageAcquirer;
+
+/*
+ * On-disk cache of generated BDIO, under the working dir. Entries are keyed by the target image's config digest
+ * (which changes whenever the image content does), the program and inspector image versions, and the settings
+ * that affect the BDIO (image repo/tag, project name/version, codelocation prefix, linux.distro).
+ * A run that must also produce the container file system or docker tarfile doesn't use the cache. The key is derived
+ * before the image is pulled (if it is), so BDIO is only added if the image inspected (the config in its docker tarfile)
+ * is the one the key was derived for; a failed pull leaves whatever image is local to be inspected.
+ * When the cache exceeds its maximum size, the least recently used entries are evicted.
+ */
+@Component
+public class BdioCache {
+    private static final String CACHE_DIR = "bdioCache";
+    private static final String TEMP_ENTRY_DIR_PREFIX = ".tmp_";
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+    private static final String SHA256_PREFIX = "sha256:";
+    // A config filename in docker save output: <hex>.json, or (newer Docker versions) blobs/sha256/<hex>
+    private static final Pattern CONFIG_FILENAME_DIGEST_PATTERN = Pattern.compile("(?:.*/)?([0-9a-f]{64})(?:\\.json)?");
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private ProgramPaths programPaths;
+
+    @Autowired
+    private ProgramVersion programVersion;
+
+    @Autowired
+    private HubProjectName hubProjectName;
+
+    @Autowired
+    private DockerClientManager dockerClientManager;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
+    @Autowired
+    private RegistryImageAcquirer registryImageAcquirer;
+
+    public Optional<BdioCacheKey> deriveKey() {
+        if (!config.isBdioCacheEnabled() || !config.isOnHost()) {
+            return Optional.empty();
+        }
+        if (config.isOutputIncludeContainerfilesystem() || config.isOutputIncludeDockerTarfile()) {
+            logger.debug("The container file system and/or docker tarfile must be included in the output; not using BDIO cache");
+            return Optional.empty();
+        }
+        try {
+            final String imageConfigDigest = deriveImageConfigDigest();
+            if (StringUtils.isBlank(imageConfigDigest)) {
+                logger.debug("Unable to determine target image config digest; not using BDIO cache");
+                return Optional.empty();
+            }
+            final String keySource = String.join("|", imageConfigDigest, programVersion.getProgramVersion(), programVersion.getInspectorImageVersion(), config.getDockerImageRepo(), config.getDockerImageTag(),
+                    hubProjectName.getHubProjectName(config), hubProjectName.getHubProjectVersion(config), config.getHubCodelocationPrefix(), config.getLinuxDistro());
+            final String key = DigestUtils.sha256Hex(keySource);
+            logger.debug(String.format("BDIO cache key for %s: %s", keySource, key));
+            return Optional.of(new BdioCacheKey(key, imageConfigDigest));
+        } catch (final Exception e) {
+            logger.warn(String.format("Unable to derive BDIO cache key; not using BDIO cache: %s", e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    public synchronized Optional<CachedBdio> get(final String key) {
+        final File entryDir = new File(getCacheDir(), key);
+        final File[] entryFiles = entryDir.listFiles();
+        if (entryFiles == null || entryFiles.length != 1) {
+            logger.info("BDIO cache miss");
+            inspectorMetrics.recordBdioCacheLookup(false);
+            return Optional.empty();
+        }
+        try {
+            final CachedBdio cachedBdio = new CachedBdio(entryFiles[0].getName(), FileUtils.readFileToString(entryFiles[0], StandardCharsets.UTF_8));
+            // The entry dir's modification time is its last use time, for LRU eviction
+            entryDir.setLastModified(System.currentTimeMillis());
+            logger.info(String.format("BDIO cache hit: %s", entryFiles[0].getAbsolutePath()));
+            inspectorMetrics.recordBdioCacheLookup(true);
+            return Optional.of(cachedBdio);
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to read BDIO cache entry %s: %s", entryDir.getAbsolutePath(), e.getMessage()));
+            return Optional.empty();
+        }
+    }
+
+    public void put(final String key, final String bdioFilename, final String bdioString) {
+        put(key, bdioFilename, entryBdioFile -> FileUtils.write(entryBdioFile, bdioString, StandardCharsets.UTF_8));
+    }
+
+    public void put(final String key, final String bdioFilename, final File bdioFile) {
+        put(key, bdioFilename, entryBdioFile -> FileUtils.copyFile(bdioFile, entryBdioFile));
+    }
+
+    // Only if the given docker tarfile is of the image the key was derived for
+    public void put(final BdioCacheKey key, final String bdioFilename, final File bdioFile, final File inspectedDockerTarFile) {
+        if (!isInspectedImage(key, inspectedDockerTarFile)) {
+            return;
+        }
+        put(key.getKey(), bdioFilename, bdioFile);
+    }
+
+    private synchronized void put(final String key, final String bdioFilename, final EntryWriter entryWriter) {
+        final File cacheDir = getCacheDir();
+        final File entryDir = new File(cacheDir, key);
+        // Written to a temp dir and moved into place so that other processes sharing the working dir never see a partial entry
+        final File tempEntryDir = new File(cacheDir, TEMP_ENTRY_DIR_PREFIX + UUID.randomUUID().toString());
+        try {
+            entryWriter.write(new File(tempEntryDir, bdioFilename));
+            FileUtils.deleteQuietly(entryDir);
+            Files.move(tempEntryDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            logger.debug(String.format("Added %s to BDIO cache as %s", bdioFilename, entryDir.getAbsolutePath()));
+        } catch (final FileAlreadyExistsException | DirectoryNotEmptyException | AtomicMoveNotSupportedException e) {
+            logger.debug(String.format("BDIO cache entry %s not replaced: %s", entryDir.getAbsolutePath(), e.getMessage()));
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to add BDIO to cache: %s", e.getMessage()));
+        } finally {
+            FileUtils.deleteQuietly(tempEntryDir);
+        }
+        evict(cacheDir, config.getBdioCacheMaxSizeMb() * BYTES_PER_MB);
+    }
+
+    // A key derived from a docker tarfile's config filenames is of the image inspected, by definition
+    private boolean isInspectedImage(final BdioCacheKey key, final File inspectedDockerTarFile) {
+        if (!key.getImageConfigDigest().startsWith(SHA256_PREFIX)) {
+            return true;
+        }
+        if (inspectedDockerTarFile == null || !inspectedDockerTarFile.isFile()) {
+            logger.debug("No docker tarfile to check the inspected image against; not adding BDIO to cache");
+            return false;
+        }
+        try {
+            final List<String> configFilenames = new DockerTarManifest().getConfigFilenames(inspectedDockerTarFile);
+            final Matcher configDigestMatcher = CONFIG_FILENAME_DIGEST_PATTERN.matcher(configFilenames.size() == 1 ? configFilenames.get(0) : "");
+            if (!configDigestMatcher.matches() || !key.getImageConfigDigest().equals(SHA256_PREFIX + configDigestMatcher.group(1))) {
+                logger.info(String.format("The image inspected (config %s) is not the one the BDIO cache key was derived for (%s), perhaps because it could not be pulled; not adding BDIO to cache", configFilenames,
+                        key.getImageConfigDigest()));
+                return false;
+            }
+            return true;
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to read the config filename from %s; not adding BDIO to cache: %s", inspectedDockerTarFile.getAbsolutePath(), e.getMessage()));
+            return false;
+        }
+    }
+
+    private String deriveImageConfigDigest() throws Exception {
+        if (StringUtils.isNotBlank(config.getDockerTar()) && OciImageLayout.isOciImageLayout(new File(config.getDockerTar()))) {
+            return new OciImageLayout().getImageConfigDigest(new File(config.getDockerTar()), config.getDockerImageTag());
+        }
+        if (StringUtils.isNotBlank(config.getDockerTar())) {
+            final List<String> configFilenames = new DockerTarManifest().getConfigFilenames(new File(config.getDockerTar()));
+            return configFilenames.isEmpty() ? null : String.join(",", configFilenames);
+        }
+        if (StringUtils.isNotBlank(config.getDockerImageId())) {
+            return dockerClientManager.getImageConfigDigestById(config.getDockerImageId());
+        }
+        if (StringUtils.isNotBlank(config.getDockerImageRepo()) && config.isDockerRegistryDirect()) {
+            return registryImageAcquirer.getImageConfigDigest(config.getDockerImageRepo(), config.getDockerImageTag());
+        }
+        if (StringUtils.isNotBlank(config.getDockerImageRepo())) {
+            return deriveImageConfigDigestWithoutPulling(config.getDockerImageRepo(), config.getDockerImageTag());
+        }
+        return null;
+    }
+
+    /*
+     * The image is pulled (if at all) later, by the inspection. With pull policy if-not-present, a local image is the one that will
+     * be inspected; otherwise it's the registry's image, whose config digest is the image ID the Docker engine gives it.
+     */
+    private String deriveImageConfigDigestWithoutPulling(final String imageRepo, final String imageTag) throws Exception {
+        if (PullPolicy.fromConfigValue(config.getDockerPullPolicy()) == PullPolicy.IF_NOT_PRESENT) {
+            final Optional<String> localImageConfigDigest = dockerClientManager.getLocalImageConfigDigest(imageRepo, imageTag);
+            if (localImageConfigDigest.isPresent()) {
+                return localImageConfigDigest.get();
+            }
+        }
+        return registryImageAcquirer.getImageConfigDigest(imageRepo, imageTag);
+    }
+
+    private File getCacheDir() {
+        return new File(programPaths.getHubDockerPgmDirPathHost(), CACHE_DIR);
+    }
+
+    private void evict(final File cacheDir, final long maxSizeBytes) {
+        final File[] entryDirs = cacheDir.listFiles(file -> file.isDirectory() && !file.getName().startsWith(TEMP_ENTRY_DIR_PREFIX));
+        if (entryDirs == null) {
+            return;
+        }
+        final List<File> entryDirsOldestFirst = new ArrayList<>(Arrays.asList(entryDirs));
+        entryDirsOldestFirst.sort(Comparator.comparingLong(File::lastModified));
+        long totalSizeBytes = 0L;
+        for (final File entryDir : entryDirsOldestFirst) {
+            totalSizeBytes += FileUtils.sizeOfDirectory(entryDir);
+        }
+        for (final File entryDir : entryDirsOldestFirst) {
+            if (totalSizeBytes <= maxSizeBytes) {
+                break;
+            }
+            final long entrySizeBytes = FileUtils.sizeOfDirectory(entryDir);
+            logger.debug(String.format("Evicting least recently used BDIO cache entry %s", entryDir.getAbsolutePath()));
+            FileUtils.deleteQuietly(entryDir);
+            totalSizeBytes -= entrySizeBytes;
+        }
+    }
+
+    private interface EntryWriter {
+        void write(File entryBdioFile) throws IOException;
+    }
+}
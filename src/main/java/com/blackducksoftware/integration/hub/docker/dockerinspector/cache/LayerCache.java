@@ -0,0 +1,249 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.cache;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+
+/*
+ * On-disk cache of extracted layers, under the working dir, shared by every image and run that uses the same working dir.
+ * Entries are keyed by the layer's digest (and the paths extracted from it); what an entry contains is up to the extractor.
+ * A layer named by its digest, as the manifest names it, is keyed by that name without reading it; any other layer tar is
+ * keyed by the digest of its contents.
+ * Entries are written to a temp dir and moved into place, so a partial entry is never seen. While any run is using entries
+ * it holds a shared lock on the cache; the least recently used entries are evicted (when the cache exceeds its maximum size)
+ * only under an exclusive lock, so an entry never disappears while a run is using it.
+ */
+@Component
+public class LayerCache {
+    private static final String CACHE_DIR = "layerCache";
+    private static final String LOCK_FILENAME = ".lock";
+    private static final String TEMP_ENTRY_DIR_PREFIX = ".tmp_";
+    // Change this whenever the layout of an entry changes, so entries written by older versions are not used
+    private static final String ENTRY_FORMAT_VERSION = "1";
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+    // A docker save layer ID, or (in a registry or OCI image's tar extraction dir) a blob digest's hex
+    private static final Pattern LAYER_DIGEST_PATTERN = Pattern.compile("(?:.*/)?(?:sha256[:/])?([0-9a-f]{64})");
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private int userCount = 0;
+    private RandomAccessFile lockFile;
+    private FileLock sharedLock;
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private ProgramPaths programPaths;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
+    public boolean isEnabled() {
+        return config.isLayerCacheEnabled();
+    }
+
+    public String deriveKey(final File layerTar, final List<String> pathAllowList) throws IOException {
+        try (final InputStream layerInputStream = new BufferedInputStream(new FileInputStream(layerTar))) {
+            return deriveKey(layerInputStream, layerTar.getAbsolutePath(), pathAllowList);
+        }
+    }
+
+    // For a layer tar read in place from the docker tarfile; the stream is read to its end, but not closed
+    public String deriveKey(final InputStream layerInputStream, final String layerName, final List<String> pathAllowList) throws IOException {
+        final MessageDigest layerDigest = DigestUtils.getSha256Digest();
+        DigestUtils.updateDigest(layerDigest, layerInputStream);
+        return deriveKey(Hex.encodeHexString(layerDigest.digest()), layerName, pathAllowList);
+    }
+
+    // Empty unless the manifest names the layer by its digest
+    public Optional<String> deriveKeyFromLayerDigest(final String layer, final List<String> pathAllowList) {
+        final Matcher layerDigestMatcher = LAYER_DIGEST_PATTERN.matcher(layer);
+        if (!layerDigestMatcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(deriveKey(String.format("layer:%s", layerDigestMatcher.group(1)), layer, pathAllowList));
+    }
+
+    private String deriveKey(final String layerDigest, final String layerName, final List<String> pathAllowList) {
+        final String keySource = String.join("|", layerDigest, ENTRY_FORMAT_VERSION, pathAllowList == null ? "" : String.join(",", pathAllowList));
+        final String key = DigestUtils.sha256Hex(keySource);
+        logger.debug(String.format("Layer cache key for %s (%s): %s", layerName, keySource, key));
+        return key;
+    }
+
+    // Entries can only be used between startUsing() and stopUsing()
+    public synchronized void startUsing() throws IOException {
+        if (userCount == 0) {
+            final File cacheDir = getCacheDir();
+            cacheDir.mkdirs();
+            lockFile = new RandomAccessFile(new File(cacheDir, LOCK_FILENAME), "rw");
+            try {
+                sharedLock = lockFile.getChannel().lock(0L, Long.MAX_VALUE, true);
+            } catch (final IOException e) {
+                closeLockFile();
+                throw e;
+            }
+        }
+        userCount++;
+    }
+
+    public synchronized void stopUsing() {
+        userCount--;
+        if (userCount > 0) {
+            return;
+        }
+        try {
+            sharedLock.release();
+            evict(lockFile.getChannel(), config.getLayerCacheMaxSizeMb() * BYTES_PER_MB);
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to release layer cache lock: %s", e.getMessage()));
+        } finally {
+            sharedLock = null;
+            closeLockFile();
+        }
+    }
+
+    public synchronized Optional<File> get(final String key) {
+        final File entryDir = new File(getCacheDir(), key);
+        if (!entryDir.isDirectory()) {
+            logger.debug(String.format("Layer cache miss: %s", key));
+            inspectorMetrics.recordLayerCacheLookup(false);
+            return Optional.empty();
+        }
+        // The entry dir's modification time is its last use time, for LRU eviction
+        entryDir.setLastModified(System.currentTimeMillis());
+        logger.debug(String.format("Layer cache hit: %s", entryDir.getAbsolutePath()));
+        inspectorMetrics.recordLayerCacheLookup(true);
+        return Optional.of(entryDir);
+    }
+
+    // The extractor fills the temp entry dir in, then hands it to put()
+    public File createTempEntryDir() {
+        final File tempEntryDir = new File(getCacheDir(), TEMP_ENTRY_DIR_PREFIX + UUID.randomUUID().toString());
+        tempEntryDir.mkdirs();
+        return tempEntryDir;
+    }
+
+    // Returns the entry dir: the given one, or the one another thread or run added first
+    public File put(final String key, final File tempEntryDir) throws IOException {
+        final File entryDir = new File(getCacheDir(), key);
+        try {
+            Files.move(tempEntryDir.toPath(), entryDir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            logger.debug(String.format("Added layer to layer cache as %s", entryDir.getAbsolutePath()));
+        } catch (final FileAlreadyExistsException | DirectoryNotEmptyException | AtomicMoveNotSupportedException e) {
+            logger.debug(String.format("Layer cache entry %s not replaced: %s", entryDir.getAbsolutePath(), e.getMessage()));
+        } finally {
+            FileUtils.deleteQuietly(tempEntryDir);
+        }
+        if (!entryDir.isDirectory()) {
+            throw new IOException(String.format("Unable to add layer cache entry %s", entryDir.getAbsolutePath()));
+        }
+        entryDir.setLastModified(System.currentTimeMillis());
+        return entryDir;
+    }
+
+    private File getCacheDir() {
+        return new File(programPaths.getHubDockerPgmDirPathHost(), CACHE_DIR);
+    }
+
+    private void evict(final FileChannel lockChannel, final long maxSizeBytes) throws IOException {
+        // If another run is using the cache, it will evict when it's done
+        final FileLock exclusiveLock = lockChannel.tryLock();
+        if (exclusiveLock == null) {
+            logger.debug("Layer cache is in use by another run; not evicting");
+            return;
+        }
+        try {
+            // No run is using the cache, so any temp entry dirs were left behind by runs that did not finish
+            final File[] tempEntryDirs = getCacheDir().listFiles(file -> file.getName().startsWith(TEMP_ENTRY_DIR_PREFIX));
+            if (tempEntryDirs != null) {
+                for (final File tempEntryDir : tempEntryDirs) {
+                    FileUtils.deleteQuietly(tempEntryDir);
+                }
+            }
+            final File[] entryDirs = getCacheDir().listFiles(file -> file.isDirectory() && !file.getName().startsWith(TEMP_ENTRY_DIR_PREFIX));
+            if (entryDirs == null) {
+                return;
+            }
+            final List<File> entryDirsOldestFirst = new ArrayList<>(Arrays.asList(entryDirs));
+            entryDirsOldestFirst.sort(Comparator.comparingLong(File::lastModified));
+            long totalSizeBytes = 0L;
+            for (final File entryDir : entryDirsOldestFirst) {
+                totalSizeBytes += FileUtils.sizeOfDirectory(entryDir);
+            }
+            for (final File entryDir : entryDirsOldestFirst) {
+                if (totalSizeBytes <= maxSizeBytes) {
+                    break;
+                }
+                final long entrySizeBytes = FileUtils.sizeOfDirectory(entryDir);
+                logger.debug(String.format("Evicting least recently used layer cache entry %s", entryDir.getAbsolutePath()));
+                FileUtils.deleteQuietly(entryDir);
+                totalSizeBytes -= entrySizeBytes;
+            }
+        } finally {
+            exclusiveLock.release();
+        }
+    }
+
+    private void closeLockFile() {
+        try {
+            lockFile.close();
+        } catch (final IOException e) {
+            logger.debug(String.format("Unable to close layer cache lock file: %s", e.getMessage()));
+        }
+        lockFile = null;
+    }
+}
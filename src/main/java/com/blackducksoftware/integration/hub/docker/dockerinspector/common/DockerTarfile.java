@@ -32,9 +32,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ImageTarContents;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.OciImageLayout;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.registry.RegistryImageAcquirer;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 
 @Component
@@ -50,8 +54,15 @@ public class DockerTarfile {
     @Autowired
     private ProgramPaths programPaths;
 
+    @Autowired
+    private RegistryImageAcquirer registryImageAcquirer;
+
     public File deriveDockerTarFile() throws IOException, HubIntegrationException {
         logger.debug(String.format("programPaths.getHubDockerTargetDirPath(): %s", programPaths.getHubDockerTargetDirPath()));
+        if (isOciImageLayoutApplicable()) {
+            return new OciImageLayout(config.getLayerDecompressionThreadCount()).extract(new File(config.getDockerTar()), config.getDockerImageRepo(), config.getDockerImageTag(), new File(programPaths.getHubDockerTargetDirPath()),
+                    new File(programPaths.getHubDockerWorkingDirPath()), true).getDockerTarFile();
+        }
         if (StringUtils.isNotBlank(config.getDockerTar())) {
             return new File(config.getDockerTar());
         } else {
@@ -59,14 +70,53 @@ public class DockerTarfile {
         }
     }
 
+    /*
+     * Registry-direct and OCI image layout sources are read straight into layer tars. docker save output is always saved to
+     * the image tarfile (as it streams from the Docker engine), and its layer tars are read in place from there.
+     */
+    public boolean isStreamingApplicable() {
+        return isRegistryDirectApplicable() || isOciImageLayoutApplicable();
+    }
+
+    // docker.tar can also be an OCI image layout directory, which is read into the same form as streamed docker save output
+    public boolean isOciImageLayoutApplicable() {
+        return StringUtils.isNotBlank(config.getDockerTar()) && OciImageLayout.isOciImageLayout(new File(config.getDockerTar()));
+    }
+
+    // An image given by ID only exists in a Docker engine, so it can't be gotten from a registry
+    public boolean isRegistryDirectApplicable() {
+        return config.isDockerRegistryDirect() && StringUtils.isBlank(config.getDockerTar()) && StringUtils.isBlank(config.getDockerImageId()) && StringUtils.isNotBlank(config.getDockerImageRepo());
+    }
+
+    public ImageTarContents deriveDockerTarContentsStreaming(final File workingDirectory, final boolean saveImageTarFile) throws IOException, HubIntegrationException {
+        final File imageTarDirectory = new File(programPaths.getHubDockerTargetDirPath());
+        if (isRegistryDirectApplicable()) {
+            return acquireFromRegistry(imageTarDirectory, workingDirectory, saveImageTarFile);
+        }
+        if (isOciImageLayoutApplicable()) {
+            return new OciImageLayout(config.getLayerDecompressionThreadCount()).extract(new File(config.getDockerTar()), config.getDockerImageRepo(), config.getDockerImageTag(), imageTarDirectory, workingDirectory, saveImageTarFile);
+        }
+        throw new HubIntegrationException("The target image can only be streamed from its registry or from an OCI image layout");
+    }
+
     private File deriveDockerTarFileGivenImageSpec() throws HubIntegrationException, IOException {
         File finalDockerTarfile = null;
         final File imageTarDirectory = new File(programPaths.getHubDockerTargetDirPath());
-        if (StringUtils.isNotBlank(config.getDockerImageId())) {
+        if (isRegistryDirectApplicable()) {
+            finalDockerTarfile = acquireFromRegistry(imageTarDirectory, new File(programPaths.getHubDockerWorkingDirPath()), true).getDockerTarFile();
+        } else if (StringUtils.isNotBlank(config.getDockerImageId())) {
             finalDockerTarfile = dockerClientManager.getTarFileFromDockerImageById(config.getDockerImageId(), imageTarDirectory);
         } else if (StringUtils.isNotBlank(config.getDockerImageRepo())) {
             finalDockerTarfile = dockerClientManager.getTarFileFromDockerImage(config.getDockerImageRepo(), config.getDockerImageTag(), imageTarDirectory);
         }
         return finalDockerTarfile;
     }
+
+    private ImageTarContents acquireFromRegistry(final File imageTarDirectory, final File workingDirectory, final boolean saveImageTarFile) throws IOException, HubIntegrationException {
+        try {
+            return registryImageAcquirer.acquire(config.getDockerImageRepo(), config.getDockerImageTag(), imageTarDirectory, workingDirectory, saveImageTarFile);
+        } catch (final IntegrationException e) {
+            throw new HubIntegrationException(String.format("Unable to get image %s:%s from its registry: %s", config.getDockerImageRepo(), config.getDockerImageTag(), e.getMessage()), e);
+        }
+    }
 }
@@ -42,9 +42,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.CachedBdio;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerexec.DissectedImage;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.BdioUploader;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.HubClient;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.imageinspector.lib.ImageInfoDerived;
@@ -67,6 +70,9 @@ public class Output {
     @Autowired
     private HubClient hubClient;
 
+    @Autowired
+    private BdioUploader bdioUploader;
+
     @Autowired
     private ProgramPaths programPaths;
 
@@ -76,6 +82,9 @@ public class Output {
     @Autowired
     private ResultFile resultFile;
 
+    @Autowired
+    private PhaseTimings phaseTimings;
+
     public void ensureWriteability() {
         if (config.isOnHost()) {
             final File outputDir = new File(programPaths.getHubDockerOutputPathHost());
@@ -99,20 +108,55 @@ public class Output {
             final File userOutputDir = new File(config.getOutputPath());
             final File outputBdioFile = new File(userOutputDir, outputBdioFilename);
             logger.info(String.format("Writing BDIO to %s", outputBdioFile.getAbsolutePath()));
+            final long startTime = System.currentTimeMillis();
             FileUtils.write(outputBdioFile, bdioString, StandardCharsets.UTF_8);
+            phaseTimings.record(Phase.BDIO_WRITE, startTime, outputBdioFile.length());
+        }
+    }
+
+    // The given BDIO file (a temp file in the user output dir, or the working dir) is moved into place
+    public void provideBdioFileOutput(final File bdioFile, final String outputBdioFilename) throws IOException, IntegrationException {
+        if (StringUtils.isNotBlank(config.getOutputPath())) {
+            logger.info("Writing contents of container output dir to user output dir");
+            provideOutput();
+            final File userOutputDir = new File(config.getOutputPath());
+            final File outputBdioFile = new File(userOutputDir, outputBdioFilename);
+            logger.info(String.format("Writing BDIO to %s", outputBdioFile.getAbsolutePath()));
+            final long startTime = System.currentTimeMillis();
+            FileUtils.deleteQuietly(outputBdioFile);
+            FileUtils.moveFile(bdioFile, outputBdioFile);
+            phaseTimings.record(Phase.BDIO_WRITE, startTime, outputBdioFile.length());
         }
     }
 
     public void writeBdioFile(final DissectedImage dissectedImage, final ImageInfoDerived imageInfoDerived) throws FileNotFoundException, IOException {
+        final long startTime = System.currentTimeMillis();
         final File bdioFile = imageInspector.writeBdioFile(new File(programPaths.getHubDockerOutputPath()), imageInfoDerived);
+        phaseTimings.record(Phase.BDIO_WRITE, startTime, bdioFile.length());
         logger.info(String.format("BDIO File generated: %s", bdioFile.getAbsolutePath()));
         dissectedImage.setBdioFilename(bdioFile.getName());
     }
 
+    public void writeCachedBdioFile(final DissectedImage dissectedImage, final CachedBdio cachedBdio) throws IOException {
+        final File bdioFile = new File(programPaths.getHubDockerOutputPath(), cachedBdio.getBdioFilename());
+        final long startTime = System.currentTimeMillis();
+        FileUtils.write(bdioFile, cachedBdio.getBdioString(), StandardCharsets.UTF_8);
+        phaseTimings.record(Phase.BDIO_WRITE, startTime, bdioFile.length());
+        logger.info(String.format("BDIO File copied from cache: %s", bdioFile.getAbsolutePath()));
+        dissectedImage.setBdioFilename(bdioFile.getName());
+    }
+
+    public File getBdioFile() {
+        final List<File> bdioFiles = findBdioFiles(programPaths.getHubDockerOutputPath());
+        return bdioFiles.size() == 1 ? bdioFiles.get(0) : null;
+    }
+
     public void uploadBdio(final DissectedImage dissectedImage) throws IntegrationException {
         if (config.isUploadBdio()) {
             logger.info("Uploading BDIO to Hub");
+            final long startTime = System.currentTimeMillis();
             dissectedImage.setBdioFilename(uploadBdioFiles());
+            phaseTimings.record(Phase.HUB_UPLOAD, startTime);
         }
     }
 
@@ -124,14 +168,27 @@ public class Output {
             final String containerFileSystemTarFilename = Names.getContainerFileSystemTarFilename(config.getDockerImage(), config.getDockerTar());
             final File containerFileSystemTarFile = new File(outputDirectory, containerFileSystemTarFilename);
             logger.debug(String.format("Creating container filesystem tarfile %s from %s into %s", containerFileSystemTarFile.getAbsolutePath(), targetImageFileSystemRootDir.getAbsolutePath(), outputDirectory.getAbsolutePath()));
+            final long startTime = System.currentTimeMillis();
             final FileSys containerFileSys = new FileSys(targetImageFileSystemRootDir);
             containerFileSys.createTarGz(containerFileSystemTarFile);
+            phaseTimings.record(Phase.CONTAINER_FILESYSTEM_TAR, startTime, containerFileSystemTarFile.length());
+        }
+    }
+
+    public void includeDockerTarfileIfRequested(final File dockerTarFile) throws IOException {
+        if (config.isOnHost() && config.isOutputIncludeDockerTarfile() && dockerTarFile != null && dockerTarFile.exists()) {
+            logger.info("Including docker tarfile in output");
+            final File outputDirectory = new File(programPaths.getHubDockerOutputPath());
+            logger.debug(String.format("Copying %s to %s", dockerTarFile.getAbsolutePath(), outputDirectory.getAbsolutePath()));
+            FileOperations.copyFile(dockerTarFile, outputDirectory);
         }
     }
 
     public void cleanUp(final Future<String> deferredCleanup) {
         if (config.isOnHost() && config.isCleanupWorkingDir()) {
+            final long startTime = System.currentTimeMillis();
             cleanupWorkingDirs();
+            phaseTimings.record(Phase.CLEANUP, startTime);
         }
         if (deferredCleanup != null) {
             try {
@@ -146,6 +203,14 @@ public class Output {
     }
 
     public int reportResultsPkgMgrDataNotFound(final DissectedImage dissectedImage) throws IOException, IntegrationException {
+        return reportSuccess(dissectedImage);
+    }
+
+    public int reportResultsFromCache(final DissectedImage dissectedImage) throws IOException, IntegrationException {
+        return reportSuccess(dissectedImage);
+    }
+
+    private int reportSuccess(final DissectedImage dissectedImage) throws IOException, IntegrationException {
         reportResult(null, null, null,
                 dissectedImage.getDockerTarFile() == null ? "" : dissectedImage.getDockerTarFile().getName(), dissectedImage.getBdioFilename(), true);
         copyResultToUserOutputDir();
@@ -214,12 +279,14 @@ public class Output {
 
     private void writeSuccessResultFile(final Gson gson, final String resultFilePath, final OperatingSystemEnum targetOs, final String runOnImageName, final String runOnImageTag, final String dockerTarfilename, final String bdioFilename) {
         resultFile.write(gson, resultFilePath, true, "Success", targetOs, runOnImageName, runOnImageTag, dockerTarfilename, bdioFilename);
+        phaseTimings.addToResultFile(resultFilePath);
     }
 
     private void writeFailureResultFile(final Gson gson, final String resultFilePath, final OperatingSystemEnum targetOs, final String runOnImageName, final String runOnImageTag, final String dockerTarfilename, final String bdioFilename,
             final String msg) {
         resultFile.write(new Gson(), resultFilePath, false, msg, targetOs, runOnImageName, runOnImageTag,
                 dockerTarfilename, bdioFilename);
+        phaseTimings.addToResultFile(resultFilePath);
     }
 
     private void copyOutputToUserOutputDir() throws IOException {
@@ -258,10 +325,8 @@ public class Output {
 
     private void uploadBdioFiles(final List<File> bdioFiles) throws IntegrationException {
         if (hubClient.isValid()) {
-            if (bdioFiles != null) {
-                for (final File file : bdioFiles) {
-                    hubClient.uploadBdioToHub(file);
-                }
+            if (bdioFiles != null && !bdioUploader.upload(bdioFiles)) {
+                return;
             }
             logger.info(" ");
             logger.info("Successfully uploaded all of the bdio files!");
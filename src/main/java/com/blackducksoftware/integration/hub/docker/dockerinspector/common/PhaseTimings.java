@@ -0,0 +1,154 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * How long each phase of inspecting an image took (and how many bytes it produced, where that applies), written
+ * into result.json and timings.json. Job scoped, like Config, so each image in batch mode gets its own.
+ */
+@Component
+@Scope(value = Config.JOB_SCOPE, proxyMode = ScopedProxyMode.TARGET_CLASS)
+public class PhaseTimings {
+    public static final String TIMINGS_JSON_FILENAME = "timings.json";
+    private static final String TIMINGS_FIELD = "timings";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<Phase, PhaseTiming> phaseTimings = new EnumMap<>(Phase.class);
+    private long startTime = System.currentTimeMillis();
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
+    public enum Phase {
+        DOCKER_PULL("dockerPull"),
+        DOCKER_SAVE("dockerSave"),
+        TARFILE_COPY("tarfileCopy"),
+        MANIFEST_PARSE("manifestParse"),
+        LAYER_EXTRACTION("layerExtraction"),
+        OS_DETECTION("osDetection"),
+        SERVICE_START("serviceStart"),
+        GET_BDIO("getBdio"),
+        BDIO_WRITE("bdioWrite"),
+        CONTAINER_FILESYSTEM_TAR("containerFileSystemTar"),
+        HUB_UPLOAD("hubUpload"),
+        CLEANUP("cleanup");
+
+        private final String jsonName;
+
+        Phase(final String jsonName) {
+            this.jsonName = jsonName;
+        }
+
+        public String getJsonName() {
+            return jsonName;
+        }
+    }
+
+    public synchronized void reset() {
+        phaseTimings.clear();
+        startTime = System.currentTimeMillis();
+    }
+
+    public void record(final Phase phase, final long phaseStartTime) {
+        record(phase, phaseStartTime, 0L);
+    }
+
+    public synchronized void record(final Phase phase, final long phaseStartTime, final long bytes) {
+        final long milliseconds = System.currentTimeMillis() - phaseStartTime;
+        PhaseTiming phaseTiming = phaseTimings.get(phase);
+        if (phaseTiming == null) {
+            phaseTiming = new PhaseTiming();
+            phaseTimings.put(phase, phaseTiming);
+        }
+        phaseTiming.count++;
+        phaseTiming.milliseconds += milliseconds;
+        phaseTiming.bytes += bytes;
+        logger.debug(String.format("Phase %s took %d ms (%d bytes)", phase.getJsonName(), milliseconds, bytes));
+        inspectorMetrics.recordPhase(phase, milliseconds, bytes);
+    }
+
+    public synchronized JsonObject toJson() {
+        final JsonObject timingsJson = new JsonObject();
+        timingsJson.addProperty("totalMilliseconds", System.currentTimeMillis() - startTime);
+        final JsonArray phasesJson = new JsonArray();
+        for (final Map.Entry<Phase, PhaseTiming> phaseTiming : phaseTimings.entrySet()) {
+            final JsonObject phaseJson = new JsonObject();
+            phaseJson.addProperty("phase", phaseTiming.getKey().getJsonName());
+            phaseJson.addProperty("milliseconds", phaseTiming.getValue().milliseconds);
+            phaseJson.addProperty("count", phaseTiming.getValue().count);
+            phaseJson.addProperty("bytes", phaseTiming.getValue().bytes);
+            phasesJson.add(phaseJson);
+        }
+        timingsJson.add("phases", phasesJson);
+        return timingsJson;
+    }
+
+    public void addToResultFile(final String resultFilePath) {
+        final File resultFile = new File(resultFilePath);
+        try {
+            final JsonObject resultJson = new JsonParser().parse(FileUtils.readFileToString(resultFile, StandardCharsets.UTF_8)).getAsJsonObject();
+            resultJson.add(TIMINGS_FIELD, toJson());
+            FileUtils.write(resultFile, new Gson().toJson(resultJson), StandardCharsets.UTF_8);
+        } catch (final IOException | RuntimeException e) {
+            logger.warn(String.format("Unable to add timings to result file %s: %s", resultFilePath, e.getMessage()));
+        }
+    }
+
+    public void writeTimingsFile(final File outputDir) {
+        final File timingsFile = new File(outputDir, TIMINGS_JSON_FILENAME);
+        try {
+            FileUtils.write(timingsFile, new GsonBuilder().setPrettyPrinting().create().toJson(toJson()), StandardCharsets.UTF_8);
+            logger.debug(String.format("Wrote phase timings to %s", timingsFile.getAbsolutePath()));
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to write timings file %s: %s", timingsFile.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    private static class PhaseTiming {
+        private int count = 0;
+        private long milliseconds = 0L;
+        private long bytes = 0L;
+    }
+}
@@ -36,12 +36,17 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.hub.docker.dockerinspector.help.ValueDescription;
 
+// Job scoped (see JobScope) so that each batch/daemon mode job can be configured for the image it is inspecting
 @Component
+@Scope(value = Config.JOB_SCOPE, proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class Config {
+    public static final String JOB_SCOPE = "job";
     private static final String INSPECTOR_OS_UBUNTU = "ubuntu";
     private final static String GROUP_PUBLIC = "public";
     private final static String GROUP_PRIVATE = "private";
@@ -111,6 +116,16 @@ public class Config {
     @Value("${cleanup.working.dir:true}")
     private Boolean cleanupWorkingDir = Boolean.TRUE;
 
+    // Set to true to reuse the BDIO generated by an earlier run for an image with the same config digest
+    @ValueDescription(description = "Cache BDIO results (under the working dir) by image config digest?", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${bdio.cache.enabled:false}")
+    private Boolean bdioCacheEnabled = Boolean.FALSE;
+
+    // When the BDIO cache exceeds this size, the least recently used entries are evicted
+    @ValueDescription(description = "BDIO cache maximum size (MB)", defaultValue = "100", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${bdio.cache.max.size.mb:100}")
+    private Long bdioCacheMaxSizeMb = 100L;
+
     // If Hub Docker Inspector cannot derive it automatically,
     // use linux.distro to specify the target image linux distribution
     // (ubuntu, debian, busybox, centos, fedora, redhat, alpine)
@@ -123,6 +138,11 @@ public class Config {
     @Value("${command.timeout:120000}")
     private Long commandTimeout = 120000L;
 
+    // always, if-not-present, or if-digest-changed (pull only if the registry's digest for the tag differs from the local image's)
+    @ValueDescription(description = "When to pull the target image (always, if-not-present, if-digest-changed); inspector images are only pulled if not present", defaultValue = "if-digest-changed", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.pull.policy:if-digest-changed}")
+    private String dockerPullPolicy = "if-digest-changed";
+
     // Logging level: ERROR, WARN, INFO, DEBUG, TRACE
     @ValueDescription(description = "Logging Level (WARN, INFO, DEBUG, TRACE)", defaultValue = "INFO", group = Config.GROUP_PUBLIC, deprecated = false)
     @Value("${logging.level.com.blackducksoftware:INFO}")
@@ -138,6 +158,50 @@ public class Config {
     @Value("${output.include.containerfilesystem:false}")
     private Boolean outputIncludeContainerfilesystem = Boolean.FALSE;
 
+    // Set to true to include the docker image tarfile in the output
+    @ValueDescription(description = "Include docker tarfile (a large file) in output?", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${output.include.dockertarfile:false}")
+    private Boolean outputIncludeDockerTarfile = Boolean.FALSE;
+
+    // No longer used: docker save output is always streamed into the image tarfile, and the layer tars are read in place from there
+    @ValueDescription(description = "No longer has any effect (docker save output is always streamed into the image tarfile, and layers are read from it in place)", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = true)
+    @Value("${docker.save.streaming:false}")
+    private Boolean dockerSaveStreaming = Boolean.FALSE;
+
+    // Set to true to download the target image (docker.image) from its registry over the Registry v2 API, without a Docker engine
+    @ValueDescription(description = "Get the target image directly from its registry (instead of through the Docker engine)?", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.registry.direct:false}")
+    private Boolean dockerRegistryDirect = Boolean.FALSE;
+
+    @ValueDescription(description = "Number of layers to download concurrently when getting the target image directly from its registry", defaultValue = "4", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.registry.download.thread.count:4}")
+    private Integer dockerRegistryDownloadThreadCount = 4;
+
+    // Downloaded blobs are kept (by digest) under the working dir, and shared by every run that uses the same working dir
+    @ValueDescription(description = "Registry blob store maximum size (MB)", defaultValue = "10240", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.registry.blob.store.max.size.mb:10240}")
+    private Long dockerRegistryBlobStoreMaxSizeMb = 10240L;
+
+    // Layer tars are extracted concurrently into staging dirs, then merged in layer order; 1 means extract sequentially
+    @ValueDescription(description = "Number of layers to extract concurrently when constructing the container file system", defaultValue = "1", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${layer.extraction.thread.count:1}")
+    private Integer layerExtractionThreadCount = 1;
+
+    // Compressed layers (registry blobs, OCI image layout blobs) are decompressed into layer tars on a pool of their own
+    @ValueDescription(description = "Number of compressed (gzip, zstd) layers to decompress concurrently", defaultValue = "4", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${layer.decompression.thread.count:4}")
+    private Integer layerDecompressionThreadCount = 4;
+
+    // Set to true to keep extracted layers (under the working dir), keyed by layer digest, for reuse by later images and runs
+    @ValueDescription(description = "Cache extracted layers (under the working dir) by layer digest?", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${layer.cache.enabled:false}")
+    private Boolean layerCacheEnabled = Boolean.FALSE;
+
+    // When the layer cache exceeds this size, the least recently used layers are evicted
+    @ValueDescription(description = "Layer cache maximum size (MB)", defaultValue = "10240", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${layer.cache.max.size.mb:10240}")
+    private Long layerCacheMaxSizeMb = 10240L;
+
     // If you want to add a prefix to the code location name, specify it here
     @ValueDescription(description = "Hub CodeLocation prefix", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
     @Value("${hub.codelocation.prefix:}")
@@ -154,10 +218,27 @@ public class Config {
     @Value("${docker.image:}")
     private String dockerImage = "";
 
-    @ValueDescription(description = "Docker tarfile path", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
+    @ValueDescription(description = "Docker tarfile path (docker save output), or OCI image layout directory path", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
     @Value("${docker.tar:}")
     private String dockerTar = "";
 
+    // Batch mode: inspect multiple images/tarfiles in a single run
+    @ValueDescription(description = "Comma-separated list of Docker Image name:tag values and/or Docker tarfile paths to inspect (batch mode)", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.images:}")
+    private String dockerImages = "";
+
+    @ValueDescription(description = "Path to a file listing Docker Image name:tag values and/or Docker tarfile paths to inspect, one per line (batch mode)", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.images.file:}")
+    private String dockerImagesFile = "";
+
+    @ValueDescription(description = "Number of images to inspect concurrently (batch mode, and docker.tar.inspect.all.images)", defaultValue = "1", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${batch.thread.count:1}")
+    private Integer batchThreadCount = 1;
+
+    @ValueDescription(description = "Inspect every image in the docker tarfile (docker.tar), writing each image's output to its own directory under output.path", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${docker.tar.inspect.all.images:false}")
+    private Boolean dockerTarInspectAllImages = Boolean.FALSE;
+
     @ValueDescription(description = "docker.image.id", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
     @Value("${docker.image.id:}")
     private String dockerImageId = "";
@@ -232,6 +313,19 @@ public class Config {
     @Value("${imageinspector.service.start:false}")
     private Boolean imageInspectorServiceStart = Boolean.FALSE;
 
+    // Warm pool mode: service containers are left running, and reused by later runs until idle for imageinspector.service.pool.idle.minutes
+    @ValueDescription(description = "Keep ImageInspector services (containers) running for reuse by later runs (warm pool)?", defaultValue = "false", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${imageinspector.service.pool:false}")
+    private Boolean imageInspectorServicePool = Boolean.FALSE;
+
+    @ValueDescription(description = "Warm pool: stop/remove ImageInspector service containers unused for this many minutes", defaultValue = "60", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${imageinspector.service.pool.idle.minutes:60}")
+    private Long imageInspectorServicePoolIdleMinutes = 60L;
+
+    @ValueDescription(description = "Maximum number of concurrent (kept-alive, pooled) HTTP connections to each ImageInspector service", defaultValue = "10", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${imageinspector.service.connections.per.route:10}")
+    private Integer imageInspectorServiceConnectionsPerRoute = 10;
+
     @ValueDescription(description = "alpine image inspector container port", defaultValue = "8080", group = Config.GROUP_PRIVATE, deprecated = false)
     @Value("${imageinspector.service.container.port.alpine:8080}")
     private String imageInspectorContainerPortAlpine = "8080";
@@ -261,6 +355,47 @@ public class Config {
     @Value("${imageinspector.service.distro.default:ubuntu}")
     private String imageInspectorDefaultDistro = INSPECTOR_OS_UBUNTU;
 
+    @ValueDescription(description = "Send the first image inspector request to the service for the OS detected (from package manager directories) in the image tarfile, instead of the default distro's", defaultValue = "true", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${imageinspector.service.distro.detect:true}")
+    private Boolean imageInspectorDistroDetect = Boolean.TRUE;
+
+    // Daemon mode: accept inspection jobs over a local HTTP API instead of inspecting one image and exiting
+    @ValueDescription(description = "Port (on the loopback interface) on which to accept inspection jobs (daemon mode); 0 disables", defaultValue = "0", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${daemon.port:0}")
+    private Integer daemonPort = 0;
+
+    @ValueDescription(description = "Number of inspection jobs to run concurrently (daemon mode)", defaultValue = "1", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${daemon.thread.count:1}")
+    private Integer daemonThreadCount = 1;
+
+    @ValueDescription(description = "Maximum number of inspection jobs waiting to run; further jobs are rejected (daemon mode)", defaultValue = "100", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${daemon.queue.size:100}")
+    private Integer daemonQueueSize = 100;
+
+    @ValueDescription(description = "Number of finished inspection jobs whose status is kept; the oldest are forgotten first (daemon mode)", defaultValue = "1000", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${daemon.jobs.retained:1000}")
+    private Integer daemonJobsRetained = 1000;
+
+    @ValueDescription(description = "Port on which to serve Prometheus metrics (at /metrics) during batch and daemon mode runs; 0 disables", defaultValue = "0", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${metrics.port:0}")
+    private Integer metricsPort = 0;
+
+    @ValueDescription(description = "Path of the Prometheus textfile collector file (*.prom) to write metrics to at the end of the run", defaultValue = "", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${metrics.textfile.path:}")
+    private String metricsTextfilePath = "";
+
+    @ValueDescription(description = "Number of BDIO files to upload to the Hub concurrently", defaultValue = "4", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${hub.upload.thread.count:4}")
+    private Integer hubUploadThreadCount = 4;
+
+    @ValueDescription(description = "Number of times to retry a BDIO upload that failed with a server error (5xx) or a timeout", defaultValue = "3", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${hub.upload.retry.count:3}")
+    private Integer hubUploadRetryCount = 3;
+
+    @ValueDescription(description = "Base delay (in milliseconds) before retrying a BDIO upload; doubled (with random jitter) on each retry", defaultValue = "1000", group = Config.GROUP_PUBLIC, deprecated = false)
+    @Value("${hub.upload.retry.backoff.milliseconds:1000}")
+    private Long hubUploadRetryBackoffMilliseconds = 1000L;
+
     // Environment Variables
     @Value("${BD_HUB_PASSWORD:}")
     private String hubPasswordEnvVar = "";
@@ -410,10 +545,22 @@ public class Config {
         return optionsByFieldName.get("linuxDistro").getResolvedValue();
     }
 
+    public boolean isBdioCacheEnabled() {
+        return optionsByFieldName.get("bdioCacheEnabled").getResolvedValue().equals("true");
+    }
+
+    public Long getBdioCacheMaxSizeMb() {
+        return new Long(optionsByFieldName.get("bdioCacheMaxSizeMb").getResolvedValue());
+    }
+
     public Long getCommandTimeout() {
         return new Long(optionsByFieldName.get("commandTimeout").getResolvedValue());
     }
 
+    public String getDockerPullPolicy() {
+        return optionsByFieldName.get("dockerPullPolicy").getResolvedValue();
+    }
+
     public String getOutputPath() {
         return optionsByFieldName.get("outputPath").getResolvedValue();
     }
@@ -422,6 +569,38 @@ public class Config {
         return optionsByFieldName.get("outputIncludeContainerfilesystem").getResolvedValue().equals("true");
     }
 
+    public boolean isOutputIncludeDockerTarfile() {
+        return optionsByFieldName.get("outputIncludeDockerTarfile").getResolvedValue().equals("true");
+    }
+
+    public boolean isDockerRegistryDirect() {
+        return optionsByFieldName.get("dockerRegistryDirect").getResolvedValue().equals("true");
+    }
+
+    public Integer getDockerRegistryDownloadThreadCount() {
+        return new Integer(optionsByFieldName.get("dockerRegistryDownloadThreadCount").getResolvedValue());
+    }
+
+    public Long getDockerRegistryBlobStoreMaxSizeMb() {
+        return new Long(optionsByFieldName.get("dockerRegistryBlobStoreMaxSizeMb").getResolvedValue());
+    }
+
+    public Integer getLayerExtractionThreadCount() {
+        return new Integer(optionsByFieldName.get("layerExtractionThreadCount").getResolvedValue());
+    }
+
+    public Integer getLayerDecompressionThreadCount() {
+        return new Integer(optionsByFieldName.get("layerDecompressionThreadCount").getResolvedValue());
+    }
+
+    public boolean isLayerCacheEnabled() {
+        return optionsByFieldName.get("layerCacheEnabled").getResolvedValue().equals("true");
+    }
+
+    public Long getLayerCacheMaxSizeMb() {
+        return new Long(optionsByFieldName.get("layerCacheMaxSizeMb").getResolvedValue());
+    }
+
     public String getHubCodelocationPrefix() {
         return optionsByFieldName.get("hubCodelocationPrefix").getResolvedValue();
     }
@@ -434,6 +613,22 @@ public class Config {
         return unEscape(optionsByFieldName.get("dockerTar").getResolvedValue());
     }
 
+    public String getDockerImages() {
+        return optionsByFieldName.get("dockerImages").getResolvedValue();
+    }
+
+    public String getDockerImagesFile() {
+        return unEscape(optionsByFieldName.get("dockerImagesFile").getResolvedValue());
+    }
+
+    public boolean isDockerTarInspectAllImages() {
+        return optionsByFieldName.get("dockerTarInspectAllImages").getResolvedValue().equals("true");
+    }
+
+    public Integer getBatchThreadCount() {
+        return new Integer(optionsByFieldName.get("batchThreadCount").getResolvedValue());
+    }
+
     public String getDockerImageId() {
         return optionsByFieldName.get("dockerImageId").getResolvedValue();
     }
@@ -554,6 +749,74 @@ public class Config {
         return optionsByFieldName.get("imageInspectorServiceStart").getResolvedValue().equals("true");
     }
 
+    public boolean isImageInspectorServicePool() {
+        return optionsByFieldName.get("imageInspectorServicePool").getResolvedValue().equals("true");
+    }
+
+    public boolean isImageInspectorDistroDetect() {
+        return optionsByFieldName.get("imageInspectorDistroDetect").getResolvedValue().equals("true");
+    }
+
+    public Integer getDaemonPort() {
+        return new Integer(optionsByFieldName.get("daemonPort").getResolvedValue());
+    }
+
+    public Integer getDaemonThreadCount() {
+        return new Integer(optionsByFieldName.get("daemonThreadCount").getResolvedValue());
+    }
+
+    public Integer getDaemonQueueSize() {
+        return new Integer(optionsByFieldName.get("daemonQueueSize").getResolvedValue());
+    }
+
+    public Integer getDaemonJobsRetained() {
+        return new Integer(optionsByFieldName.get("daemonJobsRetained").getResolvedValue());
+    }
+
+    public Integer getMetricsPort() {
+        return new Integer(optionsByFieldName.get("metricsPort").getResolvedValue());
+    }
+
+    public String getMetricsTextfilePath() {
+        return optionsByFieldName.get("metricsTextfilePath").getResolvedValue();
+    }
+
+    public Integer getImageInspectorServiceConnectionsPerRoute() {
+        return new Integer(optionsByFieldName.get("imageInspectorServiceConnectionsPerRoute").getResolvedValue());
+    }
+
+    public Long getImageInspectorServicePoolIdleMinutes() {
+        return new Long(optionsByFieldName.get("imageInspectorServicePoolIdleMinutes").getResolvedValue());
+    }
+
+    public Integer getHubUploadThreadCount() {
+        return new Integer(optionsByFieldName.get("hubUploadThreadCount").getResolvedValue());
+    }
+
+    public Integer getHubUploadRetryCount() {
+        return new Integer(optionsByFieldName.get("hubUploadRetryCount").getResolvedValue());
+    }
+
+    public Long getHubUploadRetryBackoffMilliseconds() {
+        return new Long(optionsByFieldName.get("hubUploadRetryBackoffMilliseconds").getResolvedValue());
+    }
+
+    public void setDockerImage(final String newValue) {
+        optionsByFieldName.get("dockerImage").setResolvedValue(newValue);
+    }
+
+    public void setDockerTar(final String newValue) {
+        optionsByFieldName.get("dockerTar").setResolvedValue(newValue);
+    }
+
+    public void setDockerImageId(final String newValue) {
+        optionsByFieldName.get("dockerImageId").setResolvedValue(newValue);
+    }
+
+    public void setOutputPath(final String newValue) {
+        optionsByFieldName.get("outputPath").setResolvedValue(newValue);
+    }
+
     public void setDockerImageRepo(final String newValue) {
         optionsByFieldName.get("dockerImageRepo").setResolvedValue(newValue);
     }
@@ -586,9 +849,16 @@ public class Config {
         this.callerName = null;
         this.callerVersion = null;
         this.cleanupWorkingDir = null;
+        this.bdioCacheEnabled = null;
+        this.bdioCacheMaxSizeMb = null;
         this.commandTimeout = null;
+        this.dockerPullPolicy = null;
         this.dockerImage = null;
         this.dockerImageId = null;
+        this.dockerImages = null;
+        this.dockerImagesFile = null;
+        this.batchThreadCount = null;
+        this.dockerTarInspectAllImages = null;
         this.dockerImageRepo = null;
         this.dockerImageTag = null;
         this.dockerInspectorJavaOptsValue = null;
@@ -613,6 +883,15 @@ public class Config {
         this.loggingLevel = null;
         this.onHost = null;
         this.outputIncludeContainerfilesystem = null;
+        this.outputIncludeDockerTarfile = null;
+        this.dockerSaveStreaming = null;
+        this.dockerRegistryDirect = null;
+        this.dockerRegistryDownloadThreadCount = null;
+        this.dockerRegistryBlobStoreMaxSizeMb = null;
+        this.layerExtractionThreadCount = null;
+        this.layerDecompressionThreadCount = null;
+        this.layerCacheEnabled = null;
+        this.layerCacheMaxSizeMb = null;
         this.outputPath = null;
         this.phoneHome = null;
         this.scanCliOptsEnvVar = null;
@@ -628,6 +907,9 @@ public class Config {
         this.sharedDirPathLocal = null;
         this.imageInspectorUrl = null;
         this.imageInspectorServiceStart = null;
+        this.imageInspectorServicePool = null;
+        this.imageInspectorServicePoolIdleMinutes = null;
+        this.imageInspectorServiceConnectionsPerRoute = null;
         this.imageInspectorContainerPortAlpine = null;
         this.imageInspectorContainerPortCentos = null;
         this.imageInspectorContainerPortUbuntu = null;
@@ -636,5 +918,15 @@ public class Config {
         this.imageInspectorHostPortCentos = null;
         this.imageInspectorHostPortUbuntu = null;
         this.imageInspectorDefaultDistro = null;
+        this.imageInspectorDistroDetect = null;
+        this.daemonPort = null;
+        this.daemonThreadCount = null;
+        this.daemonQueueSize = null;
+        this.daemonJobsRetained = null;
+        this.metricsPort = null;
+        this.metricsTextfilePath = null;
+        this.hubUploadThreadCount = null;
+        this.hubUploadRetryCount = null;
+        this.hubUploadRetryBackoffMilliseconds = null;
     }
 }
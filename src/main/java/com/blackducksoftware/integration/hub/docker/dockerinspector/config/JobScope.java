@@ -0,0 +1,108 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.Scope;
+
+/*
+ * Job scoped beans (Config, ProgramPaths, ...) have an instance of their own for each batch/daemon mode job, on the thread
+ * that runs the job (see runJob()), so each job can be configured for the image it is inspecting. Every other thread (the
+ * main thread, and helper pools: service starts, uploads, downloads, ...) shares one process wide instance, so it never
+ * gets a fresh, default instance that is missing changes made elsewhere. Helper work that needs a job's settings
+ * must be handed them (captured on the job's thread), since it sees the process wide instance.
+ */
+public class JobScope implements Scope {
+    private static final ThreadLocal<Map<String, Object>> jobBeans = new ThreadLocal<>();
+    private final Map<String, Object> processBeans = new HashMap<>();
+
+    public static <T> T runJob(final Supplier<T> job) {
+        final Map<String, Object> enclosingJobBeans = jobBeans.get();
+        jobBeans.set(new HashMap<>());
+        try {
+            return job.get();
+        } finally {
+            if (enclosingJobBeans == null) {
+                jobBeans.remove();
+            } else {
+                jobBeans.set(enclosingJobBeans);
+            }
+        }
+    }
+
+    public static boolean isInJob() {
+        return jobBeans.get() != null;
+    }
+
+    @Override
+    public Object get(final String name, final ObjectFactory<?> objectFactory) {
+        final Map<String, Object> currentJobBeans = jobBeans.get();
+        if (currentJobBeans != null) {
+            return getOrCreate(currentJobBeans, name, objectFactory);
+        }
+        // Creating one bean can (via a proxy) get another, on the same thread
+        synchronized (processBeans) {
+            return getOrCreate(processBeans, name, objectFactory);
+        }
+    }
+
+    @Override
+    public Object remove(final String name) {
+        final Map<String, Object> currentJobBeans = jobBeans.get();
+        if (currentJobBeans != null) {
+            return currentJobBeans.remove(name);
+        }
+        synchronized (processBeans) {
+            return processBeans.remove(name);
+        }
+    }
+
+    @Override
+    public void registerDestructionCallback(final String name, final Runnable callback) {
+        // Nothing in this scope needs destroying
+    }
+
+    @Override
+    public Object resolveContextualObject(final String key) {
+        return null;
+    }
+
+    @Override
+    public String getConversationId() {
+        return jobBeans.get() == null ? "process" : Thread.currentThread().getName();
+    }
+
+    private Object getOrCreate(final Map<String, Object> beans, final String name, final ObjectFactory<?> objectFactory) {
+        Object bean = beans.get(name);
+        if (bean == null) {
+            bean = objectFactory.getObject();
+            beans.put(name, bean);
+        }
+        return bean;
+    }
+}
@@ -33,9 +33,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.stereotype.Component;
 
+// Job scoped (like Config) so that each batch/daemon mode job gets its own run dir
 @Component
+@Scope(value = Config.JOB_SCOPE, proxyMode = ScopedProxyMode.TARGET_CLASS)
 public class ProgramPaths {
 
     @Autowired
@@ -107,7 +111,15 @@ public class ProgramPaths {
 
     @PostConstruct
     public void init() {
+        init(null);
+    }
+
+    // The run ID suffix distinguishes the run dirs (and container names) of images inspected by the same process
+    public void init(final String runIdSuffix) {
         cleanedProcessId = atSignToUnderscore(getProcessIdOrGenerateUniqueId());
+        if (StringUtils.isNotBlank(runIdSuffix)) {
+            cleanedProcessId = String.format("%s_%s", cleanedProcessId, runIdSuffix);
+        }
         logger.info(String.format("Process name: %s", cleanedProcessId));
         hubDockerJarPathActual = deriveJarPath();
         if (StringUtils.isBlank(hubDockerPgmDirPathHost)) {
@@ -0,0 +1,101 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.daemon;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchResult;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchTarget;
+import com.google.gson.Gson;
+
+// An inspection job submitted to the daemon; serialized (by Gson) as the job's status
+public class DaemonJob {
+    private final int id;
+    private final String target;
+    private final transient BatchTarget batchTarget;
+    private Status status = Status.QUEUED;
+    private BatchResult result;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        REJECTED;
+
+        public boolean isFinished() {
+            return this == SUCCEEDED || this == FAILED || this == REJECTED;
+        }
+    }
+
+    public DaemonJob(final int id, final String target) {
+        this.id = id;
+        this.target = target;
+        this.batchTarget = new BatchTarget(id, target);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public BatchTarget getBatchTarget() {
+        return batchTarget;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized void setRunning() {
+        setStatus(Status.RUNNING);
+    }
+
+    public synchronized void setRejected() {
+        setStatus(Status.REJECTED);
+    }
+
+    public synchronized void setResult(final BatchResult result) {
+        this.result = result;
+        setStatus(result.isSucceeded() ? Status.SUCCEEDED : Status.FAILED);
+    }
+
+    public synchronized Status awaitStatusChange(final Status seenStatus, final long timeoutMilliseconds) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+        while (status == seenStatus) {
+            final long remainingMilliseconds = deadline - System.currentTimeMillis();
+            if (remainingMilliseconds <= 0L) {
+                break;
+            }
+            wait(remainingMilliseconds);
+        }
+        return status;
+    }
+
+    public synchronized String toJson(final Gson gson) {
+        return gson.toJson(this);
+    }
+
+    private void setStatus(final Status newStatus) {
+        status = newStatus;
+        notifyAll();
+    }
+}
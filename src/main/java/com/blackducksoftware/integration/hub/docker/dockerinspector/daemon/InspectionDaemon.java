@@ -0,0 +1,343 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchInspector;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchResult;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ImageInspectorClientStartServices;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Daemon mode: instead of inspecting one image and exiting, accept inspection jobs over a local (loopback only) HTTP API,
+ * queue them, and run them on a bounded pool of worker threads, keeping the JVM, Spring context, docker client and
+ * inspector services warm between jobs. Each job runs like a batch mode target, with its own output dir under output.path.
+ * Only the most recent daemon.jobs.retained finished jobs are kept (and reported).
+ *
+ * Every request must carry the header "Authorization: Bearer <token>", where the token is a random value generated
+ * at startup and written to output.path/daemon.token, which only the user running the daemon can read.
+ *
+ * POST /jobs {"target":"<image:tag or tarfile path>"}   submit a job; returns its status (including its id)
+ * GET  /jobs                                           status of all jobs
+ * GET  /jobs/<id>                                      status of one job
+ * GET  /jobs/<id>/events                               stream of the job's status (one JSON object per line) until it finishes
+ * POST /shutdown                                       stop accepting jobs, finish queued ones, and exit
+ */
+@Component
+public class InspectionDaemon {
+    private static final String JOBS_PATH = "/jobs";
+    private static final String SHUTDOWN_PATH = "/shutdown";
+    private static final String EVENTS_PATH_SUFFIX = "/events";
+    private static final String TARGET_FIELD = "target";
+    private static final String TOKEN_FILENAME = "daemon.token";
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final int TOKEN_BYTES = 32;
+    private static final long EVENTS_STATUS_WAIT_MILLISECONDS = 30000L;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Gson gson = new Gson();
+    private final Map<Integer, DaemonJob> jobs = new ConcurrentSkipListMap<>();
+    private final AtomicInteger nextJobId = new AtomicInteger(1);
+    private final CountDownLatch shutdownRequested = new CountDownLatch(1);
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private BatchInspector batchInspector;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
+    @Autowired
+    private ImageInspectorClientStartServices imageInspectorClientStartServices;
+
+    private ThreadPoolExecutor jobExecutor;
+    private File outputDir;
+    private IntSupplier imageInspection;
+    private byte[] token;
+
+    public boolean isApplicable() {
+        return config.getDaemonPort() > 0;
+    }
+
+    public int serve(final IntSupplier imageInspection) throws IntegrationException, IOException, InterruptedException {
+        if (StringUtils.isBlank(config.getOutputPath())) {
+            throw new IntegrationException("Daemon mode (daemon.port) requires output.path");
+        }
+        this.outputDir = new File(config.getOutputPath());
+        this.imageInspection = imageInspection;
+        final File tokenFile = new File(outputDir, TOKEN_FILENAME);
+        this.token = writeToken(tokenFile);
+        final int threadCount = Math.max(1, config.getDaemonThreadCount());
+        jobExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(Math.max(1, config.getDaemonQueueSize())));
+        inspectorMetrics.monitorExecutor(jobExecutor, "daemon.jobs");
+        final ExecutorService requestExecutor = Executors.newCachedThreadPool();
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getDaemonPort()), 0);
+        server.createContext(JOBS_PATH, exchange -> handle(exchange, () -> handleJobsRequest(exchange)));
+        server.createContext(SHUTDOWN_PATH, exchange -> handle(exchange, () -> handleShutdownRequest(exchange)));
+        server.setExecutor(requestExecutor);
+        server.start();
+        logger.info(String.format("Daemon mode: accepting inspection jobs at http://%s:%d%s using %d threads; the API token is in %s", InetAddress.getLoopbackAddress().getHostAddress(),
+                server.getAddress().getPort(), JOBS_PATH, threadCount, tokenFile.getAbsolutePath()));
+
+        shutdownRequested.await();
+        logger.info("Daemon mode: shutting down once queued jobs have finished");
+        jobExecutor.shutdown();
+        jobExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        imageInspectorClientStartServices.cleanUpServiceContainers();
+        server.stop(0);
+        requestExecutor.shutdownNow();
+        Files.deleteIfExists(tokenFile.toPath());
+        return 0;
+    }
+
+    // The token file is created readable and writable by its owner only
+    private byte[] writeToken(final File tokenFile) throws IOException {
+        final byte[] tokenBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        final String tokenString = Hex.encodeHexString(tokenBytes);
+        outputDir.mkdirs();
+        Files.deleteIfExists(tokenFile.toPath());
+        try {
+            Files.createFile(tokenFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (final UnsupportedOperationException e) {
+            Files.createFile(tokenFile.toPath());
+            tokenFile.setReadable(false, false);
+            tokenFile.setWritable(false, false);
+            tokenFile.setReadable(true, true);
+            tokenFile.setWritable(true, true);
+        }
+        FileUtils.write(tokenFile, tokenString, StandardCharsets.UTF_8);
+        return tokenString.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean isAuthorized(final HttpExchange exchange) {
+        final String authorization = exchange.getRequestHeaders().getFirst(AUTHORIZATION_HEADER);
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return false;
+        }
+        // Compared in constant time
+        return MessageDigest.isEqual(token, authorization.substring(BEARER_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleJobsRequest(final HttpExchange exchange) throws IOException, InterruptedException {
+        final String path = exchange.getRequestURI().getPath();
+        final String method = exchange.getRequestMethod();
+        if (JOBS_PATH.equals(path) || (JOBS_PATH + "/").equals(path)) {
+            if ("POST".equals(method)) {
+                submitJob(exchange);
+            } else if ("GET".equals(method)) {
+                final List<String> jobStatuses = new ArrayList<>();
+                for (final DaemonJob job : jobs.values()) {
+                    jobStatuses.add(job.toJson(gson));
+                }
+                respond(exchange, 200, String.format("[%s]", String.join(",", jobStatuses)));
+            } else {
+                respondWithMessage(exchange, 405, String.format("Method %s not allowed", method));
+            }
+            return;
+        }
+        final String jobPath = path.substring(JOBS_PATH.length() + 1);
+        final boolean events = jobPath.endsWith(EVENTS_PATH_SUFFIX);
+        final DaemonJob job = getJob(events ? StringUtils.removeEnd(jobPath, EVENTS_PATH_SUFFIX) : jobPath);
+        if (job == null) {
+            respondWithMessage(exchange, 404, String.format("No such job: %s", jobPath));
+        } else if (events) {
+            streamJobEvents(exchange, job);
+        } else {
+            respond(exchange, 200, job.toJson(gson));
+        }
+    }
+
+    private void submitJob(final HttpExchange exchange) throws IOException {
+        String target = null;
+        try {
+            final JsonObject request = new JsonParser().parse(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)).getAsJsonObject();
+            if (request.has(TARGET_FIELD)) {
+                target = request.get(TARGET_FIELD).getAsString().trim();
+            }
+        } catch (final RuntimeException e) {
+            logger.debug(String.format("Unable to parse job request: %s", e.getMessage()));
+        }
+        if (StringUtils.isBlank(target)) {
+            respondWithMessage(exchange, 400, String.format("Request body must be a JSON object with a \"%s\" field (an image name:tag or a tarfile path)", TARGET_FIELD));
+            return;
+        }
+        final DaemonJob job = new DaemonJob(nextJobId.getAndIncrement(), target);
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(() -> runJob(job));
+        } catch (final RejectedExecutionException e) {
+            job.setRejected();
+            pruneFinishedJobs();
+            respond(exchange, 503, job.toJson(gson));
+            return;
+        }
+        logger.info(String.format("Daemon mode: queued job %d: %s", job.getId(), target));
+        respond(exchange, 202, job.toJson(gson));
+    }
+
+    private void runJob(final DaemonJob job) {
+        job.setRunning();
+        BatchResult result;
+        try {
+            result = batchInspector.inspectTarget(job.getBatchTarget(), new File(outputDir, job.getBatchTarget().getJobName()), imageInspection);
+        } catch (final RuntimeException e) {
+            result = new BatchResult(job.getBatchTarget().getTarget(), false, String.format("Error inspecting image: %s", e.getMessage()), null, null, 0L);
+        }
+        job.setResult(result);
+        pruneFinishedJobs();
+    }
+
+    // Jobs are kept in ID (submission) order, so the oldest finished jobs are forgotten first
+    private synchronized void pruneFinishedJobs() {
+        final int retainedCount = Math.max(0, config.getDaemonJobsRetained());
+        int finishedCount = 0;
+        for (final DaemonJob job : jobs.values()) {
+            if (job.getStatus().isFinished()) {
+                finishedCount++;
+            }
+        }
+        for (final DaemonJob job : jobs.values()) {
+            if (finishedCount <= retainedCount) {
+                break;
+            }
+            if (job.getStatus().isFinished()) {
+                jobs.remove(job.getId());
+                finishedCount--;
+            }
+        }
+    }
+
+    private void streamJobEvents(final HttpExchange exchange, final DaemonJob job) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0L);
+        try (final OutputStream responseBody = exchange.getResponseBody()) {
+            DaemonJob.Status status = job.getStatus();
+            writeLine(responseBody, job.toJson(gson));
+            while (!status.isFinished()) {
+                final DaemonJob.Status newStatus = job.awaitStatusChange(status, EVENTS_STATUS_WAIT_MILLISECONDS);
+                // An unchanged status is re-sent periodically, so idle connections stay open
+                writeLine(responseBody, job.toJson(gson));
+                status = newStatus;
+            }
+        }
+    }
+
+    private void handleShutdownRequest(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respondWithMessage(exchange, 405, String.format("Method %s not allowed", exchange.getRequestMethod()));
+            return;
+        }
+        respondWithMessage(exchange, 202, "Shutting down once queued jobs have finished");
+        shutdownRequested.countDown();
+    }
+
+    private DaemonJob getJob(final String jobId) {
+        try {
+            return jobs.get(Integer.valueOf(jobId));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void handle(final HttpExchange exchange, final ExchangeHandler handler) throws IOException {
+        try {
+            if (!isAuthorized(exchange)) {
+                respondWithMessage(exchange, 401, String.format("Missing or invalid API token (see %s)", new File(outputDir, TOKEN_FILENAME).getAbsolutePath()));
+                return;
+            }
+            handler.handle();
+        } catch (final IOException | InterruptedException | RuntimeException e) {
+            logger.debug(String.format("Error handling %s %s: %s", exchange.getRequestMethod(), exchange.getRequestURI(), e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respondWithMessage(final HttpExchange exchange, final int statusCode, final String message) throws IOException {
+        final JsonObject messageJson = new JsonObject();
+        messageJson.addProperty("message", message);
+        respond(exchange, statusCode, gson.toJson(messageJson));
+    }
+
+    private void respond(final HttpExchange exchange, final int statusCode, final String json) throws IOException {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (final OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private void writeLine(final OutputStream outputStream, final String line) throws IOException {
+        outputStream.write(line.getBytes(StandardCharsets.UTF_8));
+        outputStream.write('\n');
+        outputStream.flush();
+    }
+
+    private interface ExchangeHandler {
+        void handle() throws IOException, InterruptedException;
+    }
+}
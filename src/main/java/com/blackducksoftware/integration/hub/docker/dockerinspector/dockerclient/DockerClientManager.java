@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,9 +42,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient.HubSecrets;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.registry.ImageReference;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.registry.RegistryClient;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
 import com.blackducksoftware.integration.hub.imageinspector.name.ImageNameResolver;
@@ -67,7 +73,6 @@ import com.github.dockerjava.api.model.Bind;
 import com.github.dockerjava.api.model.Container;
 import com.github.dockerjava.api.model.ExposedPort;
 import com.github.dockerjava.api.model.Frame;
-import com.github.dockerjava.api.model.Image;
 import com.github.dockerjava.api.model.Info;
 import com.github.dockerjava.api.model.PortBinding;
 import com.github.dockerjava.api.model.Ports.Binding;
@@ -82,11 +87,14 @@ public class DockerClientManager {
     private static final String IMAGEINSPECTOR_APP_NAME_LABEL_VALUE = "hub-imageinspector-ws";
 
     private static final String CONTAINER_OS_LABEL_KEY = "os";
+    private static final String CONTAINER_POOL_LABEL_KEY = "pool";
 
     private static final String IMAGE_TARFILE_PROPERTY = "docker.tar";
     private static final String IMAGE_PROPERTY = "docker.image";
     private static final String IMAGE_REPO_PROPERTY = "docker.image.repo";
     private static final String IMAGE_TAG_PROPERTY = "docker.image.tag";
+    private static final String IMAGES_PROPERTY = "docker.images";
+    private static final String IMAGES_FILE_PROPERTY = "docker.images.file";
     private static final String ON_HOST_PROPERTY = "on.host";
 
     private static final String INSPECT_PROPERTY = "inspect"; // true
@@ -113,8 +121,47 @@ public class DockerClientManager {
     @Autowired
     private Config config;
 
+    @Autowired
+    private PhaseTimings phaseTimings;
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
     public File getTarFileFromDockerImageById(final String imageId, final File imageTarDirectory) throws HubIntegrationException, IOException {
+        final ImageNameResolver resolver = resolveImageId(imageId);
+        final String imageName = resolver.getNewImageRepo().get();
+        final String tagName = resolver.getNewImageTag().get();
+        final File imageTarFile = saveImageToDir(imageTarDirectory, Names.getImageTarFilename(imageName, tagName), imageName, tagName);
+        return imageTarFile;
+    }
 
+    public File getTarFileFromDockerImage(final String imageName, final String tagName, final File imageTarDirectory) throws HubIntegrationException, IOException {
+        final Optional<String> targetImageId = pullTargetImage(imageName, tagName);
+        final File imageTarFile = saveImageToDir(imageTarDirectory, Names.getImageTarFilename(imageName, tagName), imageName, tagName);
+        cleanupTargetImage(targetImageId);
+        return imageTarFile;
+    }
+
+    /*
+     * The image ID is the digest of the image's config, so it changes whenever the image content does.
+     * The image is pulled first so that a moved tag resolves to the image that would be inspected.
+     */
+    // Doesn't pull the image
+    public Optional<String> getLocalImageConfigDigest(final String imageName, final String tagName) throws HubIntegrationException {
+        return inspectLocalImage(imageName, tagName).map(InspectImageResponse::getId);
+    }
+
+    public String getImageConfigDigestById(final String imageId) throws HubIntegrationException {
+        final DockerClient dockerClient = hubDockerClient.getDockerClient();
+        final InspectImageResponse imageDetails = dockerClient.inspectImageCmd(imageId).exec();
+        logger.debug(String.format("Image %s has config digest %s", imageId, imageDetails.getId()));
+        return imageDetails.getId();
+    }
+
+    private ImageNameResolver resolveImageId(final String imageId) throws HubIntegrationException {
         final DockerClient dockerClient = hubDockerClient.getDockerClient();
         final InspectImageCmd inspectImageCmd = dockerClient.inspectImageCmd(imageId);
         final InspectImageResponse imageDetails = inspectImageCmd.exec();
@@ -122,23 +169,24 @@ public class DockerClientManager {
         if (repoTags.size() == 0) {
             throw new HubIntegrationException(String.format("Unable to get image name:tag for image ID %s", imageId));
         }
-
         final ImageNameResolver resolver = new ImageNameResolver(repoTags.get(0));
-        final String imageName = resolver.getNewImageRepo().get();
-        final String tagName = resolver.getNewImageTag().get();
-        logger.debug(String.format("Converted image ID %s to image name:tag %s:%s", imageId, imageName, tagName));
-        final File imageTarFile = saveImageToDir(imageTarDirectory, Names.getImageTarFilename(imageName, tagName), imageName, tagName);
-        return imageTarFile;
+        logger.debug(String.format("Converted image ID %s to image name:tag %s:%s", imageId, resolver.getNewImageRepo().get(), resolver.getNewImageTag().get()));
+        return resolver;
     }
 
-    public File getTarFileFromDockerImage(final String imageName, final String tagName, final File imageTarDirectory) throws HubIntegrationException, IOException {
+    private Optional<String> pullTargetImage(final String imageName, final String tagName) {
         Optional<String> targetImageId = Optional.empty();
+        final long startTime = System.currentTimeMillis();
         try {
-            targetImageId = Optional.ofNullable(pullImage(imageName, tagName));
+            targetImageId = Optional.ofNullable(pullImage(imageName, tagName, PullPolicy.fromConfigValue(config.getDockerPullPolicy())));
         } catch (final Exception e) {
             logger.info(String.format("Unable to pull %s:%s; Proceeding anyway since the image might be in local docker image cache. Error on pull: %s", imageName, tagName, e.getMessage()));
         }
-        final File imageTarFile = saveImageToDir(imageTarDirectory, Names.getImageTarFilename(imageName, tagName), imageName, tagName);
+        phaseTimings.record(Phase.DOCKER_PULL, startTime);
+        return targetImageId;
+    }
+
+    private void cleanupTargetImage(final Optional<String> targetImageId) {
         if (config.isCleanupTargetImage() && targetImageId.isPresent()) {
             try {
                 removeImage(targetImageId.get());
@@ -146,11 +194,28 @@ public class DockerClientManager {
                 logger.warn(String.format("Unable to remove target image with ID %s: %s", targetImageId.get(), e.getMessage()));
             }
         }
-        return imageTarFile;
+    }
+
+    // Inspector images are pinned versions, so they never need to be pulled again
+    public String pullInspectorImage(final String imageName, final String tagName) throws HubIntegrationException {
+        return pullImage(imageName, tagName, PullPolicy.IF_NOT_PRESENT);
+    }
+
+    public String pullImage(final String imageName, final String tagName, final PullPolicy pullPolicy) throws HubIntegrationException {
+        if (pullPolicy != PullPolicy.ALWAYS) {
+            final Optional<InspectImageResponse> localImage = inspectLocalImage(imageName, tagName);
+            if (localImage.isPresent() && (pullPolicy == PullPolicy.IF_NOT_PRESENT || isLocalImageCurrent(localImage.get(), imageName, tagName))) {
+                logger.info(String.format("Image %s:%s is present locally (pull policy: %s); not pulling it", imageName, tagName, pullPolicy.getConfigValue()));
+                inspectorMetrics.recordImagePull(false);
+                return localImage.get().getId();
+            }
+        }
+        return pullImage(imageName, tagName);
     }
 
     public String pullImage(final String imageName, final String tagName) throws HubIntegrationException {
         logger.info(String.format("Pulling image %s:%s", imageName, tagName));
+        inspectorMetrics.recordImagePull(true);
         final DockerClient dockerClient = hubDockerClient.getDockerClient();
         final PullImageCmd pull = dockerClient.pullImageCmd(imageName).withTag(tagName);
         try {
@@ -158,13 +223,36 @@ public class DockerClientManager {
         } catch (final NotFoundException e) {
             throw new HubIntegrationException(String.format("Pull failed: Image %s:%s not found. Please check the image name/tag. Error: %s", imageName, tagName, e.getMessage()), e);
         }
-        final Image justPulledImage = getLocalImage(dockerClient, imageName, tagName);
-        if (justPulledImage == null) {
+        final Optional<InspectImageResponse> justPulledImage = inspectLocalImage(imageName, tagName);
+        if (!justPulledImage.isPresent()) {
             final String msg = String.format("Pulled image %s:%s not found in image list.", imageName, tagName);
             logger.error(msg);
             throw new HubIntegrationException(msg);
         }
-        return justPulledImage.getId();
+        return justPulledImage.get().getId();
+    }
+
+    // A registry digest that can't be determined (no network access, an unsupported registry, etc.) means the image is pulled
+    private boolean isLocalImageCurrent(final InspectImageResponse localImage, final String imageName, final String tagName) {
+        final List<String> localRepoDigests = localImage.getRepoDigests();
+        if (localRepoDigests == null || localRepoDigests.isEmpty()) {
+            logger.debug(String.format("Local image %s:%s has no repo digests (it was not pulled from a registry)", imageName, tagName));
+            return false;
+        }
+        final String registryDigest;
+        try {
+            registryDigest = registryClient.getManifestDigest(ImageReference.parse(imageName, tagName));
+        } catch (final Exception e) {
+            logger.debug(String.format("Unable to get the registry digest of %s:%s: %s", imageName, tagName, e.getMessage()));
+            return false;
+        }
+        for (final String localRepoDigest : localRepoDigests) {
+            if (registryDigest.equals(StringUtils.substringAfter(localRepoDigest, "@"))) {
+                return true;
+            }
+        }
+        logger.debug(String.format("Local image %s:%s repo digests %s do not include the registry digest %s", imageName, tagName, localRepoDigests, registryDigest));
+        return false;
     }
 
     public void removeImage(final String imageId) throws HubIntegrationException {
@@ -236,6 +324,9 @@ public class DockerClientManager {
         final Map<String, String> labels = new HashMap<>(1);
         labels.put(CONTAINER_APPNAME_LABEL_KEY, IMAGEINSPECTOR_APP_NAME_LABEL_VALUE);
         labels.put(CONTAINER_OS_LABEL_KEY, imageInspectorOsName);
+        if (config.isImageInspectorServicePool()) {
+            labels.put(CONTAINER_POOL_LABEL_KEY, Boolean.TRUE.toString());
+        }
         final Bind bind = createBindMount(config.getSharedDirPathLocal(), config.getSharedDirPathImageInspector());
         final CreateContainerCmd createContainerCmd = dockerClient.createContainerCmd(imageId).withName(containerName).withBinds(bind).withLabels(labels).withCmd(cmd.split(" "));
         final ExposedPort exposedPort = new ExposedPort(containerPort);
@@ -295,6 +386,24 @@ public class DockerClientManager {
         }
     }
 
+    // Best effort: if the streams can't be followed, the returned watch never signals, and the caller relies on health checks alone
+    public ServiceContainerWatch watchServiceContainer(final String containerId, final String startedLogMarker) {
+        final ServiceContainerWatch watch = new ServiceContainerWatch(containerId, startedLogMarker);
+        try {
+            final DockerClient dockerClient = hubDockerClient.getDockerClient();
+            dockerClient.eventsCmd().withContainerFilter(containerId).withEventFilter("die").exec(watch.getEventsCallback());
+            dockerClient.logContainerCmd(containerId)
+                    .withStdErr(true)
+                    .withStdOut(true)
+                    .withTailAll()
+                    .withFollowStream(true)
+                    .exec(watch.getLogCallback());
+        } catch (final Exception e) {
+            logger.debug(String.format("Unable to follow log/events of container %s: %s", containerId, e.getMessage()));
+        }
+        return watch;
+    }
+
     private static class StringBuilderLogReader extends LogContainerResultCallback {
         public StringBuilder builder;
 
@@ -311,37 +420,20 @@ public class DockerClientManager {
 
     private File saveImageToDir(final File imageTarDirectory, final String imageTarFilename, final String imageName, final String tagName) throws IOException, HubIntegrationException {
         final File imageTarFile = new File(imageTarDirectory, imageTarFilename);
+        final long startTime = System.currentTimeMillis();
         saveImageToFile(imageName, tagName, imageTarFile);
+        phaseTimings.record(Phase.DOCKER_SAVE, startTime, imageTarFile.length());
         return imageTarFile;
     }
 
-    private Image getLocalImage(final DockerClient dockerClient, final String imageName, final String tagName) {
-        Image localImage = null;
-        final List<Image> images = dockerClient.listImagesCmd().withImageNameFilter(imageName).exec();
-        for (final Image image : images) {
-            if (image == null) {
-                logger.warn("Encountered a null image in local docker registry");
-                continue;
-            }
-            final String[] tags = image.getRepoTags();
-            if (tags == null) {
-                logger.warn("Encountered an image with a null tag list in local docker registry");
-            } else {
-                for (final String tag : tags) {
-                    if (tag == null) {
-                        continue;
-                    }
-                    if (tag.contains(tagName)) {
-                        localImage = image;
-                        break;
-                    }
-                }
-            }
-            if (localImage != null) {
-                break;
-            }
+    // Matches the repo:tag exactly (an image list filtered by repo would also match other tags that contain this one)
+    private Optional<InspectImageResponse> inspectLocalImage(final String imageName, final String tagName) throws HubIntegrationException {
+        final DockerClient dockerClient = hubDockerClient.getDockerClient();
+        try {
+            return Optional.of(dockerClient.inspectImageCmd(String.format("%s:%s", imageName, tagName)).exec());
+        } catch (final NotFoundException e) {
+            return Optional.empty();
         }
-        return localImage;
     }
 
     private void removeContainer(final DockerClient dockerClient, final String containerId) {
@@ -387,21 +479,25 @@ public class DockerClientManager {
     private void setPropertiesInSubContainer(final DockerClient dockerClient, final String containerId, final String tarFilePathInSubContainer, final String tarFileDirInSubContainer, final File dockerTarFile, final String targetImage,
             final String targetImageRepo, final String targetImageTag) throws IOException, IllegalArgumentException, IllegalAccessException {
         logger.debug("Creating properties file inside container");
-        hubDockerProperties.load();
-        hubDockerProperties.set(IMAGE_TARFILE_PROPERTY, tarFilePathInSubContainer);
-        hubDockerProperties.set(IMAGE_PROPERTY, targetImage);
-        hubDockerProperties.set(IMAGE_REPO_PROPERTY, targetImageRepo);
-        hubDockerProperties.set(IMAGE_TAG_PROPERTY, targetImageTag);
-        hubDockerProperties.set(OUTPUT_INCLUDE_DOCKER_TARFILE_PROPERTY, "false");
-        hubDockerProperties.set(OUTPUT_INCLUDE_CONTAINER_FILE_SYSTEM_TARFILE_PROPERTY, new Boolean(config.isOutputIncludeContainerfilesystem()).toString());
-        hubDockerProperties.set(ON_HOST_PROPERTY, "false");
-        hubDockerProperties.set(DETECT_PKG_MGR_PROPERTY, "true");
-        hubDockerProperties.set(INSPECT_PROPERTY, "true");
-        hubDockerProperties.set(INSPECT_IN_CONTAINER_PROPERTY, "false");
-        hubDockerProperties.set(UPLOAD_BDIO_PROPERTY, "false");
-
         final String pathToPropertiesFileForSubContainer = String.format("%s%s", programPaths.getHubDockerTargetDirPathHost(), ProgramPaths.APPLICATION_PROPERTIES_FILENAME);
-        hubDockerProperties.save(pathToPropertiesFileForSubContainer);
+        // hubDockerProperties is shared by batch mode worker threads
+        synchronized (hubDockerProperties) {
+            hubDockerProperties.load();
+            hubDockerProperties.set(IMAGE_TARFILE_PROPERTY, tarFilePathInSubContainer);
+            hubDockerProperties.set(IMAGE_PROPERTY, targetImage);
+            hubDockerProperties.set(IMAGE_REPO_PROPERTY, targetImageRepo);
+            hubDockerProperties.set(IMAGE_TAG_PROPERTY, targetImageTag);
+            hubDockerProperties.set(IMAGES_PROPERTY, "");
+            hubDockerProperties.set(IMAGES_FILE_PROPERTY, "");
+            hubDockerProperties.set(OUTPUT_INCLUDE_DOCKER_TARFILE_PROPERTY, "false");
+            hubDockerProperties.set(OUTPUT_INCLUDE_CONTAINER_FILE_SYSTEM_TARFILE_PROPERTY, new Boolean(config.isOutputIncludeContainerfilesystem()).toString());
+            hubDockerProperties.set(ON_HOST_PROPERTY, "false");
+            hubDockerProperties.set(DETECT_PKG_MGR_PROPERTY, "true");
+            hubDockerProperties.set(INSPECT_PROPERTY, "true");
+            hubDockerProperties.set(INSPECT_IN_CONTAINER_PROPERTY, "false");
+            hubDockerProperties.set(UPLOAD_BDIO_PROPERTY, "false");
+            hubDockerProperties.save(pathToPropertiesFileForSubContainer);
+        }
 
         copyFileToContainer(dockerClient, containerId, pathToPropertiesFileForSubContainer, programPaths.getHubDockerConfigDirPathContainer());
 
@@ -460,6 +556,21 @@ public class DockerClientManager {
         throw new HubIntegrationException(String.format("No running container found with app = %s, os = %s", targetAppName, targetInspectorOs.name()));
     }
 
+    // Service containers started in warm pool mode, keyed by the OS they inspect
+    public Map<ImageInspectorOsEnum, Container> getPooledServiceContainers() throws HubIntegrationException {
+        final Map<ImageInspectorOsEnum, Container> pooledContainers = new HashMap<>();
+        final List<Container> containers = hubDockerClient.getDockerClient().listContainersCmd().withShowAll(true).withLabelFilter(Collections.singletonMap(CONTAINER_POOL_LABEL_KEY, Boolean.TRUE.toString())).exec();
+        for (final Container container : containers) {
+            if (IMAGEINSPECTOR_APP_NAME_LABEL_VALUE.equals(container.getLabels().get(CONTAINER_APPNAME_LABEL_KEY))) {
+                final ImageInspectorOsEnum inspectorOs = ImageInspectorOsEnum.determineOperatingSystem(container.getLabels().get(CONTAINER_OS_LABEL_KEY));
+                if (inspectorOs != null) {
+                    pooledContainers.put(inspectorOs, container);
+                }
+            }
+        }
+        return pooledContainers;
+    }
+
     private Container getRunningContainerByContainerName(final DockerClient dockerClient, final String extractorContainerName) {
         Container extractorContainer = null;
         final List<Container> containers = dockerClient.listContainersCmd().withShowAll(true).exec();
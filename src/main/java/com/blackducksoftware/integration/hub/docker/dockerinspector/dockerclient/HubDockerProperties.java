@@ -79,6 +79,8 @@ class HubDockerProperties {
         if (propertiesFile.exists()) {
             propertiesFile.delete();
         }
-        propsForSubContainer.store(new FileOutputStream(propertiesFile), null);
+        try (final FileOutputStream propertiesFileOutputStream = new FileOutputStream(propertiesFile)) {
+            propsForSubContainer.store(propertiesFileOutputStream, null);
+        }
     }
 }
@@ -0,0 +1,53 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient;
+
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+
+// When to pull an image that may already be in the local docker image cache
+public enum PullPolicy {
+    ALWAYS("always"),
+    IF_NOT_PRESENT("if-not-present"),
+    // Pull only if the registry's manifest digest for the tag is not one of the local image's repo digests
+    IF_DIGEST_CHANGED("if-digest-changed");
+
+    private final String configValue;
+
+    PullPolicy(final String configValue) {
+        this.configValue = configValue;
+    }
+
+    public String getConfigValue() {
+        return configValue;
+    }
+
+    public static PullPolicy fromConfigValue(final String configValue) throws HubIntegrationException {
+        for (final PullPolicy pullPolicy : values()) {
+            if (pullPolicy.configValue.equalsIgnoreCase(configValue.trim())) {
+                return pullPolicy;
+            }
+        }
+        throw new HubIntegrationException(String.format("Invalid docker.pull.policy: %s (must be always, if-not-present, or if-digest-changed)", configValue));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import com.github.dockerjava.core.command.LogContainerResultCallback;
+
+/*
+ * Follows a service container's log (for the line the service writes once it is started) and the Docker events
+ * stream (for the container dying), so that whoever is waiting for the service can react as soon as either happens.
+ */
+public class ServiceContainerWatch implements Closeable {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final String containerId;
+    private final String startedLogMarker;
+    private final StringBuilder logTail = new StringBuilder();
+    private final LogContainerResultCallback logCallback;
+    private final EventsResultCallback eventsCallback;
+    private boolean started = false;
+    private boolean died = false;
+    private boolean pendingEvent = false;
+
+    public ServiceContainerWatch(final String containerId, final String startedLogMarker) {
+        this.containerId = containerId;
+        this.startedLogMarker = startedLogMarker;
+        this.logCallback = new LogContainerResultCallback() {
+            @Override
+            public void onNext(final Frame item) {
+                onLogOutput(new String(item.getPayload(), StandardCharsets.UTF_8));
+                super.onNext(item);
+            }
+        };
+        this.eventsCallback = new EventsResultCallback() {
+            @Override
+            public void onNext(final Event item) {
+                onContainerDied(item.getStatus());
+                super.onNext(item);
+            }
+        };
+    }
+
+    LogContainerResultCallback getLogCallback() {
+        return logCallback;
+    }
+
+    EventsResultCallback getEventsCallback() {
+        return eventsCallback;
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    public synchronized boolean isDied() {
+        return died;
+    }
+
+    // Returns early if the service logs that it has started, or the container dies, during the wait
+    public synchronized void awaitEvent(final long timeoutMilliseconds) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+        long remainingMilliseconds = timeoutMilliseconds;
+        while (!pendingEvent && remainingMilliseconds > 0L) {
+            wait(remainingMilliseconds);
+            remainingMilliseconds = deadline - System.currentTimeMillis();
+        }
+        pendingEvent = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            logCallback.close();
+        } finally {
+            eventsCallback.close();
+        }
+    }
+
+    private synchronized void onLogOutput(final String logOutput) {
+        if (started) {
+            return;
+        }
+        // The marker may be split across frames, so keep just enough of the previous output to match it
+        logTail.append(logOutput);
+        if (logTail.indexOf(startedLogMarker) >= 0) {
+            logger.debug(String.format("Service container %s logged that it has started", containerId));
+            started = true;
+            signal();
+        } else if (logTail.length() > startedLogMarker.length()) {
+            logTail.delete(0, logTail.length() - startedLogMarker.length());
+        }
+    }
+
+    private synchronized void onContainerDied(final String status) {
+        logger.debug(String.format("Service container %s event: %s", containerId, status));
+        died = true;
+        signal();
+    }
+
+    private void signal() {
+        pendingEvent = true;
+        notifyAll();
+    }
+}
@@ -26,12 +26,14 @@ package com.blackducksoftware.integration.hub.docker.dockerinspector.dockerexec;
 import java.io.File;
 import java.util.List;
 
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarIndex;
 import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
 import com.blackducksoftware.integration.hub.imageinspector.lib.OperatingSystemEnum;
 
 public class DissectedImage {
     private File dockerTarFile = null;
     private List<File> layerTars = null;
+    private DockerTarIndex dockerTarIndex = null;
     private List<ManifestLayerMapping> layerMappings = null;
     private File targetImageFileSystemRootDir = null;
     private OperatingSystemEnum targetOs = null;
@@ -58,6 +60,15 @@ public class DissectedImage {
         this.layerTars = layerTars;
     }
 
+    // Set instead of the layer tars when they're read in place from the docker tarfile
+    public DockerTarIndex getDockerTarIndex() {
+        return dockerTarIndex;
+    }
+
+    public void setDockerTarIndex(final DockerTarIndex dockerTarIndex) {
+        this.dockerTarIndex = dockerTarIndex;
+    }
+
     public List<ManifestLayerMapping> getLayerMappings() {
         return layerMappings;
     }
@@ -25,7 +25,10 @@ package com.blackducksoftware.integration.hub.docker.dockerinspector.dockerexec;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -40,21 +43,38 @@ import org.springframework.stereotype.Component;
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.ContainerCleaner;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.InspectorImages;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.BdioCache;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.BdioCacheKey;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.CachedBdio;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.LayerCache;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.DockerTarfile;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.HubProjectName;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.Inspector;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.Output;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarIndex;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarIndex.IndexedEntry;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarStreamExtractor;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ImageTarContents;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ParallelLayerExtractor;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.SharedLayerTars;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.SharedLayerTars.SharedExtraction;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.TargetOsScanner;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
 import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
 import com.blackducksoftware.integration.hub.imageinspector.lib.ImageInfoDerived;
 import com.blackducksoftware.integration.hub.imageinspector.lib.ImageInspector;
 import com.blackducksoftware.integration.hub.imageinspector.lib.OperatingSystemEnum;
+import com.blackducksoftware.integration.hub.imageinspector.lib.PackageManagerEnum;
 
 @Component
 public class DockerExecInspector implements Inspector {
+    private static final List<String> OS_RELEASE_PATHS = Arrays.asList("etc/os-release", "usr/lib/os-release", "etc/lsb-release");
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
@@ -81,6 +101,18 @@ public class DockerExecInspector implements Inspector {
     @Autowired
     private Output output;
 
+    @Autowired
+    private BdioCache bdioCache;
+
+    @Autowired
+    private PhaseTimings phaseTimings;
+
+    @Autowired
+    private SharedLayerTars sharedLayerTars;
+
+    @Autowired
+    private LayerCache layerCache;
+
     @Override
     public boolean isApplicable() {
         if (!config.isImageInspectorServiceStart() && StringUtils.isBlank(config.getImageInspectorUrl())) {
@@ -93,14 +125,26 @@ public class DockerExecInspector implements Inspector {
     public int getBdio(final DissectedImage dissectedImage) throws IntegrationException {
         try {
             output.ensureWriteability();
+            final Optional<BdioCacheKey> bdioCacheKey = bdioCache.deriveKey();
+            if (bdioCacheKey.isPresent()) {
+                final Optional<CachedBdio> cachedBdio = bdioCache.get(bdioCacheKey.get().getKey());
+                if (cachedBdio.isPresent()) {
+                    return provideCachedBdio(dissectedImage, cachedBdio.get());
+                }
+            }
             parseManifest(config, dissectedImage);
             checkForGivenTargetOs(config, dissectedImage);
+            detectTargetOsFromLayerTars(dissectedImage);
             constructContainerFileSystem(config, dissectedImage);
             determineTargetOsFromContainerFileSystem(config, dissectedImage);
             final Future<String> deferredCleanup = inspect(config, dissectedImage);
+            output.includeDockerTarfileIfRequested(dissectedImage.getDockerTarFile());
             output.uploadBdio(dissectedImage);
             output.provideOutput();
             final int returnCode = output.reportResults(dissectedImage);
+            if (returnCode == 0 && bdioCacheKey.isPresent()) {
+                addToBdioCache(bdioCacheKey.get(), output.getBdioFile(), dissectedImage.getDockerTarFile());
+            }
             output.cleanUp(deferredCleanup);
             return returnCode;
         } catch (IllegalAccessException | IOException | InterruptedException | CompressorException e) {
@@ -108,23 +152,129 @@ public class DockerExecInspector implements Inspector {
         }
     }
 
+    private int provideCachedBdio(final DissectedImage dissectedImage, final CachedBdio cachedBdio) throws IOException, IntegrationException {
+        output.writeCachedBdioFile(dissectedImage, cachedBdio);
+        output.uploadBdio(dissectedImage);
+        output.provideOutput();
+        final int returnCode = output.reportResultsFromCache(dissectedImage);
+        output.cleanUp(null);
+        return returnCode;
+    }
+
+    private void addToBdioCache(final BdioCacheKey bdioCacheKey, final File bdioFile, final File dockerTarFile) throws IOException {
+        if (bdioFile == null) {
+            logger.debug("No BDIO file to add to BDIO cache");
+            return;
+        }
+        bdioCache.put(bdioCacheKey, bdioFile.getName(), bdioFile, dockerTarFile);
+    }
+
     private void checkForGivenTargetOs(final Config config, final DissectedImage dissectedImage) {
         dissectedImage.setTargetOs(imageInspector.detectOperatingSystem(config.getLinuxDistro()));
     }
 
+    // Knowing the target OS without building the container file system lets the host skip layer extraction
+    private void detectTargetOsFromLayerTars(final DissectedImage dissectedImage) {
+        if (dissectedImage.getTargetOs() != null || (dissectedImage.getLayerTars() == null && dissectedImage.getDockerTarIndex() == null) || dissectedImage.getLayerMappings() == null) {
+            return;
+        }
+        final long startTime = System.currentTimeMillis();
+        final Optional<ImageInspectorOsEnum> inspectorOs = dissectedImage.getDockerTarIndex() != null ? new TargetOsScanner().detectInspectorOs(dissectedImage.getDockerTarIndex(), dissectedImage.getLayerMappings())
+                : new TargetOsScanner().detectInspectorOs(dissectedImage.getLayerTars(), dissectedImage.getLayerMappings());
+        phaseTimings.record(Phase.OS_DETECTION, startTime);
+        if (inspectorOs.isPresent()) {
+            dissectedImage.setTargetOs(inspectorOs.get().getRawOs());
+            logger.info(String.format("Detected target OS %s from the layer tars in %d ms", dissectedImage.getTargetOs().name(), System.currentTimeMillis() - startTime));
+        }
+    }
+
     private void constructContainerFileSystem(final Config config, final DissectedImage dissectedImage) throws IOException, IntegrationException {
         if (config.isOnHost() && dissectedImage.getTargetOs() != null && !config.isOutputIncludeContainerfilesystem()) {
             // don't need to construct container File System
             return;
         }
-        dissectedImage.setTargetImageFileSystemRootDir(
-                imageInspector.extractDockerLayers(new File(programPaths.getHubDockerWorkingDirPath()), config.getDockerImageRepo(), config.getDockerImageTag(), dissectedImage.getLayerTars(), dissectedImage.getLayerMappings()));
+        dissectedImage.setTargetImageFileSystemRootDir(extractDockerLayers(config, dissectedImage));
+    }
+
+    private File extractDockerLayers(final Config config, final DissectedImage dissectedImage) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final File targetImageFileSystemRootDir = extractDockerLayersUsingSelectedExtractor(config, dissectedImage);
+        phaseTimings.record(Phase.LAYER_EXTRACTION, startTime, deriveLayerTarsLength(dissectedImage));
+        return targetImageFileSystemRootDir;
+    }
+
+    private long deriveLayerTarsLength(final DissectedImage dissectedImage) {
+        long totalLength = 0L;
+        if (dissectedImage.getDockerTarIndex() != null && dissectedImage.getLayerMappings() != null) {
+            for (final ManifestLayerMapping layerMapping : dissectedImage.getLayerMappings()) {
+                for (final String layer : layerMapping.getLayers()) {
+                    totalLength += dissectedImage.getDockerTarIndex().getEntry(DockerTarIndex.getLayerTarName(layer)).map(IndexedEntry::getSize).orElse(0L);
+                }
+            }
+        } else if (dissectedImage.getLayerTars() != null) {
+            for (final File layerTar : dissectedImage.getLayerTars()) {
+                totalLength += layerTar.length();
+            }
+        }
+        return totalLength;
+    }
+
+    private File extractDockerLayersUsingSelectedExtractor(final Config config, final DissectedImage dissectedImage) throws IOException {
+        final File workingDirectory = new File(programPaths.getHubDockerWorkingDirPath());
+        final LayerCache enabledLayerCache = layerCache.isEnabled() ? layerCache : null;
+        if (dissectedImage.getDockerTarIndex() != null) {
+            // The layer tars are read in place from the docker tarfile, which only the parallel extractor can do
+            final List<String> pathAllowList = config.isOutputIncludeContainerfilesystem() ? null : derivePackageManagerPathAllowList();
+            return new ParallelLayerExtractor(config.getLayerExtractionThreadCount(), pathAllowList, enabledLayerCache).extractDockerLayers(workingDirectory, config.getDockerImageRepo(), config.getDockerImageTag(),
+                    dissectedImage.getDockerTarIndex(), dissectedImage.getLayerMappings());
+        }
+        if (!config.isOutputIncludeContainerfilesystem()) {
+            // Generating BDIO only needs the package manager databases (and the OS release files)
+            return new ParallelLayerExtractor(config.getLayerExtractionThreadCount(), derivePackageManagerPathAllowList(), enabledLayerCache).extractDockerLayers(workingDirectory, config.getDockerImageRepo(),
+                    config.getDockerImageTag(), dissectedImage.getLayerTars(), dissectedImage.getLayerMappings());
+        }
+        if (config.getLayerExtractionThreadCount() > 1 || enabledLayerCache != null) {
+            return new ParallelLayerExtractor(config.getLayerExtractionThreadCount(), null, enabledLayerCache).extractDockerLayers(workingDirectory, config.getDockerImageRepo(), config.getDockerImageTag(),
+                    dissectedImage.getLayerTars(), dissectedImage.getLayerMappings());
+        }
+        return imageInspector.extractDockerLayers(workingDirectory, config.getDockerImageRepo(), config.getDockerImageTag(), dissectedImage.getLayerTars(), dissectedImage.getLayerMappings());
+    }
+
+    private List<String> derivePackageManagerPathAllowList() {
+        final List<String> pathAllowList = new ArrayList<>(OS_RELEASE_PATHS);
+        for (final PackageManagerEnum packageManager : PackageManagerEnum.values()) {
+            pathAllowList.add(StringUtils.strip(packageManager.getDirectory(), "/"));
+        }
+        return pathAllowList;
     }
 
     private void parseManifest(final Config config, final DissectedImage dissectedImage) throws IOException, IntegrationException {
-        dissectedImage.setDockerTarFile(dockerTarfile.deriveDockerTarFile());
-        dissectedImage.setLayerTars(imageInspector.extractLayerTars(new File(programPaths.getHubDockerWorkingDirPath()), dissectedImage.getDockerTarFile()));
-        dissectedImage.setLayerMappings(imageInspector.getLayerMappings(new File(programPaths.getHubDockerWorkingDirPath()), dissectedImage.getDockerTarFile().getName(), config.getDockerImageRepo(), config.getDockerImageTag()));
+        long startTime;
+        File manifestWorkingDir = new File(programPaths.getHubDockerWorkingDirPath());
+        if (dockerTarfile.isStreamingApplicable()) {
+            // Registry-direct or OCI image layout: on the host, the inspector sub-container is handed the image tarfile, so it is
+            // written along with the layer tars; in the container, only the layer tars are needed
+            final ImageTarContents imageTarContents = dockerTarfile.deriveDockerTarContentsStreaming(new File(programPaths.getHubDockerWorkingDirPath()), config.isOnHost());
+            dissectedImage.setDockerTarFile(imageTarContents.getDockerTarFile());
+            dissectedImage.setLayerTars(imageTarContents.getLayerTars());
+            startTime = System.currentTimeMillis();
+        } else {
+            dissectedImage.setDockerTarFile(dockerTarfile.deriveDockerTarFile());
+            startTime = System.currentTimeMillis();
+            final Optional<SharedExtraction> sharedExtraction = sharedLayerTars.get(dissectedImage.getDockerTarFile());
+            if (sharedExtraction.isPresent()) {
+                // One of several images in the tarfile: the layer tars are shared with the others
+                manifestWorkingDir = sharedExtraction.get().getExtractionDir();
+                dissectedImage.setDockerTarIndex(sharedExtraction.get().getDockerTarIndex());
+            } else {
+                // Only the manifest is extracted; the layer tars are read in place from the docker tarfile
+                final DockerTarIndex dockerTarIndex = DockerTarIndex.of(dissectedImage.getDockerTarFile());
+                dockerTarIndex.extractManifestFiles(DockerTarStreamExtractor.getTarExtractionDirectory(manifestWorkingDir, dissectedImage.getDockerTarFile().getName()));
+                dissectedImage.setDockerTarIndex(dockerTarIndex);
+            }
+        }
+        dissectedImage.setLayerMappings(imageInspector.getLayerMappings(manifestWorkingDir, dissectedImage.getDockerTarFile().getName(), config.getDockerImageRepo(), config.getDockerImageTag()));
+        phaseTimings.record(Phase.MANIFEST_PARSE, startTime);
         adjustImageNameTagFromLayerMappings(dissectedImage.getLayerMappings());
     }
 
@@ -144,18 +294,21 @@ public class DockerExecInspector implements Inspector {
         Future<String> deferredCleanup = null;
         if (config.isOnHost()) {
             logger.info("Inspecting image in container");
+            final long startTime = System.currentTimeMillis();
             deferredCleanup = inspectInSubContainer(config, dissectedImage.getDockerTarFile(), dissectedImage.getTargetOs(), dissectedImage.getRunOnImageName(), dissectedImage.getRunOnImageTag());
+            phaseTimings.record(Phase.GET_BDIO, startTime);
         } else {
             if (dissectedImage.getTargetImageFileSystemRootDir() == null) {
-                dissectedImage.setTargetImageFileSystemRootDir(
-                        imageInspector.extractDockerLayers(new File(programPaths.getHubDockerWorkingDirPath()), config.getDockerImageRepo(), config.getDockerImageTag(), dissectedImage.getLayerTars(), dissectedImage.getLayerMappings()));
+                dissectedImage.setTargetImageFileSystemRootDir(extractDockerLayers(config, dissectedImage));
             }
             if (dissectedImage.getTargetOs() == null) {
-                dissectedImage.setTargetOs(imageInspector.detectInspectorOperatingSystem(dissectedImage.getTargetImageFileSystemRootDir()));
+                detectTargetOsFromContainerFileSystem(dissectedImage);
             }
             logger.info(String.format("Target image tarfile: %s; target OS: %s", dissectedImage.getDockerTarFile().getAbsolutePath(), dissectedImage.getTargetOs().toString()));
+            final long startTime = System.currentTimeMillis();
             final ImageInfoDerived imageInfoDerived = imageInspector.generateBdioFromImageFilesDir(config.getDockerImageRepo(), config.getDockerImageTag(), dissectedImage.getLayerMappings(), hubProjectName.getHubProjectName(config),
                     hubProjectName.getHubProjectVersion(config), dissectedImage.getDockerTarFile(), dissectedImage.getTargetImageFileSystemRootDir(), dissectedImage.getTargetOs(), config.getHubCodelocationPrefix());
+            phaseTimings.record(Phase.GET_BDIO, startTime);
             output.writeBdioFile(dissectedImage, imageInfoDerived);
             output.createContainerFileSystemTarIfRequested(dissectedImage.getTargetImageFileSystemRootDir());
         }
@@ -168,7 +321,7 @@ public class DockerExecInspector implements Inspector {
         logger.info(msg);
         String runOnImageId = null;
         try {
-            runOnImageId = dockerClientManager.pullImage(runOnImageName, runOnImageTag);
+            runOnImageId = dockerClientManager.pullInspectorImage(runOnImageName, runOnImageTag);
         } catch (final Exception e) {
             logger.warn(String.format("Unable to pull docker image %s:%s; proceeding anyway since it may already exist locally", runOnImageName, runOnImageTag));
         }
@@ -185,7 +338,7 @@ public class DockerExecInspector implements Inspector {
 
     private void determineTargetOsFromContainerFileSystem(final Config config, final DissectedImage dissectedImage) throws IOException, IntegrationException {
         if (dissectedImage.getTargetOs() == null) {
-            dissectedImage.setTargetOs(imageInspector.detectInspectorOperatingSystem(dissectedImage.getTargetImageFileSystemRootDir()));
+            detectTargetOsFromContainerFileSystem(dissectedImage);
         }
         dissectedImage.setRunOnImageName(dockerImages.getInspectorImageName(dissectedImage.getTargetOs()));
         dissectedImage.setRunOnImageTag(dockerImages.getInspectorImageTag(dissectedImage.getTargetOs()));
@@ -195,4 +348,10 @@ public class DockerExecInspector implements Inspector {
         }
     }
 
+    private void detectTargetOsFromContainerFileSystem(final DissectedImage dissectedImage) throws IntegrationException, IOException {
+        final long startTime = System.currentTimeMillis();
+        dissectedImage.setTargetOs(imageInspector.detectInspectorOperatingSystem(dissectedImage.getTargetImageFileSystemRootDir()));
+        phaseTimings.record(Phase.OS_DETECTION, startTime);
+    }
+
 }
@@ -0,0 +1,50 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient;
+
+import java.io.File;
+
+public class BdioUpload {
+    private final File bdioFile;
+    private final long elapsedMilliseconds;
+    private final int attempts;
+
+    public BdioUpload(final File bdioFile, final long elapsedMilliseconds, final int attempts) {
+        this.bdioFile = bdioFile;
+        this.elapsedMilliseconds = elapsedMilliseconds;
+        this.attempts = attempts;
+    }
+
+    public File getBdioFile() {
+        return bdioFile;
+    }
+
+    public long getElapsedMilliseconds() {
+        return elapsedMilliseconds;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
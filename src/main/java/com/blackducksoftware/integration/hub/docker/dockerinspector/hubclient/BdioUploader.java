@@ -0,0 +1,212 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.rest.exception.IntegrationRestException;
+
+/*
+ * Uploads BDIO files to the Hub on a bounded pool of threads that share one authenticated Hub connection, retrying
+ * server errors (5xx) and timeouts with exponential backoff plus random jitter (so that concurrent retries spread out).
+ * A deferred upload (see PendingUploads) uploads a snapshot of the BDIO file that the uploader owns, since the
+ * inspection goes on to move and clean up its own copy without waiting for the upload.
+ */
+@Component
+public class BdioUploader {
+    private static final long MAX_RETRY_BACKOFF_MILLISECONDS = 60000L;
+    private static final String SNAPSHOT_DIR = "pendingUploads";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private HubClient hubClient;
+
+    @Autowired
+    private PendingUploads pendingUploads;
+
+    @Autowired
+    private ProgramPaths programPaths;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
+    private ExecutorService uploadExecutor;
+
+    // Returns true once the uploads have finished, or false if this thread is deferring them (see PendingUploads)
+    public boolean upload(final List<File> bdioFiles) throws IntegrationException {
+        // Read here, where the job's own Config is in scope (the upload threads see the process wide one)
+        final int retryCount = Math.max(0, config.getHubUploadRetryCount());
+        final long retryBackoffMilliseconds = Math.max(1L, config.getHubUploadRetryBackoffMilliseconds());
+        final boolean deferring = pendingUploads.isDeferring();
+        final List<Future<BdioUpload>> uploads = new ArrayList<>(bdioFiles.size());
+        for (final File bdioFile : bdioFiles) {
+            if (deferring) {
+                final File bdioFileSnapshot = snapshot(bdioFile);
+                uploads.add(getUploadExecutor().submit(() -> uploadSnapshot(bdioFileSnapshot, retryCount, retryBackoffMilliseconds)));
+            } else {
+                uploads.add(getUploadExecutor().submit(() -> uploadWithRetries(bdioFile, retryCount, retryBackoffMilliseconds)));
+            }
+        }
+        if (deferring) {
+            logger.info(String.format("Uploading %d BDIO files to the Hub in the background", bdioFiles.size()));
+            pendingUploads.add(uploads);
+            return false;
+        }
+        await(uploads);
+        return true;
+    }
+
+    // Waits for all of the uploads; if any failed, throws the first failure
+    public List<BdioUpload> await(final List<Future<BdioUpload>> uploads) throws IntegrationException {
+        final List<BdioUpload> completedUploads = new ArrayList<>(uploads.size());
+        IntegrationException firstFailure = null;
+        for (final Future<BdioUpload> upload : uploads) {
+            try {
+                completedUploads.add(upload.get());
+            } catch (final ExecutionException e) {
+                if (firstFailure == null) {
+                    firstFailure = e.getCause() instanceof IntegrationException ? (IntegrationException) e.getCause() : new IntegrationException(e.getCause().getMessage(), e.getCause());
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IntegrationException("Interrupted waiting for BDIO uploads", e);
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+        return completedUploads;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+            uploadExecutor = null;
+        }
+    }
+
+    // Keeps the file's name (in a dir of its own)
+    private File snapshot(final File bdioFile) throws IntegrationException {
+        final File snapshotDir = new File(new File(programPaths.getHubDockerPgmDirPathHost(), SNAPSHOT_DIR), UUID.randomUUID().toString());
+        final File bdioFileSnapshot = new File(snapshotDir, bdioFile.getName());
+        try {
+            FileUtils.copyFile(bdioFile, bdioFileSnapshot);
+        } catch (final IOException e) {
+            FileUtils.deleteQuietly(snapshotDir);
+            throw new IntegrationException(String.format("Unable to copy %s for upload: %s", bdioFile.getAbsolutePath(), e.getMessage()), e);
+        }
+        return bdioFileSnapshot;
+    }
+
+    private BdioUpload uploadSnapshot(final File bdioFileSnapshot, final int retryCount, final long retryBackoffMilliseconds) throws IntegrationException, InterruptedException {
+        try {
+            return uploadWithRetries(bdioFileSnapshot, retryCount, retryBackoffMilliseconds);
+        } finally {
+            FileUtils.deleteQuietly(bdioFileSnapshot.getParentFile());
+        }
+    }
+
+    BdioUpload uploadWithRetries(final File bdioFile, final int retryCount, final long retryBackoffMilliseconds) throws IntegrationException, InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        int attempt = 1;
+        while (true) {
+            try {
+                hubClient.uploadBdioToHub(bdioFile);
+                final long elapsedMilliseconds = System.currentTimeMillis() - startTime;
+                logger.info(String.format("Uploaded %s in %d ms (%d attempts)", bdioFile.getName(), elapsedMilliseconds, attempt));
+                inspectorMetrics.recordHubUpload(true, elapsedMilliseconds, attempt);
+                return new BdioUpload(bdioFile, elapsedMilliseconds, attempt);
+            } catch (final IntegrationException e) {
+                if (attempt > retryCount || !isRetryable(e)) {
+                    inspectorMetrics.recordHubUpload(false, System.currentTimeMillis() - startTime, attempt);
+                    throw e;
+                }
+                final long backoffMilliseconds = deriveBackoffMilliseconds(attempt, retryBackoffMilliseconds);
+                logger.warn(String.format("Upload of %s failed (attempt %d of %d): %s; retrying in %d ms", bdioFile.getName(), attempt, retryCount + 1, e.getMessage(), backoffMilliseconds));
+                Thread.sleep(backoffMilliseconds);
+                attempt++;
+            }
+        }
+    }
+
+    // Half the (doubling, capped) delay is fixed, and half is random
+    long deriveBackoffMilliseconds(final int attempt, final long retryBackoffMilliseconds) {
+        final long cappedBackoffMilliseconds = Math.min(MAX_RETRY_BACKOFF_MILLISECONDS, retryBackoffMilliseconds << Math.min(attempt - 1, 20));
+        final long fixedMilliseconds = cappedBackoffMilliseconds / 2;
+        return fixedMilliseconds + ThreadLocalRandom.current().nextLong(cappedBackoffMilliseconds - fixedMilliseconds + 1);
+    }
+
+    boolean isRetryable(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IntegrationRestException && ((IntegrationRestException) cause).getHttpStatusCode() >= 500) {
+                return true;
+            }
+            if (cause instanceof SocketTimeoutException || cause instanceof ConnectTimeoutException || cause instanceof NoHttpResponseException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    private synchronized ExecutorService getUploadExecutor() {
+        if (uploadExecutor == null) {
+            final int threadCount = Math.max(1, config.getHubUploadThreadCount());
+            uploadExecutor = Executors.newFixedThreadPool(threadCount);
+            inspectorMetrics.monitorExecutor(uploadExecutor, "hub.uploads");
+            logger.debug(String.format("Uploading BDIO files using %d threads", threadCount));
+        }
+        return uploadExecutor;
+    }
+}
@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
+import javax.annotation.PreDestroy;
+
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +49,9 @@ import com.blackducksoftware.integration.hub.service.HubServicesFactory;
 import com.blackducksoftware.integration.hub.service.PhoneHomeService;
 import com.blackducksoftware.integration.log.Slf4jIntLogger;
 import com.blackducksoftware.integration.phonehome.PhoneHomeRequestBody;
+import com.blackducksoftware.integration.rest.RestConstants;
 import com.blackducksoftware.integration.rest.connection.RestConnection;
+import com.blackducksoftware.integration.rest.exception.IntegrationRestException;
 
 @Component
 public class HubClient {
@@ -69,6 +73,8 @@ public class HubClient {
     @Autowired
     private ProgramPaths programPaths;
 
+    private RestConnection uploadRestConnection;
+
     public boolean isValid() {
         return createHubServerConfigBuilder().isValid();
     }
@@ -79,10 +85,8 @@ public class HubClient {
             logger.debug("Upload of BDIO not enabled; skipping verification of Hub connection");
             return;
         }
-        RestConnection restConnection;
         try {
-            restConnection = createRestConnection();
-            restConnection.connect();
+            getUploadRestConnection();
         } catch (final IntegrationException e) {
             final String msg = String.format("Error connecting to Hub: %s", e.getMessage());
             throw new HubIntegrationException(msg);
@@ -90,14 +94,53 @@ public class HubClient {
         logger.info("Successful connection to the Hub.");
     }
 
+    // Safe to call from several threads at once: they share one authenticated connection
     public void uploadBdioToHub(final File bdioFile) throws IntegrationException {
-        final RestConnection restConnection = createRestConnection();
-        final HubServicesFactory hubServicesFactory = new HubServicesFactory(restConnection);
-        final CodeLocationService bomImportRequestService = hubServicesFactory.createCodeLocationService();
-        bomImportRequestService.importBomFile(bdioFile);
+        final RestConnection restConnection = getUploadRestConnection();
+        try {
+            final HubServicesFactory hubServicesFactory = new HubServicesFactory(restConnection);
+            final CodeLocationService bomImportRequestService = hubServicesFactory.createCodeLocationService();
+            bomImportRequestService.importBomFile(bdioFile);
+        } catch (final IntegrationRestException e) {
+            if (e.getHttpStatusCode() == RestConstants.UNAUTHORIZED_401) {
+                // The session may have expired; the next upload will log in again
+                discardUploadRestConnection(restConnection);
+            }
+            throw e;
+        }
         logger.info(String.format("Uploaded bdio file %s to %s", bdioFile.getName(), config.getHubUrl()));
     }
 
+    @PreDestroy
+    public synchronized void close() {
+        if (uploadRestConnection != null) {
+            try {
+                uploadRestConnection.close();
+            } catch (final IOException e) {
+                logger.debug(String.format("Error closing Hub connection: %s", e.getMessage()));
+            }
+            uploadRestConnection = null;
+        }
+    }
+
+    private synchronized RestConnection getUploadRestConnection() throws IntegrationException {
+        if (uploadRestConnection == null) {
+            final RestConnection restConnection = createRestConnection();
+            final int uploadThreadCount = Math.max(1, config.getHubUploadThreadCount());
+            restConnection.getClientBuilder().setMaxConnPerRoute(uploadThreadCount).setMaxConnTotal(uploadThreadCount);
+            restConnection.connect();
+            uploadRestConnection = restConnection;
+        }
+        return uploadRestConnection;
+    }
+
+    // Not closed here: other threads may still be uploading through it
+    private synchronized void discardUploadRestConnection(final RestConnection restConnection) {
+        if (uploadRestConnection == restConnection) {
+            uploadRestConnection = null;
+        }
+    }
+
     private String getHubUsername() {
         return config.getHubUsername();
     }
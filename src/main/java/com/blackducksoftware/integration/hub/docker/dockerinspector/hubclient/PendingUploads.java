@@ -0,0 +1,65 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+
+/*
+ * While deferring, BDIO uploads started on this thread are collected here instead of being waited for, so the thread
+ * can move on (in batch mode, to the next image) while they finish. Job scoped, like Config.
+ */
+@Component
+@Scope(value = Config.JOB_SCOPE, proxyMode = ScopedProxyMode.TARGET_CLASS)
+public class PendingUploads {
+    private final List<Future<BdioUpload>> uploads = new ArrayList<>();
+    private boolean deferring = false;
+
+    public void startDeferring() {
+        uploads.clear();
+        deferring = true;
+    }
+
+    public boolean isDeferring() {
+        return deferring;
+    }
+
+    public void add(final List<Future<BdioUpload>> newUploads) {
+        uploads.addAll(newUploads);
+    }
+
+    public List<Future<BdioUpload>> stopDeferring() {
+        final List<Future<BdioUpload>> deferredUploads = new ArrayList<>(uploads);
+        uploads.clear();
+        deferring = false;
+        return deferredUploads;
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Where each entry of a docker image tarfile (docker save output) is: the byte offset and length of its data, recorded
+ * in a single pass over the tar headers (entry data is skipped, not read). With it, manifest.json, the config json(s),
+ * and individual layer tars are read (memory-mapped) or copied straight from their place in the tarfile, without
+ * scanning it again, so layer tars need not be extracted to files before they're untarred. Indexes are kept for the rest of the run (per tarfile, for as long as the tarfile is unchanged),
+ * so every stage that looks into the tarfile shares one pass.
+ */
+public class DockerTarIndex {
+    public static final String MANIFEST_FILENAME = "manifest.json";
+    private static final String CONFIG_FIELD = "Config";
+    private static final String LAYERS_FIELD = "Layers";
+    private static final int MAX_CACHED_INDEXES = 16;
+    private static final int MAX_LINK_DEPTH = 8;
+    private static final Logger logger = LoggerFactory.getLogger(DockerTarIndex.class);
+    private static final Map<String, DockerTarIndex> indexesByPath = new LinkedHashMap<String, DockerTarIndex>(MAX_CACHED_INDEXES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, DockerTarIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    private final File dockerTarFile;
+    private final long dockerTarFileLength;
+    private final long dockerTarFileLastModified;
+    private final Map<String, IndexedEntry> entriesByName;
+
+    private DockerTarIndex(final File dockerTarFile, final long dockerTarFileLength, final long dockerTarFileLastModified, final Map<String, IndexedEntry> entriesByName) {
+        this.dockerTarFile = dockerTarFile;
+        this.dockerTarFileLength = dockerTarFileLength;
+        this.dockerTarFileLastModified = dockerTarFileLastModified;
+        this.entriesByName = entriesByName;
+    }
+
+    public static DockerTarIndex of(final File dockerTarFile) throws IOException {
+        final String dockerTarFilePath = dockerTarFile.getCanonicalPath();
+        synchronized (indexesByPath) {
+            final DockerTarIndex cachedIndex = indexesByPath.get(dockerTarFilePath);
+            if (cachedIndex != null && cachedIndex.dockerTarFileLength == dockerTarFile.length() && cachedIndex.dockerTarFileLastModified == dockerTarFile.lastModified()) {
+                return cachedIndex;
+            }
+        }
+        final DockerTarIndex index = build(dockerTarFile);
+        synchronized (indexesByPath) {
+            indexesByPath.put(dockerTarFilePath, index);
+        }
+        return index;
+    }
+
+    public static DockerTarIndex build(final File dockerTarFile) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final long dockerTarFileLength = dockerTarFile.length();
+        final long dockerTarFileLastModified = dockerTarFile.lastModified();
+        final Map<String, IndexedEntry> entriesByName = new HashMap<>();
+        // The tar stream reads exactly one record at a time, so the count of bytes it has consumed is the position in the tarfile
+        try (final CountingInputStream countingInputStream = new CountingInputStream(new BufferedInputStream(new FileInputStream(dockerTarFile)))) {
+            final TarArchiveInputStream tarInputStream = new TarArchiveInputStream(countingInputStream);
+            TarArchiveEntry tarArchiveEntry = null;
+            while (null != (tarArchiveEntry = tarInputStream.getNextTarEntry())) {
+                if (tarArchiveEntry.isDirectory()) {
+                    continue;
+                }
+                final String name = normalize(tarArchiveEntry.getName());
+                final String linkName = tarArchiveEntry.isSymbolicLink() ? tarArchiveEntry.getLinkName() : null;
+                entriesByName.put(name, new IndexedEntry(name, countingInputStream.getByteCount(), tarArchiveEntry.getSize(), linkName));
+            }
+        }
+        logger.debug(String.format("Indexed %d entries of %s in %d ms", entriesByName.size(), dockerTarFile.getAbsolutePath(), System.currentTimeMillis() - startTime));
+        return new DockerTarIndex(dockerTarFile, dockerTarFileLength, dockerTarFileLastModified, Collections.unmodifiableMap(entriesByName));
+    }
+
+    public File getDockerTarFile() {
+        return dockerTarFile;
+    }
+
+    // Symbolic links (older docker versions link duplicate layers to the first copy) are followed, but not out of the tarfile
+    public Optional<IndexedEntry> getEntry(final String name) {
+        IndexedEntry entry = entriesByName.get(normalize(name));
+        for (int depth = 0; entry != null && entry.getLinkName() != null; depth++) {
+            if (depth >= MAX_LINK_DEPTH) {
+                return Optional.empty();
+            }
+            final String parentDir = FilenameUtils.getPath(entry.getName());
+            // Null if the link target climbs above the tarfile's root
+            final String targetName = FilenameUtils.normalize(parentDir + entry.getLinkName(), true);
+            if (targetName == null) {
+                logger.debug(String.format("Symbolic link %s -> %s in %s leads outside the tarfile", entry.getName(), entry.getLinkName(), dockerTarFile.getAbsolutePath()));
+                return Optional.empty();
+            }
+            entry = entriesByName.get(normalize(targetName));
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    public ByteBuffer map(final String name) throws IOException {
+        final IndexedEntry entry = getRequiredEntry(name);
+        if (entry.getSize() > Integer.MAX_VALUE) {
+            throw new IOException(String.format("%s in %s is too large to map", name, dockerTarFile.getAbsolutePath()));
+        }
+        return map(entry);
+    }
+
+    // Read in place: from a memory-mapped region of the tarfile (or, past the 2 GB a mapping can cover, a positioned channel)
+    public InputStream openEntry(final String name) throws IOException {
+        final IndexedEntry entry = getRequiredEntry(name);
+        if (entry.getSize() <= Integer.MAX_VALUE) {
+            return new ByteBufferInputStream(map(entry));
+        }
+        final FileChannel tarFileChannel = FileChannel.open(dockerTarFile.toPath(), StandardOpenOption.READ);
+        tarFileChannel.position(entry.getOffset());
+        return new BufferedInputStream(new BoundedInputStream(Channels.newInputStream(tarFileChannel), entry.getSize()));
+    }
+
+    // The name, within the tarfile, of the given (manifest layer mapping) layer's tar
+    public static String getLayerTarName(final String layer) {
+        return String.format("%s/%s", layer, DockerTarStreamExtractor.LAYER_TAR_FILENAME);
+    }
+
+    public JsonArray readManifest() throws IOException {
+        if (!getEntry(MANIFEST_FILENAME).isPresent()) {
+            return new JsonArray();
+        }
+        return new JsonParser().parse(StandardCharsets.UTF_8.decode(map(MANIFEST_FILENAME)).toString()).getAsJsonArray();
+    }
+
+    // The way docker save lays it out (manifest.json, config jsons, and the layer tars the manifest names), under the given dir
+    public List<File> extractLayerTars(final File outputDir) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        extractManifestFiles(outputDir);
+        final Set<String> layerNames = new LinkedHashSet<>();
+        for (final JsonElement manifestEntry : readManifest()) {
+            final JsonObject manifestEntryObject = manifestEntry.getAsJsonObject();
+            if (manifestEntryObject.has(LAYERS_FIELD)) {
+                for (final JsonElement layer : manifestEntryObject.getAsJsonArray(LAYERS_FIELD)) {
+                    layerNames.add(layer.getAsString());
+                }
+            }
+        }
+        final List<File> layerTars = new ArrayList<>(layerNames.size());
+        for (final String layerName : layerNames) {
+            layerTars.add(extractEntry(layerName, outputDir));
+        }
+        logger.debug(String.format("Extracted %d layer tars from %s in %d ms", layerTars.size(), dockerTarFile.getAbsolutePath(), System.currentTimeMillis() - startTime));
+        return layerTars;
+    }
+
+    // Just manifest.json and the config jsons, for reading the manifest; the layer tars are left in the tarfile
+    public void extractManifestFiles(final File outputDir) throws IOException {
+        final Set<String> entryNames = new LinkedHashSet<>();
+        for (final JsonElement manifestEntry : readManifest()) {
+            final JsonObject manifestEntryObject = manifestEntry.getAsJsonObject();
+            if (manifestEntryObject.has(CONFIG_FIELD)) {
+                entryNames.add(manifestEntryObject.get(CONFIG_FIELD).getAsString());
+            }
+        }
+        entryNames.add(MANIFEST_FILENAME);
+        for (final String entryName : entryNames) {
+            extractEntry(entryName, outputDir);
+        }
+    }
+
+    private File extractEntry(final String name, final File outputDir) throws IOException {
+        final File outputFile = new File(outputDir, name);
+        final String outputDirPath = outputDir.getCanonicalPath();
+        if (!outputFile.getCanonicalPath().startsWith(outputDirPath + File.separator)) {
+            throw new IOException(String.format("Docker image tar entry %s resolves to a path outside %s", name, outputDirPath));
+        }
+        final IndexedEntry linkOrEntry = entriesByName.get(normalize(name));
+        final IndexedEntry entry = getRequiredEntry(name);
+        outputFile.getParentFile().mkdirs();
+        Files.deleteIfExists(outputFile.toPath());
+        if (linkOrEntry.getLinkName() != null) {
+            logger.trace(String.format("Linking %s to %s", outputFile.getAbsolutePath(), linkOrEntry.getLinkName()));
+            if (!new File(outputDir, entry.getName()).exists()) {
+                extractEntry(entry.getName(), outputDir);
+            }
+            Files.createSymbolicLink(outputFile.toPath(), Paths.get(linkOrEntry.getLinkName()));
+            return outputFile;
+        }
+        logger.trace(String.format("Writing %s", outputFile.getAbsolutePath()));
+        try (final FileChannel tarFileChannel = FileChannel.open(dockerTarFile.toPath(), StandardOpenOption.READ);
+                final FileChannel outputFileChannel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0L;
+            while (position < entry.getSize()) {
+                final long transferred = tarFileChannel.transferTo(entry.getOffset() + position, entry.getSize() - position, outputFileChannel);
+                if (transferred <= 0L) {
+                    throw new IOException(String.format("Unable to copy %s from %s: stalled at byte %d of %d", name, dockerTarFile.getAbsolutePath(), position, entry.getSize()));
+                }
+                position += transferred;
+            }
+        }
+        return outputFile;
+    }
+
+    private IndexedEntry getRequiredEntry(final String name) throws IOException {
+        return getEntry(name).orElseThrow(() -> new IOException(String.format("%s not found in %s", name, dockerTarFile.getAbsolutePath())));
+    }
+
+    // The mapping stays valid after the channel is closed
+    private ByteBuffer map(final IndexedEntry entry) throws IOException {
+        try (final FileChannel tarFileChannel = FileChannel.open(dockerTarFile.toPath(), StandardOpenOption.READ)) {
+            return tarFileChannel.map(FileChannel.MapMode.READ_ONLY, entry.getOffset(), entry.getSize());
+        }
+    }
+
+    private static String normalize(final String name) {
+        return name.startsWith("./") ? name.substring(2) : name;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int readLength = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, readLength);
+            return readLength;
+        }
+
+        @Override
+        public long skip(final long length) {
+            final int skipLength = (int) Math.max(0L, Math.min(length, buffer.remaining()));
+            buffer.position(buffer.position() + skipLength);
+            return skipLength;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    public static class IndexedEntry {
+        private final String name;
+        private final long offset;
+        private final long size;
+        private final String linkName;
+
+        public IndexedEntry(final String name, final long offset, final long size, final String linkName) {
+            this.name = name;
+            this.offset = offset;
+            this.size = size;
+            this.linkName = linkName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getLinkName() {
+            return linkName;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/*
+ * Reads the manifest.json of a docker image tarfile (found using the tarfile's index) without extracting anything else.
+ */
+public class DockerTarManifest {
+    private static final String CONFIG_FIELD = "Config";
+    private static final String REPO_TAGS_FIELD = "RepoTags";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // The config filenames are (or contain) the digests of the images' configs
+    public List<String> getConfigFilenames(final File dockerTarFile) throws IOException {
+        final List<String> configFilenames = new ArrayList<>();
+        for (final JsonElement manifestEntry : readManifestEntries(dockerTarFile)) {
+            final JsonObject manifestEntryObject = manifestEntry.getAsJsonObject();
+            if (manifestEntryObject.has(CONFIG_FIELD)) {
+                configFilenames.add(manifestEntryObject.get(CONFIG_FIELD).getAsString());
+            }
+        }
+        logger.debug(String.format("Config filenames from %s: %s", dockerTarFile.getAbsolutePath(), configFilenames));
+        return configFilenames;
+    }
+
+    // The first repo:tag of each image (a tarfile from one docker save of several images has one manifest entry per image)
+    public List<String> getRepoTags(final File dockerTarFile) throws IOException {
+        final List<String> repoTags = new ArrayList<>();
+        for (final JsonElement manifestEntry : readManifestEntries(dockerTarFile)) {
+            final JsonObject manifestEntryObject = manifestEntry.getAsJsonObject();
+            if (manifestEntryObject.has(REPO_TAGS_FIELD) && manifestEntryObject.get(REPO_TAGS_FIELD).isJsonArray() && manifestEntryObject.get(REPO_TAGS_FIELD).getAsJsonArray().size() > 0) {
+                repoTags.add(manifestEntryObject.get(REPO_TAGS_FIELD).getAsJsonArray().get(0).getAsString());
+            } else {
+                logger.warn(String.format("Skipping an image with no repo:tag (config %s) in %s", manifestEntryObject.has(CONFIG_FIELD) ? manifestEntryObject.get(CONFIG_FIELD).getAsString() : "<unknown>", dockerTarFile.getAbsolutePath()));
+            }
+        }
+        logger.debug(String.format("Repo:tags from %s: %s", dockerTarFile.getAbsolutePath(), repoTags));
+        return repoTags;
+    }
+
+    private JsonArray readManifestEntries(final File dockerTarFile) throws IOException {
+        return DockerTarIndex.of(dockerTarFile).readManifest();
+    }
+}
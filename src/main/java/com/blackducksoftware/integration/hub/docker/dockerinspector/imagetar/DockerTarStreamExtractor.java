@@ -0,0 +1,105 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Parses a docker image tar (docker save output) entry by entry as it arrives, writing the entries
+ * (manifest.json, config json, and layer tars) to the given output dir. Optionally tees the raw
+ * stream to an image tarfile so the image is written and parsed in a single pass.
+ */
+public class DockerTarStreamExtractor {
+    // ImageInspector.getLayerMappings() looks for manifest.json under <workingDir>/tarExtraction/<image tarfile name>/
+    public static final String TAR_EXTRACTION_DIRECTORY = "tarExtraction";
+    public static final String LAYER_TAR_FILENAME = "layer.tar";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public static File getTarExtractionDirectory(final File workingDirectory, final String imageTarFilename) {
+        return new File(new File(workingDirectory, TAR_EXTRACTION_DIRECTORY), imageTarFilename);
+    }
+
+    public List<File> extract(final InputStream imageTarInputStream, final File outputDir, final File imageTarFileCopy) throws IOException {
+        logger.debug(String.format("Extracting docker image tar stream into %s; copy of image tarfile: %s", outputDir.getAbsolutePath(), imageTarFileCopy == null ? "none" : imageTarFileCopy.getAbsolutePath()));
+        final List<File> layerTars = new ArrayList<>();
+        InputStream sourceInputStream = imageTarInputStream;
+        if (imageTarFileCopy != null) {
+            imageTarFileCopy.getParentFile().mkdirs();
+            final OutputStream imageTarFileCopyOutputStream = new BufferedOutputStream(new FileOutputStream(imageTarFileCopy));
+            sourceInputStream = new TeeInputStream(imageTarInputStream, imageTarFileCopyOutputStream, true);
+        }
+        final String outputDirPath = outputDir.getCanonicalPath();
+        try (final InputStream bufferedInputStream = new BufferedInputStream(sourceInputStream)) {
+            final TarArchiveInputStream tarInputStream = new TarArchiveInputStream(bufferedInputStream);
+            TarArchiveEntry tarArchiveEntry = null;
+            while (null != (tarArchiveEntry = tarInputStream.getNextTarEntry())) {
+                if (tarArchiveEntry.isDirectory()) {
+                    continue;
+                }
+                final File outputFile = new File(outputDir, tarArchiveEntry.getName());
+                if (!outputFile.getCanonicalPath().startsWith(outputDirPath + File.separator)) {
+                    logger.warn(String.format("Skipping docker image tar entry %s: it resolves to a path outside %s", tarArchiveEntry.getName(), outputDirPath));
+                    continue;
+                }
+                outputFile.getParentFile().mkdirs();
+                if (tarArchiveEntry.isSymbolicLink()) {
+                    logger.trace(String.format("Linking %s to %s", outputFile.getAbsolutePath(), tarArchiveEntry.getLinkName()));
+                    Files.deleteIfExists(outputFile.toPath());
+                    Files.createSymbolicLink(outputFile.toPath(), Paths.get(tarArchiveEntry.getLinkName()));
+                } else {
+                    logger.trace(String.format("Writing %s", outputFile.getAbsolutePath()));
+                    try (final OutputStream outputFileStream = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+                        IOUtils.copy(tarInputStream, outputFileStream);
+                    }
+                }
+                if (LAYER_TAR_FILENAME.equals(outputFile.getName())) {
+                    layerTars.add(outputFile);
+                }
+            }
+            // Consume the end-of-archive blocks so the image tarfile copy (if any) is complete
+            IOUtils.copy(bufferedInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        logger.debug(String.format("Extracted %d layer tars from docker image tar stream", layerTars.size()));
+        return layerTars;
+    }
+}
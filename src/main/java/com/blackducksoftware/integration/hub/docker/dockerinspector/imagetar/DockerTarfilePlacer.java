@@ -0,0 +1,90 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Places a docker tarfile where an image inspector service can see it, avoiding a byte-by-byte copy through the JVM
+ * when possible: a hard link (if both are on the same file system), then a FileChannel.transferTo() copy (which the
+ * OS can do without moving the bytes through user space), and only then an ordinary copy.
+ */
+public class DockerTarfilePlacer {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public enum PlacementStrategy {
+        NONE,
+        HARD_LINK,
+        CHANNEL_TRANSFER,
+        COPY
+    }
+
+    public PlacementStrategy place(final File givenDockerTarfile, final File finalDockerTarfile) throws IOException {
+        if (finalDockerTarfile.getCanonicalPath().equals(givenDockerTarfile.getCanonicalPath())) {
+            return PlacementStrategy.NONE;
+        }
+        finalDockerTarfile.getParentFile().mkdirs();
+        Files.deleteIfExists(finalDockerTarfile.toPath());
+        try {
+            Files.createLink(finalDockerTarfile.toPath(), givenDockerTarfile.toPath());
+            return PlacementStrategy.HARD_LINK;
+        } catch (final IOException | UnsupportedOperationException | SecurityException e) {
+            logger.debug(String.format("Unable to hard link %s to %s: %s", finalDockerTarfile.getAbsolutePath(), givenDockerTarfile.getAbsolutePath(), e.getMessage()));
+        }
+        try {
+            transfer(givenDockerTarfile, finalDockerTarfile);
+            return PlacementStrategy.CHANNEL_TRANSFER;
+        } catch (final IOException e) {
+            logger.debug(String.format("Unable to transfer %s to %s: %s", givenDockerTarfile.getAbsolutePath(), finalDockerTarfile.getAbsolutePath(), e.getMessage()));
+            Files.deleteIfExists(finalDockerTarfile.toPath());
+        }
+        FileUtils.copyFile(givenDockerTarfile, finalDockerTarfile);
+        return PlacementStrategy.COPY;
+    }
+
+    private void transfer(final File sourceFile, final File destinationFile) throws IOException {
+        try (final FileChannel sourceChannel = new FileInputStream(sourceFile).getChannel();
+                final FileChannel destinationChannel = new FileOutputStream(destinationFile).getChannel()) {
+            final long size = sourceChannel.size();
+            long position = 0L;
+            while (position < size) {
+                final long transferred = sourceChannel.transferTo(position, size - position, destinationChannel);
+                if (transferred <= 0L) {
+                    throw new IOException(String.format("Transfer stalled at byte %d of %d", position, size));
+                }
+                position += transferred;
+            }
+        }
+        destinationFile.setLastModified(sourceFile.lastModified());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/*
+ * Writes an image that didn't come from docker save (a registry, an OCI image layout) in the form streamed docker save
+ * output is extracted to: uncompressed layer tars (see LayerDecompressor), the config json, and a manifest.json naming
+ * them. The docker save format tarfile itself is only written if something needs it.
+ */
+public class ExtractedImageWriter {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    // The layers are the layer tar paths relative to the extraction dir, in order; the repo:tag can be null
+    public void writeManifestFile(final File extractionDir, final String repoTag, final String configFilename, final List<String> manifestLayers) throws IOException {
+        final JsonObject manifestEntry = new JsonObject();
+        manifestEntry.addProperty("Config", configFilename);
+        final JsonArray repoTags = new JsonArray();
+        if (repoTag != null) {
+            repoTags.add(repoTag);
+        }
+        manifestEntry.add("RepoTags", repoTags);
+        final JsonArray layers = new JsonArray();
+        for (final String manifestLayer : manifestLayers) {
+            layers.add(manifestLayer);
+        }
+        manifestEntry.add("Layers", layers);
+        final JsonArray manifest = new JsonArray();
+        manifest.add(manifestEntry);
+        FileUtils.write(new File(extractionDir, DockerTarIndex.MANIFEST_FILENAME), new Gson().toJson(manifest), StandardCharsets.UTF_8);
+    }
+
+    public void writeDockerTarFile(final File extractionDir, final File dockerTarFile, final String configFilename, final List<String> manifestLayers) throws IOException {
+        logger.debug(String.format("Writing docker tarfile %s", dockerTarFile.getAbsolutePath()));
+        dockerTarFile.getParentFile().mkdirs();
+        try (final TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new BufferedOutputStream(new FileOutputStream(dockerTarFile)))) {
+            tarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOutputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            final Set<String> entryNames = new LinkedHashSet<>();
+            entryNames.add(configFilename);
+            entryNames.addAll(manifestLayers);
+            entryNames.add(DockerTarIndex.MANIFEST_FILENAME);
+            for (final String entryName : entryNames) {
+                final File entryFile = new File(extractionDir, entryName);
+                tarOutputStream.putArchiveEntry(new TarArchiveEntry(entryFile, entryName));
+                Files.copy(entryFile.toPath(), tarOutputStream);
+                tarOutputStream.closeArchiveEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.File;
+import java.util.List;
+
+public class ImageTarContents {
+    private final File dockerTarFile;
+    private final boolean dockerTarFileSaved;
+    private final List<File> layerTars;
+
+    public ImageTarContents(final File dockerTarFile, final boolean dockerTarFileSaved, final List<File> layerTars) {
+        this.dockerTarFile = dockerTarFile;
+        this.dockerTarFileSaved = dockerTarFileSaved;
+        this.layerTars = layerTars;
+    }
+
+    // When the tarfile was not saved, this is where it would have been written; its name still identifies the extraction dir
+    public File getDockerTarFile() {
+        return dockerTarFile;
+    }
+
+    public boolean isDockerTarFileSaved() {
+        return dockerTarFileSaved;
+    }
+
+    public List<File> getLayerTars() {
+        return layerTars;
+    }
+}
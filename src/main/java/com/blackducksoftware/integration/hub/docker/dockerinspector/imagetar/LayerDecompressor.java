@@ -0,0 +1,163 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Decompresses layers (gzip, or zstd for OCI +zstd media types) into layer tars on a pool of its own, so several layers
+ * are decompressed at once, and whatever hands them over (downloading blobs, reading an OCI image layout) isn't held up
+ * by decompression. A layer's compression comes from its media type where that says, and otherwise from its leading bytes.
+ */
+public class LayerDecompressor implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int SIGNATURE_LENGTH = 4;
+    private static final Logger logger = LoggerFactory.getLogger(LayerDecompressor.class);
+    private final ExecutorService executor;
+
+    private enum Compression {
+        NONE, GZIP, ZSTD
+    }
+
+    public LayerDecompressor(final int threadCount) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threadCount));
+    }
+
+    public Future<File> submit(final String mediaType, final File layerBlobFile, final File layerTar) {
+        return executor.submit(() -> decompress(mediaType, layerBlobFile, layerTar));
+    }
+
+    // Waits for the given (submitted) layers, in order
+    public List<File> getAll(final List<Future<File>> layerTarFutures) throws IOException {
+        final List<File> layerTars = new ArrayList<>(layerTarFutures.size());
+        try {
+            for (final Future<File> layerTarFuture : layerTarFutures) {
+                layerTars.add(layerTarFuture.get());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while decompressing layers: %s", e.getMessage()), e);
+        } catch (final ExecutionException e) {
+            throw new IOException(String.format("Error decompressing layer: %s", e.getCause().getMessage()), e.getCause());
+        }
+        return layerTars;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public static File decompress(final String mediaType, final File layerBlobFile, final File layerTar) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        layerTar.getParentFile().mkdirs();
+        try (final InputStream layerBlobInputStream = new BufferedInputStream(new FileInputStream(layerBlobFile), BUFFER_SIZE)) {
+            final Compression compression = deriveCompression(mediaType, layerBlobInputStream);
+            if (compression == Compression.NONE) {
+                Files.copy(layerBlobInputStream, layerTar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                try (final InputStream layerInputStream = decompress(layerBlobInputStream, compression);
+                        final OutputStream layerTarOutputStream = new BufferedOutputStream(new FileOutputStream(layerTar), BUFFER_SIZE)) {
+                    IOUtils.copy(layerInputStream, layerTarOutputStream, BUFFER_SIZE);
+                }
+            }
+            logger.debug(String.format("Wrote layer tar %s from %s (%s, %s) in %d ms", layerTar.getAbsolutePath(), layerBlobFile.getAbsolutePath(), mediaType, compression.name(),
+                    System.currentTimeMillis() - startTime));
+        }
+        return layerTar;
+    }
+
+    // For a layer tar that may turn out to be compressed; closing the returned stream closes the given one
+    public static InputStream decompressIfCompressed(final InputStream layerInputStream) throws IOException {
+        final InputStream markableLayerInputStream = layerInputStream.markSupported() ? layerInputStream : new BufferedInputStream(layerInputStream, BUFFER_SIZE);
+        return decompress(markableLayerInputStream, detectCompression(markableLayerInputStream));
+    }
+
+    // Docker's layer media types end with .tar.gzip, OCI's with +gzip or +zstd (or just tar)
+    private static Compression deriveCompression(final String mediaType, final InputStream layerInputStream) throws IOException {
+        if (mediaType.contains("zstd")) {
+            return Compression.ZSTD;
+        }
+        if (mediaType.contains("gzip")) {
+            return Compression.GZIP;
+        }
+        if (mediaType.endsWith("tar")) {
+            return Compression.NONE;
+        }
+        return detectCompression(layerInputStream);
+    }
+
+    // The stream must support mark/reset
+    private static Compression detectCompression(final InputStream layerInputStream) throws IOException {
+        final byte[] signature = new byte[SIGNATURE_LENGTH];
+        layerInputStream.mark(SIGNATURE_LENGTH);
+        final int signatureLength = IOUtils.read(layerInputStream, signature);
+        layerInputStream.reset();
+        if (GzipCompressorInputStream.matches(signature, signatureLength)) {
+            return Compression.GZIP;
+        }
+        if (ZstdUtils.matches(signature, signatureLength)) {
+            return Compression.ZSTD;
+        }
+        return Compression.NONE;
+    }
+
+    private static InputStream decompress(final InputStream compressedInputStream, final Compression compression) throws IOException {
+        switch (compression) {
+        case GZIP:
+            // A layer can be several concatenated gzip members (as pigz, for one, writes them)
+            return new GzipCompressorInputStream(compressedInputStream, true);
+        case ZSTD:
+            if (!ZstdUtils.isZstdCompressionAvailable()) {
+                throw new IOException("Unable to decompress a zstd compressed layer: zstd support (zstd-jni) is not available");
+            }
+            return new ZstdCompressorInputStream(compressedInputStream);
+        default:
+            return compressedInputStream;
+        }
+    }
+}
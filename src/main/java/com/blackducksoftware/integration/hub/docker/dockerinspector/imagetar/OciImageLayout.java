@@ -0,0 +1,213 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.imageinspector.name.Names;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Reads an OCI image layout directory (oci-layout, index.json, and blobs/<algorithm>/<hex>; as written by skopeo,
+ * buildah, and others) into the form streamed docker save output is extracted to, reading only the blobs of the chosen
+ * image. The image is the one in index.json whose ref name is the given tag (or the first, if no tag is given); for a
+ * multi-platform image, the platform PlatformManifests chooses (linux/amd64, if it's there).
+ */
+public class OciImageLayout {
+    private static final String INDEX_FILENAME = "index.json";
+    private static final String LAYOUT_FILENAME = "oci-layout";
+    private static final String BLOBS_DIR = "blobs";
+    private static final String REF_NAME_ANNOTATION = "org.opencontainers.image.ref.name";
+    private static final String IMAGE_NAME_ANNOTATION = "io.containerd.image.name";
+    private static final Pattern DIGEST_PATTERN = Pattern.compile("[a-z0-9]+:[a-f0-9]+");
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final int decompressionThreadCount;
+
+    public OciImageLayout() {
+        this(1);
+    }
+
+    // Layers are decompressed this many at a time
+    public OciImageLayout(final int decompressionThreadCount) {
+        this.decompressionThreadCount = decompressionThreadCount;
+    }
+
+    public static boolean isOciImageLayout(final File path) {
+        return path.isDirectory() && new File(path, INDEX_FILENAME).isFile() && new File(path, LAYOUT_FILENAME).isFile();
+    }
+
+    public String getImageConfigDigest(final File layoutDir, final String imageTag) throws IOException {
+        return findImage(layoutDir, imageTag).manifest.getAsJsonObject("config").get("digest").getAsString();
+    }
+
+    public ImageTarContents extract(final File layoutDir, final String imageRepo, final String imageTag, final File imageTarDirectory, final File workingDirectory, final boolean saveImageTarFile) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        final OciImage image = findImage(layoutDir, imageTag);
+        final String repo = StringUtils.isNotBlank(imageRepo) ? imageRepo : image.deriveRepo(layoutDir);
+        final String tag = StringUtils.isNotBlank(imageTag) ? imageTag : image.deriveTag();
+        final File dockerTarFile = new File(imageTarDirectory, Names.getImageTarFilename(repo, tag));
+        final File extractionDir = DockerTarStreamExtractor.getTarExtractionDirectory(workingDirectory, dockerTarFile.getName());
+        logger.info(String.format("Reading image %s:%s from OCI image layout %s", repo, tag, layoutDir.getAbsolutePath()));
+        final ExtractedImageWriter extractedImageWriter = new ExtractedImageWriter();
+        extractionDir.mkdirs();
+
+        final String configDigest = image.manifest.getAsJsonObject("config").get("digest").getAsString();
+        final String configFilename = String.format("%s.json", toHex(configDigest));
+        Files.copy(getBlobFile(layoutDir, configDigest).toPath(), new File(extractionDir, configFilename).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        // The same layer can appear more than once in an image; its layer tar is only written once
+        final Map<String, Future<File>> layerTarsByDigest = new LinkedHashMap<>();
+        final List<String> manifestLayers = new ArrayList<>();
+        final List<File> layerTars;
+        try (final LayerDecompressor layerDecompressor = new LayerDecompressor(decompressionThreadCount)) {
+            for (final JsonElement layerElement : image.manifest.getAsJsonArray("layers")) {
+                final JsonObject layerObject = layerElement.getAsJsonObject();
+                final String digest = layerObject.get("digest").getAsString();
+                final String mediaType = layerObject.has("mediaType") ? layerObject.get("mediaType").getAsString() : "";
+                manifestLayers.add(String.format("%s/%s", toHex(digest), DockerTarStreamExtractor.LAYER_TAR_FILENAME));
+                if (!layerTarsByDigest.containsKey(digest)) {
+                    final File layerTar = new File(new File(extractionDir, toHex(digest)), DockerTarStreamExtractor.LAYER_TAR_FILENAME);
+                    layerTarsByDigest.put(digest, layerDecompressor.submit(mediaType, getBlobFile(layoutDir, digest), layerTar));
+                }
+            }
+            layerTars = layerDecompressor.getAll(new ArrayList<>(layerTarsByDigest.values()));
+        }
+        extractedImageWriter.writeManifestFile(extractionDir, String.format("%s:%s", repo, tag), configFilename, manifestLayers);
+        if (saveImageTarFile) {
+            extractedImageWriter.writeDockerTarFile(extractionDir, dockerTarFile, configFilename, manifestLayers);
+        }
+        logger.debug(String.format("Read %d layers from OCI image layout %s in %d ms", layerTars.size(), layoutDir.getAbsolutePath(), System.currentTimeMillis() - startTime));
+        return new ImageTarContents(dockerTarFile, saveImageTarFile, layerTars);
+    }
+
+    private OciImage findImage(final File layoutDir, final String imageTag) throws IOException {
+        JsonObject descriptor = null;
+        for (final JsonElement descriptorElement : readJson(new File(layoutDir, INDEX_FILENAME)).getAsJsonArray("manifests")) {
+            final JsonObject candidate = descriptorElement.getAsJsonObject();
+            if (StringUtils.isBlank(imageTag) || isTagged(candidate, imageTag)) {
+                descriptor = candidate;
+                break;
+            }
+        }
+        if (descriptor == null) {
+            throw new IOException(String.format("OCI image layout %s has no image%s", layoutDir.getAbsolutePath(), StringUtils.isBlank(imageTag) ? "" : " tagged " + imageTag));
+        }
+        final Map<String, String> annotations = getAnnotations(descriptor);
+        JsonObject manifest = readJson(getBlobFile(layoutDir, descriptor.get("digest").getAsString()));
+        // A multi-platform image: an index (or several, nested) of per-platform manifests
+        while (manifest.has("manifests")) {
+            final Optional<JsonObject> platformDescriptor = PlatformManifests.choose(manifest.getAsJsonArray("manifests"), String.format("OCI image layout %s", layoutDir.getAbsolutePath()));
+            if (!platformDescriptor.isPresent()) {
+                throw new IOException(String.format("An image index in OCI image layout %s has no linux image to inspect (platforms: %s)", layoutDir.getAbsolutePath(),
+                        PlatformManifests.describePlatforms(manifest.getAsJsonArray("manifests"))));
+            }
+            manifest = readJson(getBlobFile(layoutDir, platformDescriptor.get().get("digest").getAsString()));
+        }
+        if (!manifest.has("config") || !manifest.has("layers")) {
+            throw new IOException(String.format("The image manifest in OCI image layout %s has no config or layers", layoutDir.getAbsolutePath()));
+        }
+        return new OciImage(annotations, manifest);
+    }
+
+    // The ref name is usually just the tag, but some tools put the whole image name (repo:tag) there
+    private boolean isTagged(final JsonObject descriptor, final String imageTag) {
+        final Map<String, String> annotations = getAnnotations(descriptor);
+        final String refName = annotations.get(REF_NAME_ANNOTATION);
+        final String imageName = annotations.get(IMAGE_NAME_ANNOTATION);
+        return imageTag.equals(refName) || StringUtils.endsWith(refName, ":" + imageTag) || StringUtils.endsWith(imageName, ":" + imageTag);
+    }
+
+    private Map<String, String> getAnnotations(final JsonObject descriptor) {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        if (descriptor.has("annotations")) {
+            for (final Map.Entry<String, JsonElement> annotation : descriptor.getAsJsonObject("annotations").entrySet()) {
+                annotations.put(annotation.getKey(), annotation.getValue().getAsString());
+            }
+        }
+        return annotations;
+    }
+
+    private File getBlobFile(final File layoutDir, final String digest) throws IOException {
+        if (!DIGEST_PATTERN.matcher(digest).matches()) {
+            throw new IOException(String.format("Invalid digest in OCI image layout %s: %s", layoutDir.getAbsolutePath(), digest));
+        }
+        final File blobFile = new File(new File(new File(layoutDir, BLOBS_DIR), StringUtils.substringBefore(digest, ":")), StringUtils.substringAfter(digest, ":"));
+        if (!blobFile.isFile()) {
+            throw new IOException(String.format("OCI image layout %s is missing blob %s", layoutDir.getAbsolutePath(), digest));
+        }
+        return blobFile;
+    }
+
+    private String toHex(final String digest) {
+        return StringUtils.substringAfter(digest, ":");
+    }
+
+    private JsonObject readJson(final File jsonFile) throws IOException {
+        return new JsonParser().parse(FileUtils.readFileToString(jsonFile, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static class OciImage {
+        private final Map<String, String> annotations;
+        private final JsonObject manifest;
+
+        public OciImage(final Map<String, String> annotations, final JsonObject manifest) {
+            this.annotations = annotations;
+            this.manifest = manifest;
+        }
+
+        public String deriveRepo(final File layoutDir) {
+            final String imageName = annotations.containsKey(IMAGE_NAME_ANNOTATION) ? annotations.get(IMAGE_NAME_ANNOTATION) : annotations.get(REF_NAME_ANNOTATION);
+            if (StringUtils.contains(imageName, ":")) {
+                return StringUtils.substringBeforeLast(imageName, ":");
+            }
+            return layoutDir.getName();
+        }
+
+        public String deriveTag() {
+            final String refName = annotations.get(REF_NAME_ANNOTATION);
+            if (StringUtils.isBlank(refName)) {
+                return "latest";
+            }
+            return refName.contains(":") ? StringUtils.substringAfterLast(refName, ":") : refName;
+        }
+    }
+}
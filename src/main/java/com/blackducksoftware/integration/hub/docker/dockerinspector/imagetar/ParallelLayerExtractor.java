@@ -0,0 +1,407 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.LayerCache;
+import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
+import com.blackducksoftware.integration.hub.imageinspector.name.Names;
+import com.google.gson.Gson;
+
+/*
+ * Alternative to ImageInspector.extractDockerLayers() that untars the layer tars concurrently, each into its own staging dir,
+ * then merges the staging dirs into the container file system in manifest (lowest layer first) order. Whiteouts are recorded
+ * while staging and applied at merge time, so a layer's whiteouts only remove files contributed by the layers below it.
+ * With a layer cache, each layer is staged into a cache entry (along with its whiteouts) the first time it's seen, and
+ * merged by hard linking the entry's files into the container file system, so a layer shared by many images is extracted once.
+ * A layer the manifest names by its digest is looked up in the cache without reading its tar.
+ * Layer tars are read either from files or, given the docker tarfile's index, in place from the docker tarfile; a layer
+ * tar that turns out to be compressed (gzip or zstd) is decompressed as it's staged.
+ */
+public class ParallelLayerExtractor {
+    private static final String STAGING_DIRECTORY = "layerStaging";
+    private static final String WHITEOUT_PREFIX = ".wh.";
+    private static final String OPAQUE_WHITEOUT_FILENAME = ".wh..wh..opq";
+    private static final String CACHED_LAYER_DIR = "layer";
+    private static final String CACHED_LAYER_METADATA_FILENAME = "layer.json";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final int threadCount;
+    private final List<String> pathAllowList;
+    private final LayerCache layerCache;
+
+    public ParallelLayerExtractor(final int threadCount) {
+        this(threadCount, null);
+    }
+
+    // With a path allow list, only those paths (and everything under them) are extracted; whiteouts are still applied
+    public ParallelLayerExtractor(final int threadCount, final List<String> pathAllowList) {
+        this(threadCount, pathAllowList, null);
+    }
+
+    public ParallelLayerExtractor(final int threadCount, final List<String> pathAllowList, final LayerCache layerCache) {
+        this.threadCount = threadCount;
+        this.pathAllowList = pathAllowList;
+        this.layerCache = layerCache;
+    }
+
+    public File extractDockerLayers(final File workingDirectory, final String imageRepo, final String imageTag, final List<File> layerTars, final List<ManifestLayerMapping> manifestLayerMappings) throws IOException {
+        return extractDockerLayers(workingDirectory, imageRepo, imageTag, getOrderedLayerTars(layerTars, manifestLayerMappings));
+    }
+
+    public File extractDockerLayers(final File workingDirectory, final String imageRepo, final String imageTag, final DockerTarIndex dockerTarIndex, final List<ManifestLayerMapping> manifestLayerMappings) throws IOException {
+        return extractDockerLayers(workingDirectory, imageRepo, imageTag, getOrderedLayerTars(dockerTarIndex, manifestLayerMappings));
+    }
+
+    private File extractDockerLayers(final File workingDirectory, final String imageRepo, final String imageTag, final List<LayerTar> orderedLayerTars) throws IOException {
+        final File tarExtractionDirectory = new File(workingDirectory, DockerTarStreamExtractor.TAR_EXTRACTION_DIRECTORY);
+        final File targetImageFileSystemRootDir = new File(tarExtractionDirectory, Names.getTargetImageFileSystemRootDirName(imageRepo, imageTag));
+        final File stagingDirectory = new File(workingDirectory, STAGING_DIRECTORY);
+        final int poolSize = Math.max(1, Math.min(threadCount, orderedLayerTars.size()));
+        logger.info(String.format("Extracting %d layers using %d threads%s", orderedLayerTars.size(), poolSize, pathAllowList == null ? "" : String.format(" (only %s)", pathAllowList)));
+        if (layerCache != null) {
+            layerCache.startUsing();
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            final List<Future<StagedLayer>> stagedLayers = new ArrayList<>(orderedLayerTars.size());
+            for (int i = 0; i < orderedLayerTars.size(); i++) {
+                final LayerTar layerTar = orderedLayerTars.get(i);
+                final File layerStagingDir = new File(stagingDirectory, String.format("%03d_%s", i, layerTar.layer));
+                stagedLayers.add(executor.submit(() -> stageOrReuseLayer(layerTar, layerStagingDir)));
+            }
+            targetImageFileSystemRootDir.mkdirs();
+            // Each layer is merged as soon as it, and every layer below it, has been staged
+            for (final Future<StagedLayer> stagedLayer : stagedLayers) {
+                mergeLayer(stagedLayer.get(), targetImageFileSystemRootDir);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while extracting layers: %s", e.getMessage()), e);
+        } catch (final ExecutionException e) {
+            throw new IOException(String.format("Error extracting layer: %s", e.getCause().getMessage()), e.getCause());
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(stagingDirectory);
+            if (layerCache != null) {
+                layerCache.stopUsing();
+            }
+        }
+        return targetImageFileSystemRootDir;
+    }
+
+    private List<LayerTar> getOrderedLayerTars(final List<File> layerTars, final List<ManifestLayerMapping> manifestLayerMappings) {
+        final List<LayerTar> orderedLayerTars = new ArrayList<>();
+        for (final ManifestLayerMapping manifestLayerMapping : manifestLayerMappings) {
+            for (final String layer : manifestLayerMapping.getLayers()) {
+                final File layerTar = getLayerTar(layerTars, layer);
+                if (layerTar == null) {
+                    logger.error(String.format("Could not find the tar for layer %s", layer));
+                } else {
+                    orderedLayerTars.add(new LayerTar(layer, layerTar.getAbsolutePath(), () -> new BufferedInputStream(new FileInputStream(layerTar))));
+                }
+            }
+        }
+        return orderedLayerTars;
+    }
+
+    private List<LayerTar> getOrderedLayerTars(final DockerTarIndex dockerTarIndex, final List<ManifestLayerMapping> manifestLayerMappings) {
+        final List<LayerTar> orderedLayerTars = new ArrayList<>();
+        for (final ManifestLayerMapping manifestLayerMapping : manifestLayerMappings) {
+            for (final String layer : manifestLayerMapping.getLayers()) {
+                final String layerTarName = DockerTarIndex.getLayerTarName(layer);
+                if (!dockerTarIndex.getEntry(layerTarName).isPresent()) {
+                    logger.error(String.format("Could not find the tar for layer %s in %s", layer, dockerTarIndex.getDockerTarFile().getAbsolutePath()));
+                } else {
+                    orderedLayerTars.add(new LayerTar(layer, String.format("%s:%s", dockerTarIndex.getDockerTarFile().getAbsolutePath(), layerTarName), () -> dockerTarIndex.openEntry(layerTarName)));
+                }
+            }
+        }
+        return orderedLayerTars;
+    }
+
+    private File getLayerTar(final List<File> layerTars, final String layer) {
+        for (final File layerTar : layerTars) {
+            if (layerTar.getParentFile().getName().equals(layer)) {
+                return layerTar;
+            }
+        }
+        return null;
+    }
+
+    private StagedLayer stageOrReuseLayer(final LayerTar layerTar, final File layerStagingDir) throws IOException {
+        if (layerCache == null) {
+            return stageLayer(layerTar, layerStagingDir);
+        }
+        final String key = deriveLayerCacheKey(layerTar);
+        Optional<File> entryDir = layerCache.get(key);
+        if (!entryDir.isPresent()) {
+            final File tempEntryDir = layerCache.createTempEntryDir();
+            final StagedLayer stagedLayer = stageLayer(layerTar, new File(tempEntryDir, CACHED_LAYER_DIR));
+            FileUtils.write(new File(tempEntryDir, CACHED_LAYER_METADATA_FILENAME), new Gson().toJson(stagedLayer), StandardCharsets.UTF_8);
+            entryDir = Optional.of(layerCache.put(key, tempEntryDir));
+        }
+        try (final InputStreamReader metadataReader = new InputStreamReader(new FileInputStream(new File(entryDir.get(), CACHED_LAYER_METADATA_FILENAME)), StandardCharsets.UTF_8)) {
+            final StagedLayer cachedLayer = new Gson().fromJson(metadataReader, StagedLayer.class);
+            cachedLayer.dir = new File(entryDir.get(), CACHED_LAYER_DIR);
+            cachedLayer.cached = true;
+            return cachedLayer;
+        }
+    }
+
+    // Only a layer that isn't named by its digest is read to derive its key
+    private String deriveLayerCacheKey(final LayerTar layerTar) throws IOException {
+        final Optional<String> key = layerCache.deriveKeyFromLayerDigest(layerTar.layer, pathAllowList);
+        if (key.isPresent()) {
+            return key.get();
+        }
+        try (final InputStream layerInputStream = layerTar.opener.open()) {
+            return layerCache.deriveKey(layerInputStream, layerTar.name, pathAllowList);
+        }
+    }
+
+    private StagedLayer stageLayer(final LayerTar layerTar, final File layerStagingDir) throws IOException {
+        logger.debug(String.format("Staging layer %s in %s", layerTar.name, layerStagingDir.getAbsolutePath()));
+        final StagedLayer stagedLayer = new StagedLayer(layerStagingDir);
+        layerStagingDir.mkdirs();
+        final String layerStagingDirPath = layerStagingDir.getCanonicalPath();
+        try (final InputStream layerInputStream = LayerDecompressor.decompressIfCompressed(layerTar.opener.open())) {
+            final TarArchiveInputStream tarInputStream = new TarArchiveInputStream(layerInputStream);
+            TarArchiveEntry tarArchiveEntry = null;
+            while (null != (tarArchiveEntry = tarInputStream.getNextTarEntry())) {
+                final File outputFile = new File(layerStagingDir, tarArchiveEntry.getName()).toPath().normalize().toFile();
+                final String parentPath = outputFile.getParentFile().getCanonicalPath();
+                if (!parentPath.equals(layerStagingDirPath) && !parentPath.startsWith(layerStagingDirPath + File.separator)) {
+                    logger.warn(String.format("Skipping layer tar entry %s: it resolves to a path outside %s", tarArchiveEntry.getName(), layerStagingDirPath));
+                    continue;
+                }
+                final String relativePath = layerStagingDir.toPath().relativize(outputFile.toPath()).toString();
+                final String filename = outputFile.getName();
+                if (OPAQUE_WHITEOUT_FILENAME.equals(filename)) {
+                    stagedLayer.opaqueDirs.add(layerStagingDir.toPath().relativize(outputFile.getParentFile().toPath()).toString());
+                } else if (filename.startsWith(WHITEOUT_PREFIX)) {
+                    stagedLayer.whiteouts.add(new File(new File(relativePath).getParentFile(), filename.substring(WHITEOUT_PREFIX.length())).getPath());
+                } else if (!isAllowed(relativePath)) {
+                    continue;
+                } else if (tarArchiveEntry.isDirectory()) {
+                    outputFile.mkdirs();
+                } else if (tarArchiveEntry.isLink()) {
+                    // The link target may have been contributed by a lower layer, so hard links are created at merge time
+                    stagedLayer.hardLinks.add(new String[] { relativePath, tarArchiveEntry.getLinkName() });
+                } else {
+                    outputFile.getParentFile().mkdirs();
+                    Files.deleteIfExists(outputFile.toPath());
+                    if (tarArchiveEntry.isSymbolicLink()) {
+                        Files.createSymbolicLink(outputFile.toPath(), Paths.get(tarArchiveEntry.getLinkName()));
+                    } else {
+                        try (final OutputStream outputFileStream = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+                            IOUtils.copy(tarInputStream, outputFileStream);
+                        }
+                        outputFile.setExecutable((tarArchiveEntry.getMode() & 0111) != 0, false);
+                    }
+                }
+            }
+        }
+        return stagedLayer;
+    }
+
+    // The directories (or symlinks) leading to an allowed path are needed too
+    private boolean isAllowed(final String relativePath) {
+        if (pathAllowList == null) {
+            return true;
+        }
+        final String path = FilenameUtils.separatorsToUnix(relativePath);
+        for (final String allowedPath : pathAllowList) {
+            if (path.equals(allowedPath) || path.startsWith(allowedPath + "/") || allowedPath.startsWith(path + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void mergeLayer(final StagedLayer stagedLayer, final File targetImageFileSystemRootDir) throws IOException {
+        logger.debug(String.format("Merging staged layer %s into %s", stagedLayer.dir.getAbsolutePath(), targetImageFileSystemRootDir.getAbsolutePath()));
+        final Path rootPath = targetImageFileSystemRootDir.toPath();
+        final Path realRootPath = rootPath.toRealPath();
+        for (final String opaqueDir : stagedLayer.opaqueDirs) {
+            final Path opaqueDirPath = rootPath.resolve(opaqueDir).normalize();
+            if (!opaqueDirPath.equals(rootPath) && !isWithinRoot(opaqueDirPath, rootPath, realRootPath)) {
+                logger.warn(String.format("Skipping opaque whiteout of %s: it resolves to a path outside the container file system", opaqueDir));
+            } else if (Files.isDirectory(opaqueDirPath, LinkOption.NOFOLLOW_LINKS)) {
+                FileUtils.cleanDirectory(opaqueDirPath.toFile());
+            }
+        }
+        for (final String whiteout : stagedLayer.whiteouts) {
+            final Path whiteoutPath = rootPath.resolve(whiteout).normalize();
+            if (!isWithinRoot(whiteoutPath, rootPath, realRootPath)) {
+                logger.warn(String.format("Skipping whiteout of %s: it resolves to a path outside the container file system", whiteout));
+            } else {
+                deleteNoFollow(whiteoutPath);
+            }
+        }
+        final Path stagedLayerPath = stagedLayer.dir.toPath();
+        Files.walkFileTree(stagedLayerPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+                final Path targetDir = rootPath.resolve(stagedLayerPath.relativize(dir).toString());
+                // A directory in this layer replaces a file or symlink from a lower layer
+                if (Files.exists(targetDir, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(targetDir, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(targetDir);
+                }
+                Files.createDirectories(targetDir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                final Path targetFile = rootPath.resolve(stagedLayerPath.relativize(file).toString());
+                deleteNoFollow(targetFile);
+                if (!stagedLayer.cached) {
+                    Files.move(file, targetFile);
+                } else if (attrs.isSymbolicLink()) {
+                    Files.copy(file, targetFile, LinkOption.NOFOLLOW_LINKS);
+                } else {
+                    // The cache entry's file is shared, never moved or modified
+                    try {
+                        Files.createLink(targetFile, file);
+                    } catch (final IOException | UnsupportedOperationException e) {
+                        Files.copy(file, targetFile, LinkOption.NOFOLLOW_LINKS);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (final String[] hardLink : stagedLayer.hardLinks) {
+            final Path linkPath = rootPath.resolve(hardLink[0]).normalize();
+            final Path existingPath = rootPath.resolve(StringUtils.removeStart(hardLink[1], "/")).normalize();
+            if (!Files.exists(existingPath, LinkOption.NOFOLLOW_LINKS) || !existingPath.toRealPath().startsWith(realRootPath)) {
+                logger.warn(String.format("Unable to create hard link %s: %s does not exist within the container file system", hardLink[0], hardLink[1]));
+                continue;
+            }
+            if (!isWithinRoot(linkPath, rootPath, realRootPath)) {
+                logger.warn(String.format("Unable to create hard link %s: it resolves to a path outside the container file system", hardLink[0]));
+                continue;
+            }
+            deleteNoFollow(linkPath);
+            Files.createDirectories(linkPath.getParent());
+            try {
+                Files.createLink(linkPath, existingPath);
+            } catch (final IOException | UnsupportedOperationException e) {
+                Files.copy(existingPath, linkPath, LinkOption.NOFOLLOW_LINKS);
+            }
+        }
+        if (!stagedLayer.cached) {
+            FileUtils.deleteQuietly(stagedLayer.dir);
+        }
+    }
+
+    /*
+     * A path from a layer is only deleted, cleaned, or linked if it's (lexically) under the root, and so is the nearest of
+     * its parents that exists, once symlinks are resolved: a lower layer's symlink (to a host dir, say) must not be followed.
+     */
+    private boolean isWithinRoot(final Path path, final Path rootPath, final Path realRootPath) {
+        if (!path.startsWith(rootPath) || path.equals(rootPath)) {
+            return false;
+        }
+        Path existingParent = path.getParent();
+        while (!Files.exists(existingParent, LinkOption.NOFOLLOW_LINKS)) {
+            existingParent = existingParent.getParent();
+        }
+        try {
+            return existingParent.toRealPath().startsWith(realRootPath);
+        } catch (final IOException e) {
+            // A dangling symlink, for one
+            return false;
+        }
+    }
+
+    private void deleteNoFollow(final Path path) throws IOException {
+        if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtils.deleteDirectory(path.toFile());
+        } else {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private interface LayerTarOpener {
+        InputStream open() throws IOException;
+    }
+
+    private static class LayerTar {
+        private final String layer;
+        private final String name;
+        private final LayerTarOpener opener;
+
+        public LayerTar(final String layer, final String name, final LayerTarOpener opener) {
+            this.layer = layer;
+            this.name = name;
+            this.opener = opener;
+        }
+    }
+
+    // A cached layer's whiteouts and hard links are stored with it, as JSON
+    private static class StagedLayer {
+        private transient File dir;
+        private transient boolean cached = false;
+        private final List<String> whiteouts = new ArrayList<>();
+        private final List<String> opaqueDirs = new ArrayList<>();
+        private final List<String[]> hardLinks = new ArrayList<>();
+
+        public StagedLayer(final File dir) {
+            this.dir = dir;
+        }
+    }
+}
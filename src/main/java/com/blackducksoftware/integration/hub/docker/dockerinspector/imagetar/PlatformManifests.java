@@ -0,0 +1,103 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/*
+ * Chooses the per-platform manifest to inspect from a manifest list (or OCI index): linux/amd64 if it's there, otherwise
+ * the first other linux platform (with a warning naming it), otherwise the first entry that has no platform (as in an
+ * index that just points at a nested one). Entries for other OSs, and attestation manifests (platform unknown/unknown),
+ * are never chosen; if nothing else is left, there's nothing to inspect.
+ */
+public class PlatformManifests {
+    private static final String PLATFORM_OS = "linux";
+    private static final String PLATFORM_ARCHITECTURE = "amd64";
+    private static final String UNKNOWN_ARCHITECTURE = "unknown";
+    private static final Logger logger = LoggerFactory.getLogger(PlatformManifests.class);
+
+    private PlatformManifests() {
+    }
+
+    public static Optional<JsonObject> choose(final JsonArray descriptors, final String imageName) {
+        JsonObject otherLinuxDescriptor = null;
+        JsonObject noPlatformDescriptor = null;
+        for (final JsonElement descriptorElement : descriptors) {
+            final JsonObject descriptor = descriptorElement.getAsJsonObject();
+            if (!descriptor.has("platform")) {
+                if (noPlatformDescriptor == null) {
+                    noPlatformDescriptor = descriptor;
+                }
+                continue;
+            }
+            final String os = getPlatformField(descriptor, "os");
+            final String architecture = getPlatformField(descriptor, "architecture");
+            if (PLATFORM_OS.equals(os) && PLATFORM_ARCHITECTURE.equals(architecture)) {
+                return Optional.of(descriptor);
+            }
+            if (otherLinuxDescriptor == null && PLATFORM_OS.equals(os) && !UNKNOWN_ARCHITECTURE.equals(architecture)) {
+                otherLinuxDescriptor = descriptor;
+            }
+        }
+        if (otherLinuxDescriptor != null) {
+            logger.warn(String.format("%s has no %s/%s image; inspecting the %s image (%s) instead", imageName, PLATFORM_OS, PLATFORM_ARCHITECTURE, describePlatform(otherLinuxDescriptor),
+                    otherLinuxDescriptor.get("digest").getAsString()));
+            return Optional.of(otherLinuxDescriptor);
+        }
+        return Optional.ofNullable(noPlatformDescriptor);
+    }
+
+    // For error messages, when choose() finds nothing to inspect
+    public static List<String> describePlatforms(final JsonArray descriptors) {
+        final List<String> platforms = new ArrayList<>(descriptors.size());
+        for (final JsonElement descriptorElement : descriptors) {
+            platforms.add(describePlatform(descriptorElement.getAsJsonObject()));
+        }
+        return platforms;
+    }
+
+    // os/architecture, plus the variant (v8 for arm64, for example) if there is one
+    private static String describePlatform(final JsonObject descriptor) {
+        final String variant = getPlatformField(descriptor, "variant");
+        final String platform = String.format("%s/%s", getPlatformField(descriptor, "os"), getPlatformField(descriptor, "architecture"));
+        return variant.isEmpty() ? platform : String.format("%s/%s", platform, variant);
+    }
+
+    private static String getPlatformField(final JsonObject descriptor, final String fieldName) {
+        if (!descriptor.has("platform")) {
+            return "";
+        }
+        final JsonObject platform = descriptor.getAsJsonObject("platform");
+        return platform.has(fieldName) ? platform.get(fieldName).getAsString() : "";
+    }
+}
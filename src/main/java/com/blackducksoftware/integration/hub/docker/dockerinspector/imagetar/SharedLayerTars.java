@@ -0,0 +1,88 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.imageinspector.linux.FileOperations;
+
+/*
+ * The layer tars of a docker tarfile holding several images (from one docker save), shared by the concurrent inspections
+ * of its images: the tarfile is indexed, and its manifest extracted, once, and every inspection reads layer tars in place
+ * from the tarfile. That happens on first use, so inspectors that never need the layer tars don't pay for it.
+ */
+@Component
+public class SharedLayerTars {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<String, SharedExtraction> extractions = new ConcurrentHashMap<>();
+
+    public void share(final File dockerTarFile, final File extractionDir) throws IOException {
+        extractions.put(dockerTarFile.getCanonicalPath(), new SharedExtraction(dockerTarFile, extractionDir));
+    }
+
+    public Optional<SharedExtraction> get(final File dockerTarFile) throws IOException {
+        return Optional.ofNullable(extractions.get(dockerTarFile.getCanonicalPath()));
+    }
+
+    public void release(final File dockerTarFile, final boolean removeExtractionDir) throws IOException {
+        final SharedExtraction extraction = extractions.remove(dockerTarFile.getCanonicalPath());
+        if (extraction != null && removeExtractionDir) {
+            FileOperations.removeFileOrDir(extraction.getExtractionDir().getAbsolutePath());
+        }
+    }
+
+    public class SharedExtraction {
+        private final File dockerTarFile;
+        private final File extractionDir;
+        private DockerTarIndex dockerTarIndex;
+
+        private SharedExtraction(final File dockerTarFile, final File extractionDir) {
+            this.dockerTarFile = dockerTarFile;
+            this.extractionDir = extractionDir;
+        }
+
+        // The dir to use as the working dir when reading the tarfile's manifest
+        public File getExtractionDir() {
+            return extractionDir;
+        }
+
+        public synchronized DockerTarIndex getDockerTarIndex() throws IOException {
+            if (dockerTarIndex == null) {
+                final long startTime = System.currentTimeMillis();
+                dockerTarIndex = DockerTarIndex.of(dockerTarFile);
+                dockerTarIndex.extractManifestFiles(DockerTarStreamExtractor.getTarExtractionDirectory(extractionDir, dockerTarFile.getName()));
+                logger.info(String.format("Indexed shared docker tarfile %s in %d ms", dockerTarFile.getAbsolutePath(), System.currentTimeMillis() - startTime));
+            }
+            return dockerTarIndex;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
+import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
+import com.blackducksoftware.integration.hub.imageinspector.lib.PackageManagerEnum;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Determines which image inspector OS an image needs from its package manager database directories, reading only
+ * tar entry headers (not file contents, and without extracting anything), from either the docker tarfile (its layer tars read in place) or
+ * extracted layer tars. Layers are considered newest first, only until one settles it, and a package manager directory that a newer layer has whited out (or hidden behind an opaque directory) doesn't count.
+ */
+public class TargetOsScanner {
+    private static final String LAYERS_FIELD = "Layers";
+    private static final String REPO_TAGS_FIELD = "RepoTags";
+    private static final String WHITEOUT_PREFIX = ".wh.";
+    private static final String OPAQUE_WHITEOUT_FILENAME = ".wh..wh..opq";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public Optional<ImageInspectorOsEnum> detectInspectorOs(final File dockerTarFile, final String imageRepo, final String imageTag) {
+        final DockerTarIndex dockerTarIndex;
+        final List<String> layers;
+        try {
+            dockerTarIndex = DockerTarIndex.of(dockerTarFile);
+            if (!dockerTarIndex.getEntry(DockerTarIndex.MANIFEST_FILENAME).isPresent()) {
+                logger.debug(String.format("No %s found in %s", DockerTarIndex.MANIFEST_FILENAME, dockerTarFile.getAbsolutePath()));
+                return Optional.empty();
+            }
+            try (final InputStream manifestInputStream = dockerTarIndex.openEntry(DockerTarIndex.MANIFEST_FILENAME)) {
+                layers = getLayers(manifestInputStream, imageRepo, imageTag);
+            }
+        } catch (final IOException e) {
+            logger.debug(String.format("Unable to scan %s for package manager directories: %s", dockerTarFile.getAbsolutePath(), e.getMessage()));
+            return Optional.empty();
+        }
+        final List<Supplier<LayerScan>> newestFirstLayerScans = new ArrayList<>(layers.size());
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            final String layer = layers.get(i);
+            newestFirstLayerScans.add(() -> scanLayerTar(dockerTarIndex, layer));
+        }
+        final Optional<ImageInspectorOsEnum> inspectorOs = resolveInspectorOs(newestFirstLayerScans);
+        logger.debug(String.format("Inspector OS determined from package manager directories in %s: %s", dockerTarFile.getAbsolutePath(), inspectorOs.isPresent() ? inspectorOs.get().name() : "<unknown>"));
+        return inspectorOs;
+    }
+
+    // For a docker tarfile whose layer tars are read in place (not extracted): scanning stops at the newest layer that settles it
+    public Optional<ImageInspectorOsEnum> detectInspectorOs(final DockerTarIndex dockerTarIndex, final List<ManifestLayerMapping> manifestLayerMappings) {
+        final List<Supplier<LayerScan>> newestFirstLayerScans = new ArrayList<>();
+        for (final ManifestLayerMapping manifestLayerMapping : manifestLayerMappings) {
+            for (final String layer : manifestLayerMapping.getLayers()) {
+                newestFirstLayerScans.add(0, () -> scanLayerTar(dockerTarIndex, DockerTarIndex.getLayerTarName(layer)));
+            }
+        }
+        final Optional<ImageInspectorOsEnum> inspectorOs = resolveInspectorOs(newestFirstLayerScans);
+        logger.debug(String.format("Inspector OS determined from package manager directories in %s: %s", dockerTarIndex.getDockerTarFile().getAbsolutePath(),
+                inspectorOs.isPresent() ? inspectorOs.get().name() : "<unknown>"));
+        return inspectorOs;
+    }
+
+    // For layer tars that have already been extracted from the docker tarfile: scanning stops at the newest layer that settles it
+    public Optional<ImageInspectorOsEnum> detectInspectorOs(final List<File> layerTars, final List<ManifestLayerMapping> manifestLayerMappings) {
+        final List<Supplier<LayerScan>> newestFirstLayerScans = new ArrayList<>();
+        for (final ManifestLayerMapping manifestLayerMapping : manifestLayerMappings) {
+            for (final String layer : manifestLayerMapping.getLayers()) {
+                final File layerTar = getLayerTar(layerTars, layer);
+                newestFirstLayerScans.add(0, () -> scanLayerTar(layerTar, layer));
+            }
+        }
+        final Optional<ImageInspectorOsEnum> inspectorOs = resolveInspectorOs(newestFirstLayerScans);
+        logger.debug(String.format("Inspector OS determined from package manager directories in layer tars: %s", inspectorOs.isPresent() ? inspectorOs.get().name() : "<unknown>"));
+        return inspectorOs;
+    }
+
+    private Optional<ImageInspectorOsEnum> resolveInspectorOs(final List<Supplier<LayerScan>> newestFirstLayerScans) {
+        final List<String> hiddenPaths = new ArrayList<>();
+        for (final Supplier<LayerScan> layerScanSupplier : newestFirstLayerScans) {
+            final LayerScan layerScan = layerScanSupplier.get();
+            if (layerScan == null) {
+                // A layer that could not be scanned might contain (or hide) anything
+                return Optional.empty();
+            }
+            for (final PackageManagerEnum packageManager : layerScan.packageManagers) {
+                if (!isHidden(getPackageManagerPath(packageManager), hiddenPaths)) {
+                    return Optional.of(toInspectorOs(packageManager));
+                }
+            }
+            // A layer's whiteouts apply only to the layers below it
+            hiddenPaths.addAll(layerScan.hiddenPaths);
+        }
+        return Optional.empty();
+    }
+
+    private List<String> getLayers(final InputStream manifestInputStream, final String imageRepo, final String imageTag) {
+        final JsonArray manifestEntries = new JsonParser().parse(new InputStreamReader(manifestInputStream, StandardCharsets.UTF_8)).getAsJsonArray();
+        JsonObject selectedManifestEntry = null;
+        for (final JsonElement manifestEntry : manifestEntries) {
+            final JsonObject manifestEntryObject = manifestEntry.getAsJsonObject();
+            if (selectedManifestEntry == null || isForImage(manifestEntryObject, imageRepo, imageTag)) {
+                selectedManifestEntry = manifestEntryObject;
+            }
+        }
+        final List<String> layers = new ArrayList<>();
+        if (selectedManifestEntry != null && selectedManifestEntry.has(LAYERS_FIELD)) {
+            for (final JsonElement layer : selectedManifestEntry.get(LAYERS_FIELD).getAsJsonArray()) {
+                layers.add(layer.getAsString());
+            }
+        }
+        return layers;
+    }
+
+    private boolean isForImage(final JsonObject manifestEntryObject, final String imageRepo, final String imageTag) {
+        if (StringUtils.isBlank(imageRepo) || !manifestEntryObject.has(REPO_TAGS_FIELD) || !manifestEntryObject.get(REPO_TAGS_FIELD).isJsonArray()) {
+            return false;
+        }
+        final String repoTag = String.format("%s:%s", imageRepo, StringUtils.isBlank(imageTag) ? "latest" : imageTag);
+        for (final JsonElement manifestRepoTag : manifestEntryObject.get(REPO_TAGS_FIELD).getAsJsonArray()) {
+            if (repoTag.equals(manifestRepoTag.getAsString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File getLayerTar(final List<File> layerTars, final String layer) {
+        for (final File layerTar : layerTars) {
+            if (layerTar.getParentFile().getName().equals(layer)) {
+                return layerTar;
+            }
+        }
+        return null;
+    }
+
+    private LayerScan scanLayerTar(final File layerTar, final String layer) {
+        if (layerTar == null) {
+            logger.debug(String.format("Could not find the tar for layer %s", layer));
+            return null;
+        }
+        try (final InputStream layerTarInputStream = new BufferedInputStream(new FileInputStream(layerTar))) {
+            return scanLayer(layerTarInputStream, layer);
+        } catch (final IOException e) {
+            logger.debug(String.format("Unable to read layer tar %s: %s", layerTar.getAbsolutePath(), e.getMessage()));
+            return null;
+        }
+    }
+
+    private LayerScan scanLayerTar(final DockerTarIndex dockerTarIndex, final String layerTarName) {
+        if (!dockerTarIndex.getEntry(layerTarName).isPresent()) {
+            logger.debug(String.format("Could not find %s in %s", layerTarName, dockerTarIndex.getDockerTarFile().getAbsolutePath()));
+            return null;
+        }
+        try (final InputStream layerTarInputStream = dockerTarIndex.openEntry(layerTarName)) {
+            return scanLayer(layerTarInputStream, layerTarName);
+        } catch (final IOException e) {
+            logger.debug(String.format("Unable to read %s in %s: %s", layerTarName, dockerTarIndex.getDockerTarFile().getAbsolutePath(), e.getMessage()));
+            return null;
+        }
+    }
+
+    private LayerScan scanLayer(final InputStream layerTarInputStream, final String layerName) {
+        final LayerScan layerScan = new LayerScan();
+        try {
+            final TarArchiveInputStream tarInputStream = new TarArchiveInputStream(layerTarInputStream);
+            TarArchiveEntry tarArchiveEntry = null;
+            while (null != (tarArchiveEntry = tarInputStream.getNextTarEntry())) {
+                final String path = normalizePath(tarArchiveEntry.getName());
+                final String filename = StringUtils.substringAfterLast("/" + path, "/");
+                final String parentPath = path.contains("/") ? StringUtils.substringBeforeLast(path, "/") : "";
+                if (OPAQUE_WHITEOUT_FILENAME.equals(filename)) {
+                    layerScan.hiddenPaths.add(parentPath);
+                } else if (filename.startsWith(WHITEOUT_PREFIX)) {
+                    layerScan.hiddenPaths.add(parentPath.isEmpty() ? filename.substring(WHITEOUT_PREFIX.length()) : parentPath + "/" + filename.substring(WHITEOUT_PREFIX.length()));
+                } else {
+                    for (final PackageManagerEnum packageManager : PackageManagerEnum.values()) {
+                        if (isAtOrBelow(path, getPackageManagerPath(packageManager))) {
+                            layerScan.packageManagers.add(packageManager);
+                        }
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            logger.debug(String.format("Unable to scan layer %s: %s", layerName, e.getMessage()));
+            return null;
+        }
+        return layerScan;
+    }
+
+    private boolean isHidden(final String path, final List<String> hiddenPaths) {
+        for (final String hiddenPath : hiddenPaths) {
+            if (hiddenPath.isEmpty() || isAtOrBelow(path, hiddenPath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAtOrBelow(final String path, final String dirPath) {
+        return path.equals(dirPath) || path.startsWith(dirPath + "/");
+    }
+
+    private String normalizePath(final String tarEntryName) {
+        String path = tarEntryName;
+        if (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        return StringUtils.strip(path, "/");
+    }
+
+    private String getPackageManagerPath(final PackageManagerEnum packageManager) {
+        return normalizePath(packageManager.getDirectory());
+    }
+
+    private ImageInspectorOsEnum toInspectorOs(final PackageManagerEnum packageManager) {
+        if (packageManager == PackageManagerEnum.APK) {
+            return ImageInspectorOsEnum.ALPINE;
+        }
+        if (packageManager == PackageManagerEnum.RPM) {
+            return ImageInspectorOsEnum.CENTOS;
+        }
+        return ImageInspectorOsEnum.UBUNTU;
+    }
+
+    private static class LayerScan {
+        private final Set<PackageManagerEnum> packageManagers = EnumSet.noneOf(PackageManagerEnum.class);
+        private final List<String> hiddenPaths = new ArrayList<>();
+    }
+}
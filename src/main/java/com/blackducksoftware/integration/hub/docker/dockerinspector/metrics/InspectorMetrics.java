@@ -0,0 +1,136 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/*
+ * Counters, timers and histograms covering every image inspected by this process (unlike PhaseTimings, which covers one image).
+ * They can be scraped (see MetricsEndpoint) by long running (batch) processes, or written to a Prometheus textfile collector file at exit.
+ */
+@Component
+public class InspectorMetrics {
+    private static final String PREFIX = "hub.docker.inspector.";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+    public void recordImageInspected(final boolean succeeded) {
+        registry.counter(PREFIX + "images.inspected", "result", succeeded ? "success" : "failure").increment();
+    }
+
+    public void recordFailure(final Throwable e) {
+        registry.counter(PREFIX + "failures", "exception", e.getClass().getSimpleName()).increment();
+    }
+
+    public void recordPhase(final Phase phase, final long milliseconds, final long bytes) {
+        Timer.builder(PREFIX + "phase.duration")
+                .tag("phase", phase.getJsonName())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(10L))
+                .maximumExpectedValue(Duration.ofMinutes(10L))
+                .register(registry)
+                .record(milliseconds, TimeUnit.MILLISECONDS);
+        if (bytes > 0L) {
+            DistributionSummary.builder(PREFIX + "phase.bytes")
+                    .tag("phase", phase.getJsonName())
+                    .baseUnit("bytes")
+                    .register(registry)
+                    .record(bytes);
+        }
+    }
+
+    public void recordServiceStart(final boolean ready, final long readinessMilliseconds, final int healthChecks) {
+        registry.timer(PREFIX + "service.readiness", "ready", Boolean.toString(ready)).record(readinessMilliseconds, TimeUnit.MILLISECONDS);
+        // The first health check is not a retry
+        if (healthChecks > 1) {
+            registry.counter(PREFIX + "service.health.check.retries").increment(healthChecks - 1);
+        }
+    }
+
+    public void recordServiceRedirect(final String fromInspectorOs, final String toInspectorOs) {
+        registry.counter(PREFIX + "service.redirects", "from", fromInspectorOs, "to", toInspectorOs).increment();
+    }
+
+    public void recordBdioCacheLookup(final boolean hit) {
+        registry.counter(PREFIX + "bdio.cache.lookups", "result", hit ? "hit" : "miss").increment();
+    }
+
+    public void recordImagePull(final boolean pulled) {
+        registry.counter(PREFIX + "docker.pulls", "result", pulled ? "pulled" : "skipped").increment();
+    }
+
+    public void recordLayerCacheLookup(final boolean hit) {
+        registry.counter(PREFIX + "layer.cache.lookups", "result", hit ? "hit" : "miss").increment();
+    }
+
+    public void recordHubUpload(final boolean succeeded, final long milliseconds, final int attempts) {
+        registry.timer(PREFIX + "hub.upload.duration", "result", succeeded ? "success" : "failure").record(milliseconds, TimeUnit.MILLISECONDS);
+        // The first attempt is not a retry
+        if (attempts > 1) {
+            registry.counter(PREFIX + "hub.upload.retries").increment(attempts - 1);
+        }
+    }
+
+    // Queue depth, active and completed task counts of a worker pool
+    public void monitorExecutor(final ExecutorService executor, final String name) {
+        new ExecutorServiceMetrics(executor, PREFIX + name, Collections.emptyList()).bindTo(registry);
+    }
+
+    public String scrape() {
+        return registry.scrape();
+    }
+
+    // The textfile collector may read the file at any time, so it is replaced atomically
+    public void writeTextfile(final File textfile) {
+        final File tempTextfile = new File(textfile.getAbsoluteFile().getParentFile(), String.format(".%s.tmp", textfile.getName()));
+        try {
+            FileUtils.write(tempTextfile, scrape(), StandardCharsets.UTF_8);
+            Files.move(tempTextfile.toPath(), textfile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug(String.format("Wrote metrics to %s", textfile.getAbsolutePath()));
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to write metrics file %s: %s", textfile.getAbsolutePath(), e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+
+/*
+ * Downloads registry blobs into the blob store, several at a time. A download that fails part way (a dropped connection,
+ * a read timeout) is retried from where it left off, using an HTTP Range request; so is one that an earlier run left
+ * unfinished. The blob's sha256 is computed as it streams in (picking up from the bytes already there when resuming),
+ * and a blob whose digest doesn't match is discarded rather than stored.
+ */
+@Component
+public class BlobDownloader {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final String SHA256_PREFIX = "sha256:";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    // Called on the download thread, once the blob is in the store
+    public interface BlobHandler<T> {
+        T handle(String digest, File blobFile) throws IOException, IntegrationException;
+    }
+
+    // Results are in the order of the given digests
+    public <T> List<T> downloadAll(final ImageReference imageReference, final List<String> digests, final BlobHandler<T> blobHandler) throws IOException, IntegrationException {
+        final int poolSize = Math.max(1, Math.min(config.getDockerRegistryDownloadThreadCount(), digests.size()));
+        logger.debug(String.format("Downloading %d blobs using %d threads", digests.size(), poolSize));
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        try {
+            final List<Future<T>> handledBlobs = new ArrayList<>(digests.size());
+            for (final String digest : digests) {
+                handledBlobs.add(executor.submit(() -> blobHandler.handle(digest, download(imageReference, digest))));
+            }
+            final List<T> results = new ArrayList<>(digests.size());
+            for (final Future<T> handledBlob : handledBlobs) {
+                results.add(handledBlob.get());
+            }
+            return results;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format("Interrupted while downloading blobs: %s", e.getMessage()), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IntegrationException) {
+                throw (IntegrationException) e.getCause();
+            }
+            throw new IOException(String.format("Error downloading blob: %s", e.getCause().getMessage()), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public File download(final ImageReference imageReference, final String digest) throws IOException, IntegrationException {
+        return blobStore.withBlobLocked(digest, () -> {
+            final File blobFile = blobStore.getBlobFile(digest);
+            if (blobFile.isFile()) {
+                logger.debug(String.format("Blob %s is already in the blob store", digest));
+                blobStore.touch(blobFile);
+                return blobFile;
+            }
+            for (int attempt = 1;; attempt++) {
+                try {
+                    downloadPartialBlob(imageReference, digest);
+                    return blobStore.completeBlob(digest);
+                } catch (final IOException e) {
+                    if (attempt >= MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.warn(String.format("Download of blob %s failed (attempt %d of %d); resuming: %s", digest, attempt, MAX_ATTEMPTS, e.getMessage()));
+                }
+            }
+        });
+    }
+
+    private void downloadPartialBlob(final ImageReference imageReference, final String digest) throws IOException, IntegrationException {
+        final File partialBlobFile = blobStore.getPartialBlobFile(digest);
+        final MessageDigest blobDigest = DigestUtils.getSha256Digest();
+        long offset = 0L;
+        if (partialBlobFile.isFile()) {
+            try (final InputStream partialBlobInputStream = new BufferedInputStream(new FileInputStream(partialBlobFile))) {
+                DigestUtils.updateDigest(blobDigest, partialBlobInputStream);
+            }
+            offset = partialBlobFile.length();
+            // An earlier run may have downloaded it all, but stopped before moving it into place
+            if (digest.equals(deriveDigest(blobDigest))) {
+                return;
+            }
+        }
+        final CloseableHttpResponse blobResponse;
+        try {
+            blobResponse = registryClient.getBlob(imageReference, digest, offset);
+        } catch (final IntegrationException e) {
+            if (offset == 0L) {
+                throw e;
+            }
+            // Most likely the range is past the end of the blob: the partial blob is bad, so start over
+            Files.deleteIfExists(partialBlobFile.toPath());
+            throw new IOException(String.format("Unable to resume blob %s at byte %d: %s", digest, offset, e.getMessage()), e);
+        }
+        try {
+            final boolean resuming = offset > 0L && blobResponse.getStatusLine().getStatusCode() == HttpStatus.SC_PARTIAL_CONTENT;
+            if (resuming) {
+                logger.debug(String.format("Resuming download of blob %s at byte %d", digest, offset));
+            } else {
+                blobDigest.reset();
+            }
+            try (final InputStream blobInputStream = new DigestInputStream(blobResponse.getEntity().getContent(), blobDigest);
+                    final OutputStream partialBlobOutputStream = new BufferedOutputStream(new FileOutputStream(partialBlobFile, resuming))) {
+                IOUtils.copy(blobInputStream, partialBlobOutputStream);
+            }
+        } finally {
+            blobResponse.close();
+        }
+        final String downloadedDigest = deriveDigest(blobDigest);
+        if (!digest.equals(downloadedDigest)) {
+            Files.deleteIfExists(partialBlobFile.toPath());
+            throw new IntegrationException(String.format("Digest mismatch: expected %s, but the downloaded blob's digest is %s", digest, downloadedDigest));
+        }
+    }
+
+    // Leaves the given digest as it was, so it can still be updated
+    private String deriveDigest(final MessageDigest blobDigest) throws IOException {
+        try {
+            return SHA256_PREFIX + Hex.encodeHexString(((MessageDigest) blobDigest.clone()).digest());
+        } catch (final CloneNotSupportedException e) {
+            throw new IOException(String.format("Unable to compute blob digest: %s", e.getMessage()), e);
+        }
+    }
+}
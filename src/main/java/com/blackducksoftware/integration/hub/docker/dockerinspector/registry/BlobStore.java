@@ -0,0 +1,163 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+
+/*
+ * Content-addressed store of registry blobs (as downloaded: compressed), under the working dir, shared by every run
+ * that uses the same working dir. A blob is downloaded into <digest>.partial (which survives an interrupted download,
+ * so it can be resumed) and renamed to <digest> once its digest is verified. Work on a blob is done holding an exclusive
+ * lock on <digest>.lock, so concurrent runs (and threads) never download the same blob at the same time: the later one
+ * waits, then finds the blob in the store.
+ */
+@Component
+public class BlobStore {
+    private static final String STORE_DIR = "blobStore";
+    private static final String SHA256_PREFIX = "sha256:";
+    private static final Pattern SHA256_HEX_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final long BYTES_PER_MB = 1024L * 1024L;
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    // A JVM can't hold two locks on the same file, so threads of this run are kept apart before they lock it
+    private final ConcurrentMap<String, Object> blobMonitors = new ConcurrentHashMap<>();
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private ProgramPaths programPaths;
+
+    public interface BlobAction<T> {
+        T run() throws IOException, IntegrationException;
+    }
+
+    public File getBlobFile(final String digest) throws IntegrationException {
+        return new File(getStoreDir(), toHex(digest));
+    }
+
+    public File getPartialBlobFile(final String digest) throws IntegrationException {
+        return new File(getStoreDir(), toHex(digest) + PARTIAL_SUFFIX);
+    }
+
+    public <T> T withBlobLocked(final String digest, final BlobAction<T> action) throws IOException, IntegrationException {
+        final File lockFile = new File(getStoreDir(), toHex(digest) + LOCK_SUFFIX);
+        synchronized (blobMonitors.computeIfAbsent(digest, key -> new Object())) {
+            lockFile.getParentFile().mkdirs();
+            try (final RandomAccessFile lockRandomAccessFile = new RandomAccessFile(lockFile, "rw");
+                    final FileLock lock = lockRandomAccessFile.getChannel().lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    // Only while holding the blob's lock
+    public File completeBlob(final String digest) throws IOException, IntegrationException {
+        final File blobFile = getBlobFile(digest);
+        Files.move(getPartialBlobFile(digest).toPath(), blobFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return blobFile;
+    }
+
+    // The blob file's modification time is its last use time, for LRU eviction
+    public void touch(final File blobFile) {
+        blobFile.setLastModified(System.currentTimeMillis());
+    }
+
+    // Blobs (and partial blobs) that another thread or run is working on are left alone
+    public void evict() {
+        final long maxSizeBytes = config.getDockerRegistryBlobStoreMaxSizeMb() * BYTES_PER_MB;
+        final File[] blobFiles = getStoreDir().listFiles(file -> file.isFile() && !file.getName().endsWith(LOCK_SUFFIX));
+        if (blobFiles == null) {
+            return;
+        }
+        final List<File> blobFilesOldestFirst = new ArrayList<>(Arrays.asList(blobFiles));
+        blobFilesOldestFirst.sort(Comparator.comparingLong(File::lastModified));
+        long totalSizeBytes = 0L;
+        for (final File blobFile : blobFilesOldestFirst) {
+            totalSizeBytes += blobFile.length();
+        }
+        for (final File blobFile : blobFilesOldestFirst) {
+            if (totalSizeBytes <= maxSizeBytes) {
+                break;
+            }
+            final long blobSizeBytes = blobFile.length();
+            if (tryEvict(blobFile)) {
+                totalSizeBytes -= blobSizeBytes;
+            }
+        }
+    }
+
+    private boolean tryEvict(final File blobFile) {
+        final String digest = SHA256_PREFIX + StringUtils.removeEnd(blobFile.getName(), PARTIAL_SUFFIX);
+        synchronized (blobMonitors.computeIfAbsent(digest, key -> new Object())) {
+            try (final RandomAccessFile lockRandomAccessFile = new RandomAccessFile(new File(getStoreDir(), toHex(digest) + LOCK_SUFFIX), "rw");
+                    final FileLock lock = lockRandomAccessFile.getChannel().tryLock()) {
+                if (lock == null) {
+                    logger.debug(String.format("Blob %s is in use; not evicting it", blobFile.getAbsolutePath()));
+                    return false;
+                }
+                logger.debug(String.format("Evicting least recently used blob %s", blobFile.getAbsolutePath()));
+                return Files.deleteIfExists(blobFile.toPath());
+            } catch (final IOException | IntegrationException e) {
+                logger.warn(String.format("Unable to evict blob %s: %s", blobFile.getAbsolutePath(), e.getMessage()));
+                return false;
+            }
+        }
+    }
+
+    private File getStoreDir() {
+        return new File(new File(programPaths.getHubDockerPgmDirPathHost(), STORE_DIR), StringUtils.removeEnd(SHA256_PREFIX, ":"));
+    }
+
+    private String toHex(final String digest) throws IntegrationException {
+        final String hex = StringUtils.removeStart(digest, SHA256_PREFIX);
+        if (!digest.startsWith(SHA256_PREFIX) || !SHA256_HEX_PATTERN.matcher(hex).matches()) {
+            throw new IntegrationException(String.format("Unsupported digest: %s", digest));
+        }
+        return hex;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import org.apache.commons.lang3.StringUtils;
+
+/*
+ * Where an image repo:tag lives, the way docker resolves it: the first path component is the registry host if it looks
+ * like one (contains a '.' or ':', or is localhost); otherwise the image is on Docker Hub, where single component repos
+ * are under library/.
+ */
+public class ImageReference {
+    private static final String DOCKER_HUB_REGISTRY_HOST = "registry-1.docker.io";
+    private static final String DOCKER_HUB_REPOSITORY_PREFIX = "library/";
+    private static final String LOCALHOST = "localhost";
+    private final String registryHost;
+    private final String repository;
+    private final String tag;
+
+    public ImageReference(final String registryHost, final String repository, final String tag) {
+        this.registryHost = registryHost;
+        this.repository = repository;
+        this.tag = tag;
+    }
+
+    public static ImageReference parse(final String imageRepo, final String imageTag) {
+        final String tag = StringUtils.isBlank(imageTag) ? "latest" : imageTag;
+        final String firstComponent = StringUtils.substringBefore(imageRepo, "/");
+        if (imageRepo.contains("/") && (firstComponent.contains(".") || firstComponent.contains(":") || LOCALHOST.equals(firstComponent))) {
+            final String repository = StringUtils.substringAfter(imageRepo, "/");
+            if ("docker.io".equals(firstComponent) || "index.docker.io".equals(firstComponent)) {
+                return new ImageReference(DOCKER_HUB_REGISTRY_HOST, repository.contains("/") ? repository : DOCKER_HUB_REPOSITORY_PREFIX + repository, tag);
+            }
+            return new ImageReference(firstComponent, repository, tag);
+        }
+        return new ImageReference(DOCKER_HUB_REGISTRY_HOST, imageRepo.contains("/") ? imageRepo : DOCKER_HUB_REPOSITORY_PREFIX + imageRepo, tag);
+    }
+
+    // Like docker, registries on the local host are assumed not to have TLS
+    public String getBaseUrl() {
+        final String host = StringUtils.substringBefore(registryHost, ":");
+        final String scheme = LOCALHOST.equals(host) || "127.0.0.1".equals(host) ? "http" : "https";
+        return String.format("%s://%s", scheme, registryHost);
+    }
+
+    public String getRegistryHost() {
+        return registryHost;
+    }
+
+    public String getRepository() {
+        return repository;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s:%s", registryHost, repository, tag);
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Minimal Docker Registry HTTP API v2 client. Requests that are refused (401) with a Bearer challenge are retried
+ * with an anonymous pull token from the challenge's realm; tokens are reused for the rest of the run.
+ * Redirects (registries commonly redirect blob requests to a CDN or object store) are followed without the token.
+ * Proxies are configured the way the JVM's are (the http(s).proxyHost, http(s).proxyPort, and http.nonProxyHosts system
+ * properties). A manifest digest check has a short timeout, since the pull it might save is the fallback if it fails.
+ */
+@Component
+public class RegistryClient {
+    public static final String DIGEST_HEADER = "Docker-Content-Digest";
+    // Accepting manifest lists and OCI indexes too, so the digest is the one docker records when it pulls by tag
+    private static final String MANIFEST_MEDIA_TYPES = String.join(",", "application/vnd.docker.distribution.manifest.list.v2+json", "application/vnd.docker.distribution.manifest.v2+json",
+            "application/vnd.oci.image.index.v1+json", "application/vnd.oci.image.manifest.v1+json");
+    private static final int TIMEOUT_MILLISECONDS = 30000;
+    private static final int DIGEST_CHECK_TIMEOUT_MILLISECONDS = 5000;
+    private static final long IDLE_CONNECTION_EVICTION_SECONDS = 30L;
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 16;
+    private static final Pattern CHALLENGE_PARAMETER_PATTERN = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<String, String> tokensByScope = new HashMap<>();
+    private PoolingHttpClientConnectionManager connectionManager;
+    private IdleConnectionEvictor idleConnectionEvictor;
+    private CloseableHttpClient httpClient;
+
+    public String getManifestDigest(final ImageReference imageReference) throws IOException, IntegrationException {
+        final HttpHead request = new HttpHead(deriveManifestUri(imageReference));
+        request.setHeader(HttpHeaders.ACCEPT, MANIFEST_MEDIA_TYPES);
+        request.setConfig(createRequestConfig(DIGEST_CHECK_TIMEOUT_MILLISECONDS));
+        try (final CloseableHttpResponse response = execute(imageReference, request)) {
+            checkStatus(response, request);
+            final Header digestHeader = response.getFirstHeader(DIGEST_HEADER);
+            if (digestHeader == null || StringUtils.isBlank(digestHeader.getValue())) {
+                throw new IntegrationException(String.format("Registry did not return the manifest digest for %s", imageReference));
+            }
+            logger.debug(String.format("Registry manifest digest for %s: %s", imageReference, digestHeader.getValue()));
+            return digestHeader.getValue();
+        }
+    }
+
+    // The manifest for a tag or digest, exactly as the registry returned it; for a tag, it may be a manifest list (or OCI index)
+    public byte[] getManifest(final ImageReference imageReference, final String tagOrDigest) throws IOException, IntegrationException {
+        final HttpGet request = new HttpGet(deriveUri(imageReference, String.format("manifests/%s", tagOrDigest)));
+        request.setHeader(HttpHeaders.ACCEPT, MANIFEST_MEDIA_TYPES);
+        try (final CloseableHttpResponse response = execute(imageReference, request)) {
+            checkStatus(response, request);
+            return EntityUtils.toByteArray(response.getEntity());
+        }
+    }
+
+    // The caller must close the response
+    public CloseableHttpResponse getBlob(final ImageReference imageReference, final String digest) throws IOException, IntegrationException {
+        return getBlob(imageReference, digest, 0L);
+    }
+
+    // From the given offset on, if the registry honors the range: it did if the status is 206 (Partial Content). The caller must close the response
+    public CloseableHttpResponse getBlob(final ImageReference imageReference, final String digest, final long offset) throws IOException, IntegrationException {
+        final HttpGet request = new HttpGet(deriveUri(imageReference, String.format("blobs/%s", digest)));
+        if (offset > 0L) {
+            request.setHeader(HttpHeaders.RANGE, String.format("bytes=%d-", offset));
+        }
+        final CloseableHttpResponse response = execute(imageReference, request);
+        try {
+            checkStatus(response, request);
+        } catch (final IntegrationException e) {
+            response.close();
+            throw e;
+        }
+        return response;
+    }
+
+    // The caller must close the response
+    public CloseableHttpResponse execute(final ImageReference imageReference, final HttpRequestBase request) throws IOException, IntegrationException {
+        final String scope = String.format("repository:%s:pull", imageReference.getRepository());
+        final String token = getToken(scope);
+        if (token != null) {
+            request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        }
+        final CloseableHttpResponse response = getHttpClient().execute(request);
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+            return followRedirects(request, response);
+        }
+        final Header challenge = response.getFirstHeader(HttpHeaders.WWW_AUTHENTICATE);
+        EntityUtils.consumeQuietly(response.getEntity());
+        response.close();
+        if (challenge == null || !StringUtils.startsWithIgnoreCase(challenge.getValue(), "Bearer ")) {
+            throw new IntegrationException(String.format("Registry refused %s %s, and does not offer token authentication", request.getMethod(), request.getURI()));
+        }
+        final String newToken = requestToken(request, challenge.getValue(), scope);
+        putToken(scope, newToken);
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + newToken);
+        return followRedirects(request, getHttpClient().execute(request));
+    }
+
+    public void checkStatus(final CloseableHttpResponse response, final HttpRequestBase request) throws IntegrationException {
+        final int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode < 200 || statusCode >= 300) {
+            throw new IntegrationException(String.format("Registry request %s %s failed: %d %s", request.getMethod(), request.getURI(), statusCode, response.getStatusLine().getReasonPhrase()));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (final IOException e) {
+                logger.debug(String.format("Error closing registry client: %s", e.getMessage()));
+            }
+            idleConnectionEvictor.shutdown();
+            connectionManager.shutdown();
+            httpClient = null;
+        }
+    }
+
+    private CloseableHttpResponse followRedirects(final HttpRequestBase request, final CloseableHttpResponse firstResponse) throws IOException, IntegrationException {
+        CloseableHttpResponse response = firstResponse;
+        URI uri = request.getURI();
+        for (int redirectCount = 0; isRedirect(response); redirectCount++) {
+            final Header location = response.getFirstHeader(HttpHeaders.LOCATION);
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
+            if (location == null || redirectCount >= MAX_REDIRECTS) {
+                throw new IntegrationException(String.format("Registry request %s %s was redirected too many times, or without a location", request.getMethod(), request.getURI()));
+            }
+            uri = uri.resolve(location.getValue());
+            logger.debug(String.format("Following registry redirect to %s", uri));
+            final HttpRequestBase redirectedRequest = "HEAD".equals(request.getMethod()) ? new HttpHead(uri) : new HttpGet(uri);
+            redirectedRequest.setConfig(request.getConfig());
+            for (final Header header : request.getAllHeaders()) {
+                if (!HttpHeaders.AUTHORIZATION.equalsIgnoreCase(header.getName())) {
+                    redirectedRequest.addHeader(header);
+                }
+            }
+            response = getHttpClient().execute(redirectedRequest);
+        }
+        return response;
+    }
+
+    private boolean isRedirect(final CloseableHttpResponse response) {
+        final int statusCode = response.getStatusLine().getStatusCode();
+        return statusCode == HttpStatus.SC_MOVED_PERMANENTLY || statusCode == HttpStatus.SC_MOVED_TEMPORARILY || statusCode == HttpStatus.SC_SEE_OTHER || statusCode == HttpStatus.SC_TEMPORARY_REDIRECT || statusCode == 308;
+    }
+
+    private URI deriveManifestUri(final ImageReference imageReference) throws IntegrationException {
+        return deriveUri(imageReference, String.format("manifests/%s", imageReference.getTag()));
+    }
+
+    private URI deriveUri(final ImageReference imageReference, final String path) throws IntegrationException {
+        try {
+            return new URI(String.format("%s/v2/%s/%s", imageReference.getBaseUrl(), imageReference.getRepository(), path));
+        } catch (final URISyntaxException e) {
+            throw new IntegrationException(String.format("Invalid registry URI for %s: %s", imageReference, e.getMessage()), e);
+        }
+    }
+
+    // The token request has the same timeouts as the request it's for
+    private String requestToken(final HttpRequestBase request, final String challenge, final String scope) throws IOException, IntegrationException {
+        final Map<String, String> challengeParameters = new HashMap<>();
+        final Matcher matcher = CHALLENGE_PARAMETER_PATTERN.matcher(challenge);
+        while (matcher.find()) {
+            challengeParameters.put(matcher.group(1), matcher.group(2));
+        }
+        final String realm = challengeParameters.get("realm");
+        if (StringUtils.isBlank(realm)) {
+            throw new IntegrationException(String.format("Registry token challenge has no realm: %s", challenge));
+        }
+        final HttpGet tokenRequest;
+        try {
+            final URIBuilder tokenUriBuilder = new URIBuilder(realm);
+            if (challengeParameters.containsKey("service")) {
+                tokenUriBuilder.addParameter("service", challengeParameters.get("service"));
+            }
+            tokenUriBuilder.addParameter("scope", challengeParameters.containsKey("scope") ? challengeParameters.get("scope") : scope);
+            tokenRequest = new HttpGet(tokenUriBuilder.build());
+            tokenRequest.setConfig(request.getConfig());
+        } catch (final URISyntaxException e) {
+            throw new IntegrationException(String.format("Invalid registry token realm %s: %s", realm, e.getMessage()), e);
+        }
+        logger.debug(String.format("Requesting registry token: %s", tokenRequest.getURI()));
+        try (final CloseableHttpResponse tokenResponse = getHttpClient().execute(tokenRequest)) {
+            checkStatus(tokenResponse, tokenRequest);
+            final JsonObject tokenJson = new JsonParser().parse(new InputStreamReader(tokenResponse.getEntity().getContent(), StandardCharsets.UTF_8)).getAsJsonObject();
+            final String tokenField = tokenJson.has("token") ? "token" : "access_token";
+            if (!tokenJson.has(tokenField)) {
+                throw new IntegrationException(String.format("Registry token response from %s has no token", realm));
+            }
+            return tokenJson.get(tokenField).getAsString();
+        }
+    }
+
+    private synchronized String getToken(final String scope) {
+        return tokensByScope.get(scope);
+    }
+
+    private synchronized void putToken(final String scope, final String token) {
+        tokensByScope.put(scope, token);
+    }
+
+    private synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+            connectionManager.setMaxTotal(MAX_CONNECTIONS_PER_ROUTE * 2);
+            idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, IDLE_CONNECTION_EVICTION_SECONDS, TimeUnit.SECONDS);
+            idleConnectionEvictor.start();
+            httpClient = HttpClients.custom().useSystemProperties().setConnectionManager(connectionManager).setDefaultRequestConfig(createRequestConfig(TIMEOUT_MILLISECONDS)).disableRedirectHandling().build();
+        }
+        return httpClient;
+    }
+
+    private RequestConfig createRequestConfig(final int timeoutMilliseconds) {
+        return RequestConfig.custom().setConnectTimeout(timeoutMilliseconds).setSocketTimeout(timeoutMilliseconds).setConnectionRequestTimeout(timeoutMilliseconds).build();
+    }
+}
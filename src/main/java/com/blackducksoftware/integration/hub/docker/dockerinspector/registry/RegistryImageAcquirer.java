@@ -0,0 +1,193 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarStreamExtractor;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ExtractedImageWriter;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ImageTarContents;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.LayerDecompressor;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.PlatformManifests;
+import com.blackducksoftware.integration.hub.imageinspector.name.Names;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/*
+ * Gets an image directly from its registry (no Docker engine involved), in the same form as streamed docker save output:
+ * manifest.json, the config json, and an uncompressed layer tar per layer, under the working dir's tar extraction dir.
+ * Blobs come from (or are downloaded into) the blob store; each layer is decompressed (on a pool of its own) as soon as its blob is there.
+ * A docker save format tarfile is only assembled from them if one is needed (an inspector container or service reads it).
+ */
+@Component
+public class RegistryImageAcquirer {
+    private static final String SHA256_PREFIX = "sha256:";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @Autowired
+    private BlobDownloader blobDownloader;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private PhaseTimings phaseTimings;
+
+    public ImageTarContents acquire(final String imageRepo, final String imageTag, final File imageTarDirectory, final File workingDirectory, final boolean saveImageTarFile) throws IOException, IntegrationException {
+        final ImageReference imageReference = ImageReference.parse(imageRepo, imageTag);
+        final ExtractedImageWriter extractedImageWriter = new ExtractedImageWriter();
+        final String tag = imageReference.getTag();
+        final File dockerTarFile = new File(imageTarDirectory, Names.getImageTarFilename(imageRepo, tag));
+        final File extractionDir = DockerTarStreamExtractor.getTarExtractionDirectory(workingDirectory, dockerTarFile.getName());
+        logger.info(String.format("Getting image %s:%s directly from registry %s", imageRepo, tag, imageReference.getRegistryHost()));
+        final long startTime = System.currentTimeMillis();
+        final JsonObject imageManifest = getImageManifest(imageReference);
+        extractionDir.mkdirs();
+
+        final String configDigest = imageManifest.getAsJsonObject("config").get("digest").getAsString();
+        final String configFilename = String.format("%s.json", toHex(configDigest));
+        final File configBlobFile = blobDownloader.download(imageReference, configDigest);
+        Files.copy(configBlobFile.toPath(), new File(extractionDir, configFilename).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        // The same layer can appear more than once in an image; it's only downloaded once
+        final Map<String, RegistryLayer> layersByDigest = new LinkedHashMap<>();
+        final List<String> manifestLayers = new ArrayList<>();
+        long totalSizeBytes = configBlobFile.length();
+        for (final JsonElement layerElement : imageManifest.getAsJsonArray("layers")) {
+            final JsonObject layerObject = layerElement.getAsJsonObject();
+            final String digest = layerObject.get("digest").getAsString();
+            final String mediaType = layerObject.has("mediaType") ? layerObject.get("mediaType").getAsString() : "";
+            final File layerTar = new File(new File(extractionDir, toHex(digest)), DockerTarStreamExtractor.LAYER_TAR_FILENAME);
+            manifestLayers.add(String.format("%s/%s", toHex(digest), DockerTarStreamExtractor.LAYER_TAR_FILENAME));
+            if (!layersByDigest.containsKey(digest)) {
+                layersByDigest.put(digest, new RegistryLayer(mediaType, layerTar));
+                totalSizeBytes += layerObject.has("size") ? layerObject.get("size").getAsLong() : 0L;
+            }
+        }
+        // Each layer is handed to the decompression pool as soon as its blob is there, and the download threads move on
+        final List<File> layerTars;
+        try (final LayerDecompressor layerDecompressor = new LayerDecompressor(config.getLayerDecompressionThreadCount())) {
+            final List<Future<File>> layerTarFutures = blobDownloader.downloadAll(imageReference, new ArrayList<>(layersByDigest.keySet()),
+                    (digest, blobFile) -> layerDecompressor.submit(layersByDigest.get(digest).mediaType, blobFile, layersByDigest.get(digest).layerTar));
+            layerTars = layerDecompressor.getAll(layerTarFutures);
+        }
+        blobStore.evict();
+        extractedImageWriter.writeManifestFile(extractionDir, String.format("%s:%s", imageRepo, tag), configFilename, manifestLayers);
+        phaseTimings.record(Phase.DOCKER_PULL, startTime, totalSizeBytes);
+        logger.info(String.format("Got image %s:%s (%d layers, %d bytes) from registry %s in %d ms", imageRepo, tag, layerTars.size(), totalSizeBytes, imageReference.getRegistryHost(),
+                System.currentTimeMillis() - startTime));
+
+        if (saveImageTarFile) {
+            final long saveStartTime = System.currentTimeMillis();
+            extractedImageWriter.writeDockerTarFile(extractionDir, dockerTarFile, configFilename, manifestLayers);
+            phaseTimings.record(Phase.DOCKER_SAVE, saveStartTime, dockerTarFile.length());
+        }
+        return new ImageTarContents(dockerTarFile, saveImageTarFile, layerTars);
+    }
+
+    // Same as the image ID docker would give the image
+    public String getImageConfigDigest(final String imageRepo, final String imageTag) throws IOException, IntegrationException {
+        final JsonObject imageManifest = getImageManifest(ImageReference.parse(imageRepo, imageTag));
+        return imageManifest.getAsJsonObject("config").get("digest").getAsString();
+    }
+
+    private JsonObject getImageManifest(final ImageReference imageReference) throws IOException, IntegrationException {
+        final JsonObject manifest = parseJson(registryClient.getManifest(imageReference, imageReference.getTag()));
+        if (!manifest.has("manifests")) {
+            return checkImageManifest(manifest, imageReference);
+        }
+        // A manifest list (or OCI index): use the manifest for this platform
+        final Optional<JsonObject> platformManifest = PlatformManifests.choose(manifest.getAsJsonArray("manifests"), imageReference.toString());
+        if (!platformManifest.isPresent()) {
+            throw new IntegrationException(String.format("Manifest list for %s has no linux image to inspect (platforms: %s)", imageReference, PlatformManifests.describePlatforms(manifest.getAsJsonArray("manifests"))));
+        }
+        final String platformManifestDigest = platformManifest.get().get("digest").getAsString();
+        logger.debug(String.format("Using manifest %s from the manifest list for %s", platformManifestDigest, imageReference));
+        final byte[] platformManifestBytes = registryClient.getManifest(imageReference, platformManifestDigest);
+        verifyDigest(platformManifestDigest, DigestUtils.sha256Hex(platformManifestBytes));
+        return checkImageManifest(parseJson(platformManifestBytes), imageReference);
+    }
+
+    private JsonObject checkImageManifest(final JsonObject manifest, final ImageReference imageReference) throws IntegrationException {
+        if (!manifest.has("config") || !manifest.has("layers")) {
+            throw new IntegrationException(String.format("Manifest for %s is not a v2 (schema 2) or OCI image manifest", imageReference));
+        }
+        return manifest;
+    }
+
+    private void verifyDigest(final String expectedDigest, final String actualSha256Hex) throws IntegrationException {
+        if (!expectedDigest.equals(SHA256_PREFIX + actualSha256Hex)) {
+            throw new IntegrationException(String.format("Digest mismatch: expected %s, but the content's digest is %s%s", expectedDigest, SHA256_PREFIX, actualSha256Hex));
+        }
+    }
+
+    private String toHex(final String digest) throws IntegrationException {
+        if (!digest.startsWith(SHA256_PREFIX)) {
+            throw new IntegrationException(String.format("Unsupported digest algorithm: %s", digest));
+        }
+        return StringUtils.removeStart(digest, SHA256_PREFIX);
+    }
+
+    private JsonObject parseJson(final byte[] jsonBytes) {
+        return new JsonParser().parse(new String(jsonBytes, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static class RegistryLayer {
+        private final String mediaType;
+        private final File layerTar;
+
+        public RegistryLayer(final String mediaType, final File layerTar) {
+            this.mediaType = mediaType;
+            this.layerTar = layerTar;
+        }
+    }
+}
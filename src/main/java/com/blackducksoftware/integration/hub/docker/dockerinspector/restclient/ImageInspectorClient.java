@@ -23,14 +23,18 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
 
+import java.io.File;
 import java.net.MalformedURLException;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 
 public interface ImageInspectorClient {
 
-    String getBdio(String hostPathToTarFile, String containerPathToInputDockerTarfile, String givenImageRepo, String givenImageTag, String containerPathToOutputFileSystemFile, boolean cleanup)
+    // The BDIO is streamed into the given file, which is returned
+    File getBdio(String hostPathToTarFile, String containerPathToInputDockerTarfile, String givenImageRepo, String givenImageTag, String containerPathToOutputFileSystemFile, boolean cleanup, File bdioFile)
             throws IntegrationException, MalformedURLException;
 
     boolean isApplicable();
+
+    void warmUpServices() throws IntegrationException;
 }
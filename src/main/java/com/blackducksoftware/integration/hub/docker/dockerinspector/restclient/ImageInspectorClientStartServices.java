@@ -23,11 +23,20 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.function.Predicate;
 
 import org.apache.commons.lang3.StringUtils;
@@ -38,10 +47,16 @@ import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.InspectorImages;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.JobScope;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.HubDockerClient;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.ServiceContainerWatch;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.TargetOsScanner;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.response.SimpleResponse;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
@@ -53,11 +68,21 @@ import com.github.dockerjava.api.model.Container;
 @Component
 public class ImageInspectorClientStartServices implements ImageInspectorClient {
     private static final String HUB_IMAGEINSPECTOR_WS_APPNAME = "hub-imageinspector-ws";
-    private static final long CONTAINER_START_WAIT_MILLISECONDS = 2000L;
+    // Spring Boot logs this once the service has started
+    private static final String SERVICE_STARTED_LOG_MARKER = "JVM running for";
+    private static final long INITIAL_HEALTH_CHECK_DELAY_MILLISECONDS = 25L;
+    private static final long MAX_HEALTH_CHECK_DELAY_MILLISECONDS = 2000L;
+    private static final long MAX_SERVICE_START_WAIT_MILLISECONDS = 60000L;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private final int MAX_CONTAINER_START_TRY_COUNT = 30;
     private final String II_SERVICE_URI_SCHEME = "http";
     private final String II_SERVICE_HOST = "localhost";
+    private final Map<ImageInspectorOsEnum, Future<String>> serviceStarts = new ConcurrentHashMap<>();
+    private final Set<String> serviceContainersToCleanUp = ConcurrentHashMap.newKeySet();
+    private final ExecutorService serviceStartExecutor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @Autowired
     private Config config;
@@ -86,6 +111,15 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
     @Autowired
     private HubDockerClient hubDockerClient;
 
+    @Autowired
+    private ServiceContainerPool serviceContainerPool;
+
+    @Autowired
+    private PhaseTimings phaseTimings;
+
+    @Autowired
+    private InspectorMetrics inspectorMetrics;
+
     @Override
     public boolean isApplicable() {
         final boolean answer = config.isImageInspectorServiceStart();
@@ -93,17 +127,51 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
         return answer;
     }
 
+    // In warm pool mode, start (or health check) all the services in the background while the docker tarfile is prepared
+    @Override
+    public void warmUpServices() throws IntegrationException {
+        if (!serviceContainerPool.isEnabled()) {
+            return;
+        }
+        for (final ImageInspectorOsEnum inspectorOs : ImageInspectorOsEnum.values()) {
+            final URI imageInspectorUri = deriveInspectorBaseUri(imageInspectorServices.getImageInspectorHostPort(inspectorOs));
+            logger.debug(String.format("Warming up %s service %s", inspectorOs.name(), imageInspectorUri.toString()));
+            getServiceStart(imageInspectorUri, inspectorOs);
+        }
+    }
+
     @Override
-    public String getBdio(final String hostPathToTarfile, final String containerPathToInputDockerTarfile, final String givenImageRepo, final String givenImageTag, final String containerPathToOutputFileSystemFile, final boolean cleanup)
+    public File getBdio(final String hostPathToTarfile, final String containerPathToInputDockerTarfile, final String givenImageRepo, final String givenImageTag, final String containerPathToOutputFileSystemFile, final boolean cleanup,
+            final File bdioFile)
+            throws IntegrationException {
+        try {
+            return getBdioFromServices(hostPathToTarfile, containerPathToInputDockerTarfile, givenImageRepo, givenImageTag, containerPathToOutputFileSystemFile, cleanup, bdioFile);
+        } finally {
+            if (serviceContainerPool.isEnabled()) {
+                serviceContainerPool.evictIdleContainers();
+            }
+        }
+    }
+
+    private File getBdioFromServices(final String hostPathToTarfile, final String containerPathToInputDockerTarfile, final String givenImageRepo, final String givenImageTag, final String containerPathToOutputFileSystemFile,
+            final boolean cleanup, final File bdioFile)
             throws IntegrationException {
-        // First, try the default inspector service (which will return either the BDIO, or a redirect)
-        final ImageInspectorOsEnum inspectorOs = ImageInspectorOsEnum.determineOperatingSystem(config.getImageInspectorDefaultDistro());
-        final URI imageInspectorBaseUri = deriveInspectorBaseUri(imageInspectorServices.getDefaultImageInspectorHostPortBasedOnDistro());
+        // First, try the service for the OS detected in the tarfile, or the default inspector service (either will return the BDIO, or a redirect)
+        final Optional<ImageInspectorOsEnum> detectedInspectorOs = detectInspectorOs(hostPathToTarfile, givenImageRepo, givenImageTag);
+        final ImageInspectorOsEnum inspectorOs;
+        final URI imageInspectorBaseUri;
+        if (detectedInspectorOs.isPresent()) {
+            inspectorOs = detectedInspectorOs.get();
+            imageInspectorBaseUri = deriveInspectorBaseUri(imageInspectorServices.getImageInspectorHostPort(inspectorOs));
+        } else {
+            inspectorOs = ImageInspectorOsEnum.determineOperatingSystem(config.getImageInspectorDefaultDistro());
+            imageInspectorBaseUri = deriveInspectorBaseUri(imageInspectorServices.getDefaultImageInspectorHostPortBasedOnDistro());
+        }
         final Predicate<Integer> initialRequestFailureCriteria = statusCode -> statusCode != RestConstants.OK_200 && statusCode != RestConstants.MOVED_TEMP_302 && statusCode != RestConstants.MOVED_PERM_301;
         final SimpleResponse response = getResponseFromService(imageInspectorBaseUri, inspectorOs, containerPathToInputDockerTarfile, givenImageRepo, givenImageTag, containerPathToOutputFileSystemFile, cleanup,
-                initialRequestFailureCriteria);
+                initialRequestFailureCriteria, bdioFile);
         if (response.getStatusCode() == RestConstants.OK_200) {
-            return response.getBody();
+            return bdioFile;
         }
         final String correctImageInspectorOsName = response.getBody().trim();
         logger.info(String.format("This image needs to be inspected on %s", correctImageInspectorOsName));
@@ -111,28 +179,41 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
 
         // Handle redirect
         final ImageInspectorOsEnum correctedInspectorOs = ImageInspectorOsEnum.determineOperatingSystem(correctImageInspectorOsName);
+        inspectorMetrics.recordServiceRedirect(inspectorOs.name(), correctedInspectorOs.name());
         final URI correctedImageInspectorBaseUri = deriveInspectorBaseUri(imageInspectorServices.getImageInspectorHostPort(correctedInspectorOs));
         final Predicate<Integer> correctedRequestFailureCriteria = statusCode -> statusCode != RestConstants.OK_200;
-        final SimpleResponse responseFromCorrectedContainer = getResponseFromService(correctedImageInspectorBaseUri, correctedInspectorOs, containerPathToInputDockerTarfile, givenImageRepo, givenImageTag,
+        getResponseFromService(correctedImageInspectorBaseUri, correctedInspectorOs, containerPathToInputDockerTarfile, givenImageRepo, givenImageTag,
                 containerPathToOutputFileSystemFile,
                 cleanup,
-                correctedRequestFailureCriteria);
-        return responseFromCorrectedContainer.getBody();
+                correctedRequestFailureCriteria, bdioFile);
+        return bdioFile;
+    }
+
+    private Optional<ImageInspectorOsEnum> detectInspectorOs(final String hostPathToTarfile, final String givenImageRepo, final String givenImageTag) {
+        if (!config.isImageInspectorDistroDetect() || StringUtils.isBlank(hostPathToTarfile)) {
+            return Optional.empty();
+        }
+        final long startTime = System.currentTimeMillis();
+        final Optional<ImageInspectorOsEnum> detectedInspectorOs = new TargetOsScanner().detectInspectorOs(new File(hostPathToTarfile), givenImageRepo, givenImageTag);
+        phaseTimings.record(Phase.OS_DETECTION, startTime);
+        if (detectedInspectorOs.isPresent()) {
+            logger.info(String.format("Detected that this image needs to be inspected on %s (in %d ms)", detectedInspectorOs.get().name(), System.currentTimeMillis() - startTime));
+        }
+        return detectedInspectorOs;
     }
 
     private SimpleResponse getResponseFromService(final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs, final String containerPathToInputDockerTarfile,
             final String givenImageRepo, final String givenImageTag,
-            final String containerPathToOutputFileSystemFile, final boolean cleanup, final Predicate<Integer> failureTest) throws IntegrationException, HubIntegrationException {
+            final String containerPathToOutputFileSystemFile, final boolean cleanup, final Predicate<Integer> failureTest, final File bdioFile) throws IntegrationException, HubIntegrationException {
         SimpleResponse response = null;
         String serviceContainerId = null;
-        RestConnection restConnection = null;
         try {
-            restConnection = createRestConnection(imageInspectorUri, deriveTimeoutSeconds());
-            serviceContainerId = ensureServiceReady(restConnection, imageInspectorUri, inspectorOs);
+            final RestConnection restConnection = getRestConnection(imageInspectorUri, deriveTimeoutSeconds());
+            serviceContainerId = ensureServiceReady(imageInspectorUri, inspectorOs);
             try {
                 logger.info(String.format("Sending getBdio request to: %s (%s)", imageInspectorUri.toString(), inspectorOs.name()));
                 response = restRequestor.executeGetBdioRequest(restConnection, imageInspectorUri, containerPathToInputDockerTarfile,
-                        givenImageRepo, givenImageTag, containerPathToOutputFileSystemFile, cleanup);
+                        givenImageRepo, givenImageTag, containerPathToOutputFileSystemFile, cleanup, bdioFile);
             } catch (final IntegrationException e) {
                 logServiceError(serviceContainerId);
                 throw e;
@@ -153,15 +234,13 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
                                 responseBody));
             }
         } finally {
-            if (restConnection != null) {
-                try {
-                    restConnection.close();
-                } catch (final Exception initialRestConnectionCloseException) {
-                    logger.warn(String.format("Error closing initial rest connection: %s", initialRestConnectionCloseException.getMessage()));
-                }
-            }
-            if (config.isCleanupInspectorContainer()) {
-                if (serviceContainerId != null) {
+            if (serviceContainerPool.isEnabled()) {
+                serviceContainerPool.recordUse(inspectorOs);
+            } else if (config.isCleanupInspectorContainer() && serviceContainerId != null) {
+                if (JobScope.isInJob()) {
+                    // Other jobs may be using this service container right now
+                    serviceContainersToCleanUp.add(serviceContainerId);
+                } else {
                     dockerClientManager.stopRemoveContainer(serviceContainerId);
                 }
             }
@@ -169,6 +248,18 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
         return response;
     }
 
+    // In batch and daemon modes, service containers are cleaned up (if cleanup.inspector.container) once all the jobs have finished
+    public void cleanUpServiceContainers() {
+        for (final String serviceContainerId : serviceContainersToCleanUp) {
+            serviceContainersToCleanUp.remove(serviceContainerId);
+            try {
+                dockerClientManager.stopRemoveContainer(serviceContainerId);
+            } catch (final HubIntegrationException e) {
+                logger.warn(String.format("Unable to remove image inspector service container %s: %s", serviceContainerId, e.getMessage()));
+            }
+        }
+    }
+
     private void logServiceError(final String correctedContainerId) {
         if (logger.isDebugEnabled()) {
             dockerClientManager.logServiceLogAsDebug(correctedContainerId);
@@ -201,64 +292,159 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
         return imageInspectorUri;
     }
 
-    private RestConnection createRestConnection(final URI imageInspectorUri, final int serviceRequestTimeoutSeconds) throws IntegrationException {
-        logger.debug(String.format("Creating a rest connection (%d second timeout) for URL: %s", serviceRequestTimeoutSeconds, imageInspectorUri.toString()));
+    private RestConnection getRestConnection(final URI imageInspectorUri, final int serviceRequestTimeoutSeconds) throws IntegrationException {
+        logger.debug(String.format("Getting a rest connection (%d second timeout) for URL: %s", serviceRequestTimeoutSeconds, imageInspectorUri.toString()));
         RestConnection restConnection;
         try {
-            restConnection = restConnectionCreator.createNonRedirectingConnection(imageInspectorUri, serviceRequestTimeoutSeconds);
+            restConnection = restConnectionCreator.getNonRedirectingConnection(imageInspectorUri, serviceRequestTimeoutSeconds);
         } catch (final MalformedURLException e) {
             throw new IntegrationException(String.format("Error creating connection for URL: %s, timeout: %d", imageInspectorUri.toString(), serviceRequestTimeoutSeconds), e);
         }
         return restConnection;
     }
 
-    private String ensureServiceReady(final RestConnection restConnection, final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
-        boolean serviceIsUp = checkServiceHealth(restConnection, imageInspectorUri);
-        if (serviceIsUp) {
-            final Container container = dockerClientManager.getRunningContainerByAppName(hubDockerClient.getDockerClient(), HUB_IMAGEINSPECTOR_WS_APPNAME, inspectorOs);
-            return container.getId();
-        }
-        logger.info(String.format("Service %s (%s) is not running; starting it...", imageInspectorUri.toString(), inspectorOs.name()));
-        if (config.isCleanupInspectorContainer()) {
-            logger.info("(Image inspection may complete faster if you set cleanup.inspector.container=false)");
+    private String ensureServiceReady(final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
+        final Future<String> serviceStart = getServiceStart(imageInspectorUri, inspectorOs);
+        final long startTime = System.currentTimeMillis();
+        try {
+            final String serviceContainerId = serviceStart.get();
+            phaseTimings.record(Phase.SERVICE_START, startTime);
+            return serviceContainerId;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IntegrationException(String.format("Interrupted while waiting for service %s (%s) to start", imageInspectorUri.toString(), inspectorOs.name()), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IntegrationException) {
+                throw (IntegrationException) e.getCause();
+            }
+            throw new IntegrationException(String.format("Error starting service %s (%s): %s", imageInspectorUri.toString(), inspectorOs.name(), e.getCause().getMessage()), e.getCause());
         }
+    }
+
+    /*
+     * Threads (warm-up, batch mode) that need the same service share a single start attempt, so they never race for its host port.
+     * A start attempt is forgotten as soon as it finishes (whether or not anything used it), so a later request re-checks the
+     * service's health instead of trusting a container that may since have been stopped or removed.
+     * The start runs on a service start thread, which doesn't see this job's Config/ProgramPaths, so it gets their values from here.
+     */
+    private Future<String> getServiceStart(final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
+        final ServiceStartSettings settings = deriveServiceStartSettings(inspectorOs);
+        return serviceStarts.computeIfAbsent(inspectorOs, os -> {
+            final FutureTask<String> serviceStart = new FutureTask<String>(() -> startServiceIfNeeded(settings, imageInspectorUri, os)) {
+                @Override
+                protected void done() {
+                    serviceStarts.remove(os, this);
+                }
+            };
+            serviceStartExecutor.execute(serviceStart);
+            return serviceStart;
+        });
+    }
+
+    private ServiceStartSettings deriveServiceStartSettings(final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
         final String imageInspectorRepo;
         final String imageInspectorTag;
         try {
             imageInspectorRepo = inspectorImages.getInspectorImageName(inspectorOs.getRawOs());
             imageInspectorTag = inspectorImages.getInspectorImageTag(inspectorOs.getRawOs());
         } catch (final IOException e) {
-            throw new IntegrationException(String.format("Error getting image inspector container repo/tag for %s inspector: %s", inspectorOs.name()), e);
+            throw new IntegrationException(String.format("Error getting image inspector container repo/tag for %s inspector: %s", inspectorOs.name(), e.getMessage()), e);
+        }
+        return new ServiceStartSettings(deriveTimeoutSeconds(), serviceContainerPool.isEnabled(), config.isCleanupInspectorContainer(), imageInspectorRepo, imageInspectorTag,
+                programPaths.deriveContainerName(imageInspectorRepo), containerPaths.getContainerPathToOutputDir(), deriveInspectorBaseUri(config.getImageInspectorHostPortAlpine()).toString(),
+                deriveInspectorBaseUri(config.getImageInspectorHostPortCentos()).toString(), deriveInspectorBaseUri(config.getImageInspectorHostPortUbuntu()).toString());
+    }
+
+    private String startServiceIfNeeded(final ServiceStartSettings settings, final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
+        final RestConnection restConnection = getRestConnection(imageInspectorUri, settings.timeoutSeconds);
+        return startServiceIfNeeded(settings, restConnection, imageInspectorUri, inspectorOs);
+    }
+
+    private String startServiceIfNeeded(final ServiceStartSettings settings, final RestConnection restConnection, final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
+        boolean serviceIsUp = checkServiceHealth(restConnection, imageInspectorUri);
+        if (serviceIsUp) {
+            final Container container = dockerClientManager.getRunningContainerByAppName(hubDockerClient.getDockerClient(), HUB_IMAGEINSPECTOR_WS_APPNAME, inspectorOs);
+            return container.getId();
+        }
+        if (settings.poolEnabled) {
+            final Optional<String> pooledContainerId = awaitOrRemovePooledContainer(restConnection, imageInspectorUri, inspectorOs);
+            if (pooledContainerId.isPresent()) {
+                return pooledContainerId.get();
+            }
+        }
+        logger.info(String.format("Service %s (%s) is not running; starting it...", imageInspectorUri.toString(), inspectorOs.name()));
+        if (settings.cleanupInspectorContainer && !settings.poolEnabled) {
+            logger.info("(Image inspection may complete faster if you set cleanup.inspector.container=false, or imageinspector.service.pool=true)");
         }
-        logger.debug(String.format("Need to pull/run image %s:%s to start the %s service", imageInspectorRepo, imageInspectorTag, imageInspectorUri.toString()));
-        final String imageId = dockerClientManager.pullImage(imageInspectorRepo, imageInspectorTag);
+        logger.debug(String.format("Need to pull/run image %s:%s to start the %s service", settings.imageInspectorRepo, settings.imageInspectorTag, imageInspectorUri.toString()));
+        final String imageId = dockerClientManager.pullInspectorImage(settings.imageInspectorRepo, settings.imageInspectorTag);
         final int containerPort = imageInspectorServices.getImageInspectorContainerPort(inspectorOs);
         final int hostPort = imageInspectorServices.getImageInspectorHostPort(inspectorOs);
-        final String containerName = programPaths.deriveContainerName(imageInspectorRepo);
-        final String containerId = dockerClientManager.startContainerAsService(imageId, containerName, inspectorOs, containerPort, hostPort,
-                containerPaths.getContainerPathToOutputDir(),
-                deriveInspectorBaseUri(config.getImageInspectorHostPortAlpine()).toString(), deriveInspectorBaseUri(config.getImageInspectorHostPortCentos()).toString(),
-                deriveInspectorBaseUri(config.getImageInspectorHostPortUbuntu()).toString());
-        serviceIsUp = startService(restConnection, imageInspectorUri, imageInspectorRepo, imageInspectorTag);
+        final String containerId = dockerClientManager.startContainerAsService(imageId, settings.containerName, inspectorOs, containerPort, hostPort, settings.containerOutputDirPath,
+                settings.alpineServiceUri, settings.centosServiceUri, settings.ubuntuServiceUri);
+        serviceIsUp = awaitService(restConnection, imageInspectorUri, containerId, String.format("%s:%s", settings.imageInspectorRepo, settings.imageInspectorTag));
         if (!serviceIsUp) {
-            throw new IntegrationException(String.format("Tried to start image imspector container %s:%s, but service %s never came online", imageInspectorRepo, imageInspectorTag, imageInspectorUri.toString()));
+            throw new IntegrationException(String.format("Tried to start image imspector container %s:%s, but service %s never came online", settings.imageInspectorRepo, settings.imageInspectorTag,
+                    imageInspectorUri.toString()));
         }
         return containerId;
     }
 
-    private boolean startService(final RestConnection restConnection, final URI imageInspectorUri, final String imageInspectorRepo, final String imageInspectorTag) throws IntegrationException {
+    /*
+     * A pooled container that is running but not (yet) healthy may have just been started by another run, so give it
+     * the usual start up time. One that is stopped, or never becomes healthy, is removed so it can be replaced.
+     */
+    private Optional<String> awaitOrRemovePooledContainer(final RestConnection restConnection, final URI imageInspectorUri, final ImageInspectorOsEnum inspectorOs) throws IntegrationException {
+        final Container pooledContainer = dockerClientManager.getPooledServiceContainers().get(inspectorOs);
+        if (pooledContainer == null) {
+            return Optional.empty();
+        }
+        final boolean running = pooledContainer.getStatus() != null && pooledContainer.getStatus().startsWith("Up");
+        if (running && awaitService(restConnection, imageInspectorUri, pooledContainer.getId(), pooledContainer.getImage())) {
+            logger.info(String.format("Reusing pooled %s service container %s", inspectorOs.name(), pooledContainer.getId()));
+            return Optional.of(pooledContainer.getId());
+        }
+        logger.info(String.format("Pooled %s service container %s is not healthy (status: %s); replacing it", inspectorOs.name(), pooledContainer.getId(), pooledContainer.getStatus()));
+        dockerClientManager.stopRemoveContainer(pooledContainer.getId());
+        return Optional.empty();
+    }
+
+    /*
+     * Health checks back off exponentially from a few tens of milliseconds, but the service container's log and Docker events
+     * are followed too: a health check is made as soon as the service logs that it has started, and the wait is abandoned
+     * as soon as the container dies.
+     */
+    private boolean awaitService(final RestConnection restConnection, final URI imageInspectorUri, final String containerId, final String imageInspectorImage) throws IntegrationException {
+        final long startTime = System.currentTimeMillis();
+        final long deadline = startTime + MAX_SERVICE_START_WAIT_MILLISECONDS;
         boolean serviceIsUp = false;
-        for (int tryIndex = 0; tryIndex < MAX_CONTAINER_START_TRY_COUNT && !serviceIsUp; tryIndex++) {
-            try {
-                final long timeoutMilliseconds = CONTAINER_START_WAIT_MILLISECONDS;
-                logger.debug(String.format("Pausing %d seconds to give service time to start up", (int) (timeoutMilliseconds / 1000L)));
-                Thread.sleep(timeoutMilliseconds);
-            } catch (final InterruptedException e) {
-                logger.error(String.format("Interrupted exception thrown while pausing so image imspector container based on image %s:%s could start", imageInspectorRepo, imageInspectorTag), e);
+        int healthCheckCount = 0;
+        try (final ServiceContainerWatch watch = dockerClientManager.watchServiceContainer(containerId, SERVICE_STARTED_LOG_MARKER)) {
+            long delayMilliseconds = INITIAL_HEALTH_CHECK_DELAY_MILLISECONDS;
+            while (true) {
+                healthCheckCount++;
+                logger.debug(String.format("Checking service %s to see if it is up; attempt %d", imageInspectorUri.toString(), healthCheckCount));
+                serviceIsUp = checkServiceHealth(restConnection, imageInspectorUri);
+                final long now = System.currentTimeMillis();
+                if (serviceIsUp || now >= deadline) {
+                    break;
+                }
+                if (watch.isDied()) {
+                    logger.error(String.format("Image inspector container %s (based on image %s) stopped before service %s came online", containerId, imageInspectorImage, imageInspectorUri.toString()));
+                    break;
+                }
+                watch.awaitEvent(Math.min(delayMilliseconds, deadline - now));
+                delayMilliseconds = Math.min(delayMilliseconds * 2L, MAX_HEALTH_CHECK_DELAY_MILLISECONDS);
             }
-            logger.debug(String.format("Checking service %s to see if it is up; attempt %d of %d", imageInspectorUri.toString(), tryIndex + 1, MAX_CONTAINER_START_TRY_COUNT));
-            serviceIsUp = checkServiceHealth(restConnection, imageInspectorUri);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(String.format("Interrupted while waiting for image inspector container based on image %s to start", imageInspectorImage), e);
+        } catch (final IOException e) {
+            logger.debug(String.format("Error closing log/events streams of container %s: %s", containerId, e.getMessage()));
         }
+        final long readinessMilliseconds = System.currentTimeMillis() - startTime;
+        inspectorMetrics.recordServiceStart(serviceIsUp, readinessMilliseconds, healthCheckCount);
+        logger.info(String.format("Service %s %s after %d ms (%d health checks)", imageInspectorUri.toString(), serviceIsUp ? "came online" : "did not come online", readinessMilliseconds, healthCheckCount));
         return serviceIsUp;
     }
 
@@ -275,4 +461,32 @@ public class ImageInspectorClientStartServices implements ImageInspectorClient {
         final boolean serviceIsUp = healthCheckResponse.contains("\"status\":\"UP\"");
         return serviceIsUp;
     }
+
+    // What a service start needs from the Config/ProgramPaths of the job that asked for it
+    private static class ServiceStartSettings {
+        private final int timeoutSeconds;
+        private final boolean poolEnabled;
+        private final boolean cleanupInspectorContainer;
+        private final String imageInspectorRepo;
+        private final String imageInspectorTag;
+        private final String containerName;
+        private final String containerOutputDirPath;
+        private final String alpineServiceUri;
+        private final String centosServiceUri;
+        private final String ubuntuServiceUri;
+
+        private ServiceStartSettings(final int timeoutSeconds, final boolean poolEnabled, final boolean cleanupInspectorContainer, final String imageInspectorRepo, final String imageInspectorTag,
+                final String containerName, final String containerOutputDirPath, final String alpineServiceUri, final String centosServiceUri, final String ubuntuServiceUri) {
+            this.timeoutSeconds = timeoutSeconds;
+            this.poolEnabled = poolEnabled;
+            this.cleanupInspectorContainer = cleanupInspectorContainer;
+            this.imageInspectorRepo = imageInspectorRepo;
+            this.imageInspectorTag = imageInspectorTag;
+            this.containerName = containerName;
+            this.containerOutputDirPath = containerOutputDirPath;
+            this.alpineServiceUri = alpineServiceUri;
+            this.centosServiceUri = centosServiceUri;
+            this.ubuntuServiceUri = ubuntuServiceUri;
+        }
+    }
 }
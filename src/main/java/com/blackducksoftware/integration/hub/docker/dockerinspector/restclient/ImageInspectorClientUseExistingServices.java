@@ -23,6 +23,7 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -35,7 +36,6 @@ import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
-import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.response.SimpleResponse;
 import com.blackducksoftware.integration.rest.connection.RestConnection;
 
 @Component
@@ -60,7 +60,13 @@ public class ImageInspectorClientUseExistingServices implements ImageInspectorCl
     }
 
     @Override
-    public String getBdio(final String hostPathToTarfile, final String containerPathToInputDockerTarfile, final String givenImageRepo, final String givenImageTag, final String containerPathToOutputFileSystemFile, final boolean cleanup)
+    public void warmUpServices() {
+        // The services are managed by the user
+    }
+
+    @Override
+    public File getBdio(final String hostPathToTarfile, final String containerPathToInputDockerTarfile, final String givenImageRepo, final String givenImageTag, final String containerPathToOutputFileSystemFile, final boolean cleanup,
+            final File bdioFile)
             throws IntegrationException, MalformedURLException {
         URI imageInspectorUri;
         try {
@@ -69,9 +75,9 @@ public class ImageInspectorClientUseExistingServices implements ImageInspectorCl
             throw new IntegrationException(String.format("Error constructing URI from %s: %s", config.getImageInspectorUrl(), e.getMessage()), e);
         }
         final int serviceRequestTimeoutSeconds = (int) (config.getCommandTimeout() / 1000L);
-        final RestConnection restConnection = restConnectionCreator.createRedirectingConnection(imageInspectorUri, serviceRequestTimeoutSeconds);
-        final SimpleResponse response = restRequester.executeGetBdioRequest(restConnection, imageInspectorUri, containerPathToInputDockerTarfile,
-                givenImageRepo, givenImageTag, containerPathToOutputFileSystemFile, cleanup);
-        return response.getBody();
+        final RestConnection restConnection = restConnectionCreator.getRedirectingConnection(imageInspectorUri, serviceRequestTimeoutSeconds);
+        restRequester.executeGetBdioRequest(restConnection, imageInspectorUri, containerPathToInputDockerTarfile,
+                givenImageRepo, givenImageTag, containerPathToOutputFileSystemFile, cleanup, bdioFile);
+        return bdioFile;
     }
 }
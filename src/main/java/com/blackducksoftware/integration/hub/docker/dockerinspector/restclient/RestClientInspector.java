@@ -23,11 +23,14 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -38,13 +41,21 @@ import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.bdio.BdioReader;
-import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
+import com.blackducksoftware.integration.hub.bdio.model.BdioBillOfMaterials;
+import com.blackducksoftware.integration.hub.bdio.model.BdioProject;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.BdioCache;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.BdioCacheKey;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.cache.CachedBdio;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.DockerTarfile;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.Inspector;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.common.Output;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerexec.DissectedImage;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarfilePlacer;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarfilePlacer.PlacementStrategy;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.imageinspector.linux.FileOperations;
 import com.blackducksoftware.integration.hub.imageinspector.name.Names;
@@ -52,6 +63,7 @@ import com.google.gson.Gson;
 
 @Component
 public class RestClientInspector implements Inspector {
+    private static final String TEMP_BDIO_FILENAME_FORMAT = ".getbdio_%s.tmp";
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Autowired
@@ -72,6 +84,12 @@ public class RestClientInspector implements Inspector {
     @Autowired
     private Output output;
 
+    @Autowired
+    private BdioCache bdioCache;
+
+    @Autowired
+    private PhaseTimings phaseTimings;
+
     @Override
     public boolean isApplicable() {
         if (config.isImageInspectorServiceStart() || StringUtils.isNotBlank(config.getImageInspectorUrl())) {
@@ -87,13 +105,32 @@ public class RestClientInspector implements Inspector {
         final ImageInspectorClient imageInspectorClient = chooseImageInspectorClient();
         try {
             output.ensureWriteability();
+            final Optional<BdioCacheKey> bdioCacheKey = bdioCache.deriveKey();
+            if (bdioCacheKey.isPresent()) {
+                final Optional<CachedBdio> cachedBdio = bdioCache.get(bdioCacheKey.get().getKey());
+                if (cachedBdio.isPresent()) {
+                    output.provideBdioFileOutput(cachedBdio.get().getBdioString(), cachedBdio.get().getBdioFilename());
+                    cleanup();
+                    return 0;
+                }
+            }
+            imageInspectorClient.warmUpServices();
             final File finalDockerTarfile = prepareDockerTarfile();
             final String containerFileSystemFilename = Names.getContainerFileSystemTarFilename(config.getDockerImage(), config.getDockerTar());
             final String dockerTarFilePathInContainer = containerPaths.getContainerPathToTargetFile(finalDockerTarfile.getCanonicalPath());
             final String containerFileSystemPathInContainer = containerPaths.getContainerPathToOutputFile(containerFileSystemFilename);
-            final String bdioString = imageInspectorClient.getBdio(finalDockerTarfile.getCanonicalPath(), dockerTarFilePathInContainer, config.getDockerImageRepo(), config.getDockerImageTag(), containerFileSystemPathInContainer,
-                    config.isCleanupWorkingDir());
-            output.provideBdioFileOutput(bdioString, deriveOutputBdioFilename(bdioString));
+            final File tempBdioFile = createTempBdioFile();
+            try {
+                imageInspectorClient.getBdio(finalDockerTarfile.getCanonicalPath(), dockerTarFilePathInContainer, config.getDockerImageRepo(), config.getDockerImageTag(), containerFileSystemPathInContainer,
+                        config.isCleanupWorkingDir(), tempBdioFile);
+                final String outputBdioFilename = deriveOutputBdioFilename(tempBdioFile);
+                if (bdioCacheKey.isPresent()) {
+                    bdioCache.put(bdioCacheKey.get(), outputBdioFilename, tempBdioFile, finalDockerTarfile);
+                }
+                output.provideBdioFileOutput(tempBdioFile, outputBdioFilename);
+            } finally {
+                FileUtils.deleteQuietly(tempBdioFile);
+            }
             cleanup();
             return 0;
         } catch (final IOException e) {
@@ -101,6 +138,13 @@ public class RestClientInspector implements Inspector {
         }
     }
 
+    // In the user output dir when there is one, so that providing the BDIO file there is just a rename
+    private File createTempBdioFile() {
+        final File tempBdioDir = StringUtils.isNotBlank(config.getOutputPath()) ? new File(config.getOutputPath()) : new File(programPaths.getHubDockerWorkingDirPath());
+        tempBdioDir.mkdirs();
+        return new File(tempBdioDir, String.format(TEMP_BDIO_FILENAME_FORMAT, UUID.randomUUID().toString()));
+    }
+
     private File prepareDockerTarfile() throws IOException, HubIntegrationException {
         final File givenDockerTarfile = dockerTarfile.deriveDockerTarFile();
         if (!config.isOnHost()) {
@@ -109,12 +153,14 @@ public class RestClientInspector implements Inspector {
         if (!config.isImageInspectorServiceStart()) {
             return givenDockerTarfile;
         }
-        // Copy the tarfile to the shared/target dir
+        // Link or copy the tarfile to the shared/target dir
         final File finalDockerTarfile = new File(programPaths.getHubDockerTargetDirPath(), givenDockerTarfile.getName());
         logger.debug(String.format("Required docker tarfile location: %s", finalDockerTarfile.getCanonicalPath()));
-        if (!finalDockerTarfile.getCanonicalPath().equals(givenDockerTarfile.getCanonicalPath())) {
-            logger.debug(String.format("Copying %s to %s", givenDockerTarfile.getCanonicalPath(), finalDockerTarfile.getCanonicalPath()));
-            FileUtils.copyFile(givenDockerTarfile, finalDockerTarfile);
+        final long startTime = System.currentTimeMillis();
+        final PlacementStrategy placementStrategy = new DockerTarfilePlacer().place(givenDockerTarfile, finalDockerTarfile);
+        if (placementStrategy != PlacementStrategy.NONE) {
+            phaseTimings.record(Phase.TARFILE_COPY, startTime, placementStrategy == PlacementStrategy.HARD_LINK ? 0L : finalDockerTarfile.length());
+            logger.info(String.format("Placed %s at %s using strategy %s (%d ms)", givenDockerTarfile.getCanonicalPath(), finalDockerTarfile.getCanonicalPath(), placementStrategy.name(), System.currentTimeMillis() - startTime));
         }
         logger.debug(String.format("Final docker tar file path: %s", finalDockerTarfile.getCanonicalPath()));
         return finalDockerTarfile;
@@ -122,11 +168,13 @@ public class RestClientInspector implements Inspector {
 
     private void cleanup() {
         logger.debug(String.format("Removing %s", programPaths.getHubDockerRunDirPathHost()));
+        final long startTime = System.currentTimeMillis();
         try {
             FileOperations.removeFileOrDir(programPaths.getHubDockerRunDirPathHost());
         } catch (final IOException e) {
             logger.error(String.format("Error cleaning up working directories: %s", e.getMessage()));
         }
+        phaseTimings.record(Phase.CLEANUP, startTime);
     }
 
     private ImageInspectorClient chooseImageInspectorClient() throws IntegrationException {
@@ -138,19 +186,19 @@ public class RestClientInspector implements Inspector {
         throw new IntegrationException("Invalid configuration: Need to provide URL to existing ImageInspector services, or request that containers be started as-needed");
     }
 
-    private String deriveOutputBdioFilename(final String bdioString) throws IOException, IntegrationException {
-        final SimpleBdioDocument bdioDocument = getSimpleBdioDocument(bdioString);
-        final BdioFilename outputFilename = new BdioFilename(bdioDocument.billOfMaterials.spdxName, bdioDocument.project.name, bdioDocument.project.version, bdioDocument.project.bdioExternalIdentifier.externalIdMetaData.forge.getName());
-        return outputFilename.getBdioFilename();
-    }
-
-    private SimpleBdioDocument getSimpleBdioDocument(final String bdioString) throws IOException {
-        final InputStream bdioInputStream = new ByteArrayInputStream(bdioString.getBytes());
-        SimpleBdioDocument simpleBdioDocument = null;
-        try (BdioReader bdioReader = new BdioReader(new Gson(), bdioInputStream)) {
-            simpleBdioDocument = bdioReader.readSimpleBdioDocument();
+    // Only the leading bill of materials and project nodes are read; the components (the bulk of the document) are not parsed
+    String deriveOutputBdioFilename(final File bdioFile) throws IOException, IntegrationException {
+        // Closing the BdioReader would check for the end of the document, so only the underlying stream is closed
+        try (InputStream bdioInputStream = new BufferedInputStream(new FileInputStream(bdioFile))) {
+            final BdioReader bdioReader = new BdioReader(new Gson(), bdioInputStream);
+            final BdioBillOfMaterials billOfMaterials = bdioReader.readBillOfMaterials();
+            final BdioProject project = bdioReader.readProject();
+            if (billOfMaterials == null || project == null) {
+                throw new IntegrationException(String.format("BDIO file %s does not start with a bill of materials and a project", bdioFile.getAbsolutePath()));
+            }
+            final BdioFilename outputFilename = new BdioFilename(billOfMaterials.spdxName, project.name, project.version, project.bdioExternalIdentifier.externalIdMetaData.forge.getName());
+            return outputFilename.getBdioFilename();
         }
-        return simpleBdioDocument;
     }
 
 }
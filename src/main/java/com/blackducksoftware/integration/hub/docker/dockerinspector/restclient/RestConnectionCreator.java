@@ -23,25 +23,106 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PreDestroy;
+
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.connection.NonRedirectingUnauthenticatedRestConnectionBuilder;
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
 import com.blackducksoftware.integration.log.IntLogger;
 import com.blackducksoftware.integration.log.Slf4jIntLogger;
 import com.blackducksoftware.integration.rest.connection.RestConnection;
 import com.blackducksoftware.integration.rest.connection.UnauthenticatedRestConnectionBuilder;
 
+/*
+ * Rest connections to the image inspector services are shared (one per base URI, redirect handling, and timeout), and all of
+ * them draw on one pool of kept-alive HTTP connections, so health checks and getBdio requests don't reconnect every time.
+ */
 @Component
 public class RestConnectionCreator {
+    private static final long IDLE_CONNECTION_EVICTION_SECONDS = 30L;
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Map<String, RestConnection> restConnections = new HashMap<>();
+    private PoolingHttpClientConnectionManager connectionManager;
+    private IdleConnectionEvictor idleConnectionEvictor;
+
+    @Autowired
+    private Config config;
+
+    // Shared: do not close the rest connection
+    public synchronized RestConnection getNonRedirectingConnection(final URI baseUri, final int timeoutSeconds) throws MalformedURLException, IntegrationException {
+        final String key = String.format("nonRedirecting|%d|%s", timeoutSeconds, baseUri.toString());
+        RestConnection connection = restConnections.get(key);
+        if (connection == null) {
+            connection = pool(createNonRedirectingConnection(baseUri, timeoutSeconds));
+            restConnections.put(key, connection);
+        }
+        return connection;
+    }
+
+    // Shared: do not close the rest connection
+    public synchronized RestConnection getRedirectingConnection(final URI baseUri, final int timeoutSeconds) throws MalformedURLException, IntegrationException {
+        final String key = String.format("redirecting|%d|%s", timeoutSeconds, baseUri.toString());
+        RestConnection connection = restConnections.get(key);
+        if (connection == null) {
+            connection = pool(createRedirectingConnection(baseUri, timeoutSeconds));
+            restConnections.put(key, connection);
+        }
+        return connection;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (final RestConnection connection : restConnections.values()) {
+            try {
+                connection.close();
+            } catch (final IOException e) {
+                logger.debug(String.format("Error closing rest connection: %s", e.getMessage()));
+            }
+        }
+        restConnections.clear();
+        if (connectionManager != null) {
+            idleConnectionEvictor.shutdown();
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+    }
+
+    // The client is built now (rather than on first use) so that threads sharing the connection never race to build it
+    private RestConnection pool(final RestConnection connection) throws IntegrationException {
+        connection.getClientBuilder().setConnectionManager(getConnectionManager()).setConnectionManagerShared(true);
+        connection.connect();
+        return connection;
+    }
+
+    private PoolingHttpClientConnectionManager getConnectionManager() {
+        if (connectionManager == null) {
+            final int maxConnectionsPerRoute = Math.max(1, config.getImageInspectorServiceConnectionsPerRoute());
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+            connectionManager.setMaxTotal(maxConnectionsPerRoute * ImageInspectorOsEnum.values().length);
+            idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, IDLE_CONNECTION_EVICTION_SECONDS, TimeUnit.SECONDS);
+            idleConnectionEvictor.start();
+            logger.debug(String.format("Pooling image inspector service connections: at most %d per service", maxConnectionsPerRoute));
+        }
+        return connectionManager;
+    }
 
-    // Be sure to close the rest connection
-    public RestConnection createNonRedirectingConnection(final URI baseUri, final int timeoutSeconds) throws MalformedURLException {
+    private RestConnection createNonRedirectingConnection(final URI baseUri, final int timeoutSeconds) throws MalformedURLException {
         final NonRedirectingUnauthenticatedRestConnectionBuilder connectionBuilder = new NonRedirectingUnauthenticatedRestConnectionBuilder();
         connectionBuilder.setBaseUrl(baseUri.toString());
         connectionBuilder.setTimeout(timeoutSeconds);
@@ -53,8 +134,7 @@ public class RestConnectionCreator {
 
     }
 
-    // Be sure to close the rest connection
-    public RestConnection createRedirectingConnection(final URI baseUri, final int timeoutSeconds) throws MalformedURLException {
+    private RestConnection createRedirectingConnection(final URI baseUri, final int timeoutSeconds) throws MalformedURLException {
         logger.debug(String.format("Creating a rest connection (%d second timeout) for URL: %s", timeoutSeconds, baseUri.toString()));
         final UnauthenticatedRestConnectionBuilder connectionBuilder = new UnauthenticatedRestConnectionBuilder();
         connectionBuilder.setBaseUrl(baseUri.toString());
@@ -23,16 +23,24 @@
  */
 package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
 
+import java.io.File;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.response.SimpleResponse;
 import com.blackducksoftware.integration.rest.HttpMethod;
+import com.blackducksoftware.integration.rest.RestConstants;
 import com.blackducksoftware.integration.rest.connection.RestConnection;
 import com.blackducksoftware.integration.rest.request.Request;
 import com.blackducksoftware.integration.rest.request.Response;
@@ -50,8 +58,11 @@ public class RestRequestor {
 
     private static final String BASE_LOGGER_NAME = "com.blackducksoftware";
 
+    @Autowired
+    private PhaseTimings phaseTimings;
+
     public SimpleResponse executeGetBdioRequest(final RestConnection restConnection, final URI imageInspectorUri, final String containerPathToTarfile,
-            final String givenImageRepo, final String givenImageTag, final String containerPathToContainerFileSystemFile, final boolean cleanup)
+            final String givenImageRepo, final String givenImageTag, final String containerPathToContainerFileSystemFile, final boolean cleanup, final File bdioFile)
             throws IntegrationException {
         String containerFileSystemQueryString = "";
         if (StringUtils.isNotBlank(containerPathToContainerFileSystemFile)) {
@@ -70,9 +81,20 @@ public class RestRequestor {
                 imageRepoQueryString, imageTagQueryString);
         logger.debug(String.format("Doing a getBdio request on %s", url));
         final Request request = new Request.Builder(url).method(HttpMethod.GET).build();
+        final long startTime = System.currentTimeMillis();
         try (Response response = restConnection.executeRequest(request)) {
             logger.debug(String.format("Response: HTTP status: %d", response.getStatusCode()));
-            return new SimpleResponse(response.getStatusCode(), response.getHeaders(), getResponseBody(response));
+            if (response.getStatusCode() == RestConstants.OK_200) {
+                // The BDIO (which can be large) goes straight to disk; any other response (a redirect, or an error) is small
+                try (InputStream bdioInputStream = response.getContent()) {
+                    Files.copy(bdioInputStream, bdioFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                phaseTimings.record(Phase.GET_BDIO, startTime, bdioFile.length());
+                return new SimpleResponse(response.getStatusCode(), response.getHeaders(), null);
+            }
+            final String responseBody = getResponseBody(response);
+            phaseTimings.record(Phase.GET_BDIO, startTime, responseBody == null ? 0L : responseBody.length());
+            return new SimpleResponse(response.getStatusCode(), response.getHeaders(), responseBody);
         } catch (final Exception e) {
             logger.info(String.format("getBdio request on %s failed: %s", url, e.getMessage()));
             throw new IntegrationException(e);
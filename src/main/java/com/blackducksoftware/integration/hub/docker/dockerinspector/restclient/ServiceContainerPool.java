@@ -0,0 +1,109 @@
+/**
+ * hub-docker-inspector
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
+import com.github.dockerjava.api.model.Container;
+
+/*
+ * Warm pool mode: image inspector service containers are left running after use, and found (by label) and reused by later runs.
+ * Each run records when it last used a service in the working dir; services that no run has used within the idle timeout are
+ * stopped and removed.
+ */
+@Component
+public class ServiceContainerPool {
+    private static final String POOL_DIR = "servicePool";
+    private static final String LAST_USED_FILE_SUFFIX = ".lastUsed";
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Autowired
+    private Config config;
+
+    @Autowired
+    private ProgramPaths programPaths;
+
+    @Autowired
+    private DockerClientManager dockerClientManager;
+
+    public boolean isEnabled() {
+        return config.isImageInspectorServiceStart() && config.isImageInspectorServicePool();
+    }
+
+    public void recordUse(final ImageInspectorOsEnum inspectorOs) {
+        final File lastUsedFile = getLastUsedFile(inspectorOs);
+        try {
+            FileUtils.touch(lastUsedFile);
+        } catch (final IOException e) {
+            logger.warn(String.format("Unable to record use of %s service in %s: %s", inspectorOs.name(), lastUsedFile.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
+    public void evictIdleContainers() {
+        final long idleMilliseconds = config.getImageInspectorServicePoolIdleMinutes() * 60L * 1000L;
+        final long now = System.currentTimeMillis();
+        Map<ImageInspectorOsEnum, Container> pooledContainers;
+        try {
+            pooledContainers = dockerClientManager.getPooledServiceContainers();
+        } catch (final HubIntegrationException e) {
+            logger.warn(String.format("Unable to list pooled service containers: %s", e.getMessage()));
+            return;
+        }
+        for (final Map.Entry<ImageInspectorOsEnum, Container> pooledContainer : pooledContainers.entrySet()) {
+            final long lastUsedMilliseconds = getLastUsedMilliseconds(pooledContainer.getKey(), pooledContainer.getValue());
+            if (now - lastUsedMilliseconds > idleMilliseconds) {
+                logger.info(String.format("Removing %s service container %s: unused for %d minutes", pooledContainer.getKey().name(), pooledContainer.getValue().getId(), (now - lastUsedMilliseconds) / (60L * 1000L)));
+                try {
+                    dockerClientManager.stopRemoveContainer(pooledContainer.getValue().getId());
+                } catch (final HubIntegrationException e) {
+                    logger.warn(String.format("Unable to remove idle service container %s: %s", pooledContainer.getValue().getId(), e.getMessage()));
+                }
+            }
+        }
+    }
+
+    private long getLastUsedMilliseconds(final ImageInspectorOsEnum inspectorOs, final Container container) {
+        final File lastUsedFile = getLastUsedFile(inspectorOs);
+        final long createdMilliseconds = container.getCreated() == null ? 0L : container.getCreated() * 1000L;
+        // A service started, but never used, since the last recorded use is idle from the time it was created
+        return Math.max(lastUsedFile.lastModified(), createdMilliseconds);
+    }
+
+    private File getLastUsedFile(final ImageInspectorOsEnum inspectorOs) {
+        return new File(new File(programPaths.getHubDockerPgmDirPathHost(), POOL_DIR), inspectorOs.name() + LAST_USED_FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,49 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+
+public class BatchTargetListTest {
+
+    @Test
+    public void testCommaSeparatedAndFile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File targetListFile = new File(workingDir, "images.txt");
+            FileUtils.writeStringToFile(targetListFile, "# images to inspect\nubuntu:17.04\n\n/tmp/alpine.tar\n", StandardCharsets.UTF_8);
+            final List<BatchTarget> targets = new BatchTargetList("alpine:latest, centos:7", targetListFile.getAbsolutePath()).getTargets();
+
+            assertEquals(4, targets.size());
+            assertEquals("alpine:latest", targets.get(0).getTarget());
+            assertFalse(targets.get(0).isTarfile());
+            assertEquals("001_alpine_latest", targets.get(0).getJobName());
+            assertEquals("centos:7", targets.get(1).getTarget());
+            assertEquals("ubuntu:17.04", targets.get(2).getTarget());
+            assertTrue(targets.get(3).isTarfile());
+            assertEquals("004_alpine.tar", targets.get(3).getJobName());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testImageInTarfile() {
+        final BatchTarget target = new BatchTarget(2, "/tmp/aggregated.tar", "registry.example.com:5000/blackducksoftware/alpine:1.0");
+
+        assertTrue(target.isTarfile());
+        assertEquals("registry.example.com:5000/blackducksoftware/alpine", target.getTarfileImageRepo());
+        assertEquals("1.0", target.getTarfileImageTag());
+        assertEquals("002_registry.example.com_5000_blackducksoftware_alpine_1.0", target.getJobName());
+    }
+}
@@ -0,0 +1,187 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.ProgramVersion;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.HubProjectName;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+
+@RunWith(SpringRunner.class)
+public class BdioCacheTest {
+
+    @InjectMocks
+    private BdioCache bdioCache;
+
+    @Mock
+    private Config config;
+
+    @Mock
+    private ProgramPaths programPaths;
+
+    @Mock
+    private ProgramVersion programVersion;
+
+    @Mock
+    private HubProjectName hubProjectName;
+
+    @Mock
+    private DockerClientManager dockerClientManager;
+
+    @Mock
+    private InspectorMetrics inspectorMetrics;
+
+    @Test
+    public void testKeyFromTarfile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 1L);
+            Mockito.when(config.getDockerTar()).thenReturn(createImageTar(workingDir, "image1.tar", "aaaa.json").getAbsolutePath());
+            final Optional<BdioCacheKey> key1 = bdioCache.deriveKey();
+
+            Mockito.when(config.getDockerTar()).thenReturn(createImageTar(workingDir, "image2.tar", "aaaa.json").getAbsolutePath());
+            final Optional<BdioCacheKey> key2 = bdioCache.deriveKey();
+
+            Mockito.when(config.getDockerTar()).thenReturn(createImageTar(workingDir, "image3.tar", "bbbb.json").getAbsolutePath());
+            final Optional<BdioCacheKey> key3 = bdioCache.deriveKey();
+
+            assertTrue(key1.isPresent());
+            assertEquals(key1.get().getKey(), key2.get().getKey());
+            assertNotEquals(key1.get().getKey(), key3.get().getKey());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testKeyDependsOnLinuxDistro() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 1L);
+            Mockito.when(config.getDockerTar()).thenReturn(createImageTar(workingDir, "image1.tar", "aaaa.json").getAbsolutePath());
+            final Optional<BdioCacheKey> key1 = bdioCache.deriveKey();
+
+            Mockito.when(config.getLinuxDistro()).thenReturn("ubuntu");
+            final Optional<BdioCacheKey> key2 = bdioCache.deriveKey();
+
+            assertNotEquals(key1.get().getKey(), key2.get().getKey());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testNotUsedWhenContainerFileSystemOrDockerTarfileRequested() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 1L);
+            Mockito.when(config.getDockerTar()).thenReturn(createImageTar(workingDir, "image1.tar", "aaaa.json").getAbsolutePath());
+            assertTrue(bdioCache.deriveKey().isPresent());
+
+            Mockito.when(config.isOutputIncludeContainerfilesystem()).thenReturn(true);
+            assertFalse(bdioCache.deriveKey().isPresent());
+
+            Mockito.when(config.isOutputIncludeContainerfilesystem()).thenReturn(false);
+            Mockito.when(config.isOutputIncludeDockerTarfile()).thenReturn(true);
+            assertFalse(bdioCache.deriveKey().isPresent());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testPutGetEvict() throws IOException, InterruptedException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 1L);
+            assertFalse(bdioCache.get("key1").isPresent());
+
+            bdioCache.put("key1", "image1_bdio.jsonld", "bdio1");
+            final Optional<CachedBdio> cachedBdio = bdioCache.get("key1");
+            assertTrue(cachedBdio.isPresent());
+            assertEquals("image1_bdio.jsonld", cachedBdio.get().getBdioFilename());
+            assertEquals("bdio1", cachedBdio.get().getBdioString());
+
+            // Together, these two entries exceed the max cache size, so the least recently used one (key1) is evicted
+            new File(workingDir, "bdioCache/key1").setLastModified(System.currentTimeMillis() - 60000L);
+            bdioCache.put("key2", "image2_bdio.jsonld", StringUtils.repeat('x', 1024 * 1024));
+            assertFalse(bdioCache.get("key1").isPresent());
+            assertTrue(bdioCache.get("key2").isPresent());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testNotAddedUnlessInspectedImageMatchesKey() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 1L);
+            final String imageConfigHex = StringUtils.repeat('a', 64);
+            final File bdioFile = new File(workingDir, "image1_bdio.jsonld");
+            FileUtils.write(bdioFile, "bdio1", StandardCharsets.UTF_8);
+
+            // The pull failed, so an older local image was inspected
+            final File staleImageTar = createImageTar(workingDir, "stale.tar", StringUtils.repeat('b', 64) + ".json");
+            bdioCache.put(new BdioCacheKey("key1", "sha256:" + imageConfigHex), bdioFile.getName(), bdioFile, staleImageTar);
+            assertFalse(bdioCache.get("key1").isPresent());
+
+            final File imageTar = createImageTar(workingDir, "image1.tar", "blobs/sha256/" + imageConfigHex);
+            bdioCache.put(new BdioCacheKey("key1", "sha256:" + imageConfigHex), bdioFile.getName(), bdioFile, imageTar);
+            assertEquals("bdio1", bdioCache.get("key1").get().getBdioString());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private void mockConfig(final File workingDir, final long maxSizeMb) throws IOException {
+        Mockito.when(config.isBdioCacheEnabled()).thenReturn(true);
+        Mockito.when(config.isOnHost()).thenReturn(true);
+        Mockito.when(config.getBdioCacheMaxSizeMb()).thenReturn(maxSizeMb);
+        Mockito.when(config.getDockerImageRepo()).thenReturn("alpine");
+        Mockito.when(config.getDockerImageTag()).thenReturn("latest");
+        Mockito.when(config.getHubCodelocationPrefix()).thenReturn("");
+        Mockito.when(config.getLinuxDistro()).thenReturn("");
+        Mockito.when(programPaths.getHubDockerPgmDirPathHost()).thenReturn(workingDir.getAbsolutePath());
+        Mockito.when(programVersion.getProgramVersion()).thenReturn("1.0.0");
+        Mockito.when(programVersion.getInspectorImageVersion()).thenReturn("1.0.0");
+        Mockito.when(hubProjectName.getHubProjectName(config)).thenReturn("alpine");
+        Mockito.when(hubProjectName.getHubProjectVersion(config)).thenReturn("latest");
+    }
+
+    private File createImageTar(final File dir, final String tarFilename, final String configFilename) throws IOException {
+        final File tarFile = new File(dir, tarFilename);
+        final byte[] manifestBytes = String.format("[{\"Config\":\"%s\",\"RepoTags\":[\"alpine:latest\"],\"Layers\":[\"layer1/layer.tar\"]}]", configFilename).getBytes(StandardCharsets.UTF_8);
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(tarFile))) {
+            final TarArchiveEntry entry = new TarArchiveEntry("manifest.json");
+            entry.setSize(manifestBytes.length);
+            tarOutputStream.putArchiveEntry(entry);
+            tarOutputStream.write(manifestBytes);
+            tarOutputStream.closeArchiveEntry();
+        }
+        return tarFile;
+    }
+}
@@ -0,0 +1,166 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ParallelLayerExtractor;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
+
+@RunWith(SpringRunner.class)
+public class LayerCacheTest {
+
+    @InjectMocks
+    private LayerCache layerCache;
+
+    @Mock
+    private Config config;
+
+    @Mock
+    private ProgramPaths programPaths;
+
+    @Mock
+    private InspectorMetrics inspectorMetrics;
+
+    @Test
+    public void testSharedBaseLayerExtractedOnce() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 100L);
+            final File baseLayer = createLayerTar(new File(workingDir, "base/layer.tar"), "etc/removed", "base", "etc/kept", "base");
+            final File image1Layer = createLayerTar(new File(workingDir, "image1/layer.tar"), "etc/.wh.removed", "", "etc/image", "image1");
+            final File image2Layer = createLayerTar(new File(workingDir, "image2/layer.tar"), "etc/image", "image2");
+
+            final File rootDir1 = extract(new File(workingDir, "run1"), "image1", Arrays.asList(baseLayer, image1Layer), Arrays.asList("base", "image1"));
+            final File rootDir2 = extract(new File(workingDir, "run2"), "image2", Arrays.asList(baseLayer, image2Layer), Arrays.asList("base", "image2"));
+
+            assertEquals(3, new File(workingDir, "layerCache").listFiles(File::isDirectory).length);
+            Mockito.verify(inspectorMetrics, Mockito.times(1)).recordLayerCacheLookup(true);
+            assertFalse(new File(rootDir1, "etc/removed").exists());
+            assertEquals("image1", FileUtils.readFileToString(new File(rootDir1, "etc/image"), StandardCharsets.UTF_8));
+            assertEquals("base", FileUtils.readFileToString(new File(rootDir2, "etc/removed"), StandardCharsets.UTF_8));
+            assertEquals("image2", FileUtils.readFileToString(new File(rootDir2, "etc/image"), StandardCharsets.UTF_8));
+            // Both container file systems share the base layer's extracted file
+            assertEquals(Files.getAttribute(new File(rootDir1, "etc/kept").toPath(), "unix:ino"), Files.getAttribute(new File(rootDir2, "etc/kept").toPath(), "unix:ino"));
+
+            // Removing a container file system leaves the cached layers intact
+            FileUtils.deleteDirectory(rootDir1);
+            final File rootDir3 = extract(new File(workingDir, "run3"), "image1", Arrays.asList(baseLayer, image1Layer), Arrays.asList("base", "image1"));
+            assertEquals("base", FileUtils.readFileToString(new File(rootDir3, "etc/kept"), StandardCharsets.UTF_8));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testKeyIncludesPathAllowList() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 100L);
+            final File layer = createLayerTar(new File(workingDir, "layer1/layer.tar"), "etc/hosts", "localhost");
+            final File identicalLayer = createLayerTar(new File(workingDir, "layer2/layer.tar"), "etc/hosts", "localhost");
+
+            assertEquals(layerCache.deriveKey(layer, null), layerCache.deriveKey(identicalLayer, null));
+            assertNotEquals(layerCache.deriveKey(layer, null), layerCache.deriveKey(layer, Arrays.asList("var/lib/dpkg")));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testKeyFromLayerDigest() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 100L);
+            final String layer = StringUtils.repeat("0123456789abcdef", 4);
+            final File layerTar = createLayerTar(new File(workingDir, "image1/" + layer + "/layer.tar"), "etc/hosts", "localhost");
+            extract(new File(workingDir, "run1"), "image1", Arrays.asList(layerTar), Arrays.asList(layer));
+
+            // The layer is found in the cache by its digest; its tar is not read
+            FileUtils.write(layerTar, "not a layer tar", StandardCharsets.UTF_8);
+            final File rootDir = extract(new File(workingDir, "run2"), "image1", Arrays.asList(layerTar), Arrays.asList(layer));
+
+            Mockito.verify(inspectorMetrics, Mockito.times(1)).recordLayerCacheLookup(true);
+            assertEquals("localhost", FileUtils.readFileToString(new File(rootDir, "etc/hosts"), StandardCharsets.UTF_8));
+            assertEquals(layerCache.deriveKeyFromLayerDigest(layer, null), layerCache.deriveKeyFromLayerDigest("blobs/sha256/" + layer, null));
+            assertFalse(layerCache.deriveKeyFromLayerDigest("base", null).isPresent());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            mockConfig(workingDir, 1L);
+            final File layer1 = createLayerTar(new File(workingDir, "layer1/layer.tar"), "etc/layer1", StringUtils.repeat('x', 600 * 1024));
+            final File layer2 = createLayerTar(new File(workingDir, "layer2/layer.tar"), "etc/layer2", StringUtils.repeat('y', 600 * 1024));
+            extract(new File(workingDir, "run1"), "image1", Arrays.asList(layer1), Arrays.asList("layer1"));
+            final File layer1EntryDir = new File(workingDir, "layerCache/" + layerCache.deriveKey(layer1, null));
+            assertTrue(layer1EntryDir.isDirectory());
+
+            // Together, these two entries exceed the max cache size, so the least recently used one (layer1) is evicted
+            layer1EntryDir.setLastModified(System.currentTimeMillis() - 60000L);
+            extract(new File(workingDir, "run2"), "image2", Arrays.asList(layer2), Arrays.asList("layer2"));
+
+            assertFalse(layer1EntryDir.exists());
+            assertTrue(new File(workingDir, "layerCache/" + layerCache.deriveKey(layer2, null)).isDirectory());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private File extract(final File runWorkingDir, final String imageRepo, final List<File> layerTars, final List<String> layers) throws IOException {
+        final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping(imageRepo, "1.0", layers));
+        return new ParallelLayerExtractor(2, null, layerCache).extractDockerLayers(runWorkingDir, imageRepo, "1.0", layerTars, layerMappings);
+    }
+
+    private void mockConfig(final File workingDir, final long maxSizeMb) {
+        Mockito.when(config.isLayerCacheEnabled()).thenReturn(true);
+        Mockito.when(config.getLayerCacheMaxSizeMb()).thenReturn(maxSizeMb);
+        Mockito.when(programPaths.getHubDockerPgmDirPathHost()).thenReturn(workingDir.getAbsolutePath());
+    }
+
+    // Alternating file names and contents
+    private File createLayerTar(final File layerTar, final String... namesAndContents) throws IOException {
+        layerTar.getParentFile().mkdirs();
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(layerTar))) {
+            tarOutputStream.putArchiveEntry(new TarArchiveEntry("etc/"));
+            tarOutputStream.closeArchiveEntry();
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                final byte[] contents = namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+                final TarArchiveEntry entry = new TarArchiveEntry(namesAndContents[i]);
+                entry.setSize(contents.length);
+                tarOutputStream.putArchiveEntry(entry);
+                tarOutputStream.write(contents);
+                tarOutputStream.closeArchiveEntry();
+            }
+        }
+        return layerTar;
+    }
+}
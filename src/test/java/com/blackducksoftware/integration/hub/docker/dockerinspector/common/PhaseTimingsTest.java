@@ -0,0 +1,63 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+@RunWith(SpringRunner.class)
+public class PhaseTimingsTest {
+
+    @InjectMocks
+    private PhaseTimings phaseTimings;
+
+    @Mock
+    private InspectorMetrics inspectorMetrics;
+
+    @Test
+    public void testRecordedPhasesAddedToResultFile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File resultFile = new File(workingDir, "result.json");
+            FileUtils.write(resultFile, "{\"succeeded\":true,\"message\":\"Success\"}", StandardCharsets.UTF_8);
+            final long startTime = System.currentTimeMillis();
+            phaseTimings.record(Phase.DOCKER_SAVE, startTime, 1000L);
+            phaseTimings.record(Phase.DOCKER_SAVE, startTime, 24L);
+            phaseTimings.record(Phase.CLEANUP, startTime);
+
+            phaseTimings.addToResultFile(resultFile.getAbsolutePath());
+
+            final JsonObject resultJson = new JsonParser().parse(FileUtils.readFileToString(resultFile, StandardCharsets.UTF_8)).getAsJsonObject();
+            assertTrue(resultJson.get("succeeded").getAsBoolean());
+            final JsonArray phasesJson = resultJson.getAsJsonObject("timings").getAsJsonArray("phases");
+            assertEquals(2, phasesJson.size());
+            final JsonObject dockerSaveJson = phasesJson.get(0).getAsJsonObject();
+            assertEquals("dockerSave", dockerSaveJson.get("phase").getAsString());
+            assertEquals(2, dockerSaveJson.get("count").getAsInt());
+            assertEquals(1024L, dockerSaveJson.get("bytes").getAsLong());
+            assertEquals("cleanup", phasesJson.get(1).getAsJsonObject().get("phase").getAsString());
+
+            phaseTimings.writeTimingsFile(workingDir);
+            final JsonObject timingsJson = new JsonParser().parse(FileUtils.readFileToString(new File(workingDir, PhaseTimings.TIMINGS_JSON_FILENAME), StandardCharsets.UTF_8)).getAsJsonObject();
+            assertEquals(2, timingsJson.getAsJsonArray("phases").size());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+}
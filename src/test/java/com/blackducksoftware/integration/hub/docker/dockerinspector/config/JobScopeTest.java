@@ -0,0 +1,41 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.springframework.beans.factory.ObjectFactory;
+
+public class JobScopeTest {
+    private final ObjectFactory<Object> objectFactory = () -> new Object();
+
+    @Test
+    public void testJobsHaveTheirOwnBeans() throws InterruptedException, ExecutionException {
+        final JobScope jobScope = new JobScope();
+        final Object processBean = jobScope.get("config", objectFactory);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // Threads that aren't running a job share the process wide bean
+            assertSame(processBean, executor.submit(() -> jobScope.get("config", objectFactory)).get());
+
+            final Object jobBean = JobScope.runJob(() -> {
+                assertTrue(JobScope.isInJob());
+                final Object bean = jobScope.get("config", objectFactory);
+                assertSame(bean, jobScope.get("config", objectFactory));
+                return bean;
+            });
+            assertNotSame(processBean, jobBean);
+            assertFalse(JobScope.isInJob());
+            assertSame(processBean, jobScope.get("config", objectFactory));
+            assertNotSame(jobBean, JobScope.runJob(() -> jobScope.get("config", objectFactory)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchInspector;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.batch.BatchResult;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ImageInspectorClientStartServices;
+
+@RunWith(SpringRunner.class)
+public class InspectionDaemonTest {
+
+    @InjectMocks
+    private InspectionDaemon inspectionDaemon;
+
+    @Mock
+    private Config config;
+
+    @Mock
+    private BatchInspector batchInspector;
+
+    @Mock
+    private InspectorMetrics inspectorMetrics;
+
+    @Mock
+    private ImageInspectorClientStartServices imageInspectorClientStartServices;
+
+    @Test
+    public void testJobSubmittedAndStreamedUntilFinished() throws Exception {
+        final File outputDir = TestUtils.createTempDirectory();
+        final int port = findFreePort();
+        Mockito.when(config.getOutputPath()).thenReturn(outputDir.getAbsolutePath());
+        Mockito.when(config.getDaemonPort()).thenReturn(port);
+        Mockito.when(config.getDaemonThreadCount()).thenReturn(2);
+        Mockito.when(config.getDaemonQueueSize()).thenReturn(10);
+        Mockito.when(config.getDaemonJobsRetained()).thenReturn(1);
+        Mockito.when(batchInspector.inspectTarget(Matchers.any(), Matchers.any(), Matchers.any()))
+                .thenReturn(new BatchResult("alpine:latest", true, "Success", outputDir.getAbsolutePath(), "alpine.jsonld", 5L));
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final IntSupplier imageInspection = () -> 0;
+            final Future<Integer> daemonReturnCode = executor.submit(() -> inspectionDaemon.serve(imageInspection));
+
+            request(port, null, "GET", "/jobs", null, 401);
+            final File tokenFile = new File(outputDir, "daemon.token");
+            assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(tokenFile.toPath()));
+            final String token = FileUtils.readFileToString(tokenFile, StandardCharsets.UTF_8);
+            request(port, "wrong", "GET", "/jobs", null, 401);
+
+            final String submitResponse = request(port, token, "POST", "/jobs", "{\"target\":\"alpine:latest\"}", 202);
+            assertTrue(submitResponse.contains("\"id\":1"));
+            final List<String> events = IOUtils.readLines(new StringReader(request(port, token, "GET", "/jobs/1/events", null, 200)));
+            assertTrue(events.get(events.size() - 1).contains("\"status\":\"SUCCEEDED\""));
+            assertTrue(events.get(events.size() - 1).contains("alpine.jsonld"));
+            request(port, token, "GET", "/jobs/2", null, 404);
+            request(port, token, "POST", "/jobs", "{}", 400);
+
+            // Only the most recent finished job is retained
+            request(port, token, "POST", "/jobs", "{\"target\":\"alpine:latest\"}", 202);
+            request(port, token, "GET", "/jobs/2/events", null, 200);
+            request(port, token, "GET", "/jobs/1", null, 404);
+            request(port, token, "GET", "/jobs/2", null, 200);
+
+            request(port, token, "POST", "/shutdown", null, 202);
+            assertEquals(0, daemonReturnCode.get(30, TimeUnit.SECONDS).intValue());
+            assertFalse(tokenFile.exists());
+        } finally {
+            executor.shutdownNow();
+            TestUtils.deleteDirIfExists(outputDir);
+        }
+    }
+
+    private String request(final int port, final String token, final String method, final String path, final String body, final int expectedStatusCode) throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + 30000L;
+        while (true) {
+            try {
+                final HttpURLConnection connection = (HttpURLConnection) new URL(String.format("http://127.0.0.1:%d%s", port, path)).openConnection();
+                connection.setRequestMethod(method);
+                if (token != null) {
+                    connection.setRequestProperty("Authorization", "Bearer " + token);
+                }
+                if (body != null) {
+                    connection.setDoOutput(true);
+                    try (final OutputStream requestBody = connection.getOutputStream()) {
+                        requestBody.write(body.getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                assertEquals(expectedStatusCode, connection.getResponseCode());
+                try (final InputStream responseBody = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                    return IOUtils.toString(responseBody, StandardCharsets.UTF_8);
+                }
+            } catch (final ConnectException e) {
+                // The daemon may not be listening yet
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50L);
+            }
+        }
+    }
+
+    private int findFreePort() throws IOException {
+        try (final ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+
+public class ServiceContainerWatchTest {
+
+    @Test
+    public void testStartedLogMarkerSplitAcrossFrames() throws InterruptedException, IOException {
+        try (final ServiceContainerWatch watch = new ServiceContainerWatch("testContainer", "JVM running for")) {
+            watch.getLogCallback().onNext(logFrame("Starting ImageInspectorApplication\nStarted in 4.1 seconds (JVM run"));
+            assertFalse(watch.isStarted());
+            watch.getLogCallback().onNext(logFrame("ning for 4.9)\n"));
+            assertTrue(watch.isStarted());
+            assertFalse(watch.isDied());
+
+            final long startTime = System.currentTimeMillis();
+            watch.awaitEvent(60000L);
+            assertTrue(System.currentTimeMillis() - startTime < 60000L);
+        }
+    }
+
+    private Frame logFrame(final String text) {
+        return new Frame(StreamType.STDOUT, text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,150 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.hubclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
+import com.blackducksoftware.integration.rest.exception.IntegrationRestException;
+
+@RunWith(SpringRunner.class)
+public class BdioUploaderTest {
+
+    @InjectMocks
+    private BdioUploader bdioUploader;
+
+    @Mock
+    private Config config;
+
+    @Mock
+    private HubClient hubClient;
+
+    @Mock
+    private PendingUploads pendingUploads;
+
+    @Mock
+    private InspectorMetrics inspectorMetrics;
+
+    @Mock
+    private ProgramPaths programPaths;
+
+    @After
+    public void tearDown() {
+        bdioUploader.close();
+    }
+
+    @Test
+    public void testServerErrorRetried() throws IntegrationException, InterruptedException {
+        final File bdioFile = new File("test_bdio.jsonld");
+        Mockito.doThrow(new IntegrationRestException(503, "Service Unavailable", "test")).doNothing().when(hubClient).uploadBdioToHub(bdioFile);
+
+        final BdioUpload upload = bdioUploader.uploadWithRetries(bdioFile, 3, 1L);
+
+        assertEquals(2, upload.getAttempts());
+        Mockito.verify(hubClient, Mockito.times(2)).uploadBdioToHub(bdioFile);
+        Mockito.verify(inspectorMetrics).recordHubUpload(Matchers.eq(true), Matchers.anyLong(), Matchers.eq(2));
+    }
+
+    @Test
+    public void testClientErrorNotRetried() throws InterruptedException, IntegrationException {
+        final File bdioFile = new File("test_bdio.jsonld");
+        Mockito.doThrow(new IntegrationRestException(400, "Bad Request", "test")).when(hubClient).uploadBdioToHub(bdioFile);
+        try {
+            bdioUploader.uploadWithRetries(bdioFile, 3, 1L);
+            fail("Expected the upload to fail");
+        } catch (final IntegrationRestException e) {
+            assertEquals(400, e.getHttpStatusCode());
+        }
+        Mockito.verify(hubClient, Mockito.times(1)).uploadBdioToHub(bdioFile);
+    }
+
+    @Test
+    public void testRetryable() {
+        assertTrue(bdioUploader.isRetryable(new IntegrationException(new SocketTimeoutException("Read timed out"))));
+        assertTrue(bdioUploader.isRetryable(new IntegrationRestException(502, "Bad Gateway", "test")));
+        assertFalse(bdioUploader.isRetryable(new IntegrationRestException(401, "Unauthorized", "test")));
+        assertFalse(bdioUploader.isRetryable(new IntegrationException("test")));
+    }
+
+    @Test
+    public void testBackoff() {
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            final long cappedBackoffMilliseconds = Math.min(60000L, 1000L << (attempt - 1));
+            final long backoffMilliseconds = bdioUploader.deriveBackoffMilliseconds(attempt, 1000L);
+            assertTrue(backoffMilliseconds >= cappedBackoffMilliseconds / 2);
+            assertTrue(backoffMilliseconds <= cappedBackoffMilliseconds);
+        }
+    }
+
+    @Test
+    public void testConcurrentUploads() throws IntegrationException {
+        Mockito.when(config.getHubUploadThreadCount()).thenReturn(2);
+        Mockito.when(config.getHubUploadRetryCount()).thenReturn(0);
+        Mockito.when(config.getHubUploadRetryBackoffMilliseconds()).thenReturn(1L);
+        Mockito.when(pendingUploads.isDeferring()).thenReturn(false);
+        final List<File> bdioFiles = Arrays.asList(new File("test1_bdio.jsonld"), new File("test2_bdio.jsonld"), new File("test3_bdio.jsonld"));
+
+        assertTrue(bdioUploader.upload(bdioFiles));
+
+        for (final File bdioFile : bdioFiles) {
+            Mockito.verify(hubClient).uploadBdioToHub(bdioFile);
+        }
+    }
+
+    @Test
+    public void testDeferredUploadUsesSnapshot() throws IntegrationException, IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            Mockito.when(config.getHubUploadThreadCount()).thenReturn(1);
+            Mockito.when(config.getHubUploadRetryCount()).thenReturn(0);
+            Mockito.when(config.getHubUploadRetryBackoffMilliseconds()).thenReturn(1L);
+            Mockito.when(pendingUploads.isDeferring()).thenReturn(true);
+            Mockito.when(programPaths.getHubDockerPgmDirPathHost()).thenReturn(workingDir.getAbsolutePath());
+            final File bdioFile = new File(workingDir, "output/test_bdio.jsonld");
+            FileUtils.write(bdioFile, "bdio", StandardCharsets.UTF_8);
+            final List<String> uploadedBdio = new ArrayList<>();
+            Mockito.doAnswer(invocation -> {
+                final File uploadedBdioFile = (File) invocation.getArguments()[0];
+                uploadedBdio.add(uploadedBdioFile.getName());
+                uploadedBdio.add(FileUtils.readFileToString(uploadedBdioFile, StandardCharsets.UTF_8));
+                return null;
+            }).when(hubClient).uploadBdioToHub(Matchers.any(File.class));
+
+            assertFalse(bdioUploader.upload(Arrays.asList(bdioFile)));
+            // The inspection may move or delete its BDIO file before the upload has finished
+            FileUtils.deleteQuietly(bdioFile);
+            final ArgumentCaptor<List> deferredUploads = ArgumentCaptor.forClass(List.class);
+            Mockito.verify(pendingUploads).add(deferredUploads.capture());
+            bdioUploader.await(deferredUploads.getValue());
+
+            assertEquals(Arrays.asList("test_bdio.jsonld", "bdio"), uploadedBdio);
+            assertEquals(0, new File(workingDir, "pendingUploads").list().length);
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+}
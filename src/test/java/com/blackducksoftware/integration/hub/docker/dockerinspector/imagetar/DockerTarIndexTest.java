@@ -0,0 +1,145 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+
+public class DockerTarIndexTest {
+    private static final String MANIFEST = "[{\"Config\":\"config.json\",\"RepoTags\":[\"test:1.0\"],\"Layers\":[\"layer1/layer.tar\",\"layer2/layer.tar\",\"layer3/layer.tar\"]}]";
+
+    @Test
+    public void testIndex() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File dockerTarFile = createImageTar(workingDir);
+            final DockerTarIndex index = DockerTarIndex.build(dockerTarFile);
+
+            assertEquals(MANIFEST, StandardCharsets.UTF_8.decode(index.map(DockerTarIndex.MANIFEST_FILENAME)).toString());
+            assertEquals("layer two", StandardCharsets.UTF_8.decode(index.map("layer2/layer.tar")).toString());
+            assertEquals("layer one", StandardCharsets.UTF_8.decode(index.map("layer3/layer.tar")).toString());
+            assertEquals("layer1/layer.tar", index.getEntry("layer3/layer.tar").get().getName());
+            assertEquals(9L, index.getEntry("layer1/layer.tar").get().getSize());
+            assertFalse(index.getEntry("layer4/layer.tar").isPresent());
+            assertFalse(index.getEntry("layer5/layer.tar").isPresent());
+            assertEquals(3, index.readManifest().get(0).getAsJsonObject().getAsJsonArray("Layers").size());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testExtractLayerTars() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File dockerTarFile = createImageTar(workingDir);
+            final File outputDir = new File(workingDir, "extracted");
+            final List<File> layerTars = DockerTarIndex.of(dockerTarFile).extractLayerTars(outputDir);
+
+            assertEquals(3, layerTars.size());
+            assertEquals("layer one", FileUtils.readFileToString(new File(outputDir, "layer1/layer.tar"), StandardCharsets.UTF_8));
+            assertEquals("layer two", FileUtils.readFileToString(new File(outputDir, "layer2/layer.tar"), StandardCharsets.UTF_8));
+            assertTrue(Files.isSymbolicLink(new File(outputDir, "layer3/layer.tar").toPath()));
+            assertEquals("layer one", FileUtils.readFileToString(new File(outputDir, "layer3/layer.tar"), StandardCharsets.UTF_8));
+            assertEquals(MANIFEST, FileUtils.readFileToString(new File(outputDir, "manifest.json"), StandardCharsets.UTF_8));
+            assertTrue(new File(outputDir, "config.json").isFile());
+            assertFalse(new File(outputDir, "layer1/json").exists());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testExtractManifestFiles() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File dockerTarFile = createImageTar(workingDir);
+            final File outputDir = new File(workingDir, "extracted");
+            final DockerTarIndex index = DockerTarIndex.of(dockerTarFile);
+            index.extractManifestFiles(outputDir);
+
+            assertTrue(new File(outputDir, "manifest.json").isFile());
+            assertTrue(new File(outputDir, "config.json").isFile());
+            assertFalse(new File(outputDir, "layer1").exists());
+            try (InputStream layerInputStream = index.openEntry(DockerTarIndex.getLayerTarName("layer3"))) {
+                assertEquals("layer one", IOUtils.toString(layerInputStream, StandardCharsets.UTF_8));
+            }
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testSymbolicLinkOutOfTarfile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File dockerTarFile = createImageTar(workingDir);
+            DockerTarIndex.of(dockerTarFile).openEntry("layer5/layer.tar");
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testIndexReused() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File dockerTarFile = createImageTar(workingDir);
+            assertSame(DockerTarIndex.of(dockerTarFile), DockerTarIndex.of(dockerTarFile));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private File createImageTar(final File dir) throws IOException {
+        final File dockerTarFile = new File(dir, "test.tar");
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(dockerTarFile))) {
+            addDirectory(tarOutputStream, "layer1/");
+            addEntry(tarOutputStream, "layer1/json", "{}");
+            addEntry(tarOutputStream, "layer1/layer.tar", "layer one");
+            addEntry(tarOutputStream, "layer2/layer.tar", "layer two");
+            addSymbolicLink(tarOutputStream, "layer3/layer.tar", "../layer1/layer.tar");
+            addSymbolicLink(tarOutputStream, "layer5/layer.tar", "../../layer1/layer.tar");
+            addEntry(tarOutputStream, "config.json", "{\"os\":\"linux\"}");
+            addEntry(tarOutputStream, "manifest.json", MANIFEST);
+        }
+        return dockerTarFile;
+    }
+
+    private void addDirectory(final TarArchiveOutputStream tarOutputStream, final String name) throws IOException {
+        tarOutputStream.putArchiveEntry(new TarArchiveEntry(name));
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private void addSymbolicLink(final TarArchiveOutputStream tarOutputStream, final String name, final String linkName) throws IOException {
+        final TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK);
+        entry.setLinkName(linkName);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private void addEntry(final TarArchiveOutputStream tarOutputStream, final String name, final String contents) throws IOException {
+        final byte[] contentBytes = contents.getBytes(StandardCharsets.UTF_8);
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(contentBytes.length);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(contentBytes);
+        tarOutputStream.closeArchiveEntry();
+    }
+}
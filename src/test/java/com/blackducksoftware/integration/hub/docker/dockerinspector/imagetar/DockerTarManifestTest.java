@@ -0,0 +1,44 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+
+public class DockerTarManifestTest {
+
+    @Test
+    public void testAggregatedTarfile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            // Two tagged images sharing a layer, plus one saved by ID (no repo:tag)
+            final String manifest = "[{\"Config\":\"aaa.json\",\"RepoTags\":[\"alpine:1.0\",\"alpine:latest\"],\"Layers\":[\"layer1/layer.tar\"]},"
+                    + "{\"Config\":\"bbb.json\",\"RepoTags\":[\"blackducksoftware/alpine_plus:1.0\"],\"Layers\":[\"layer1/layer.tar\",\"layer2/layer.tar\"]},"
+                    + "{\"Config\":\"ccc.json\",\"RepoTags\":null,\"Layers\":[\"layer1/layer.tar\"]}]";
+            final File dockerTarFile = new File(workingDir, "aggregated.tar");
+            try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(dockerTarFile))) {
+                final byte[] manifestBytes = manifest.getBytes(StandardCharsets.UTF_8);
+                final TarArchiveEntry entry = new TarArchiveEntry("manifest.json");
+                entry.setSize(manifestBytes.length);
+                tarOutputStream.putArchiveEntry(entry);
+                tarOutputStream.write(manifestBytes);
+                tarOutputStream.closeArchiveEntry();
+            }
+            final DockerTarManifest dockerTarManifest = new DockerTarManifest();
+
+            assertEquals(Arrays.asList("alpine:1.0", "blackducksoftware/alpine_plus:1.0"), dockerTarManifest.getRepoTags(dockerTarFile));
+            assertEquals(Arrays.asList("aaa.json", "bbb.json", "ccc.json"), dockerTarManifest.getConfigFilenames(dockerTarFile));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+
+public class DockerTarStreamExtractorTest {
+
+    @Test
+    public void testExtractWithImageTarfileCopy() throws IOException {
+        final byte[] imageTarBytes = createImageTar();
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File outputDir = DockerTarStreamExtractor.getTarExtractionDirectory(workingDir, "test.tar");
+            final File imageTarFileCopy = new File(workingDir, "target/test.tar");
+            final List<File> layerTars = new DockerTarStreamExtractor().extract(new ByteArrayInputStream(imageTarBytes), outputDir, imageTarFileCopy);
+
+            assertEquals(2, layerTars.size());
+            assertEquals("layer one", FileUtils.readFileToString(new File(outputDir, "layer1/layer.tar"), StandardCharsets.UTF_8));
+            assertEquals("layer two", FileUtils.readFileToString(new File(outputDir, "layer2/layer.tar"), StandardCharsets.UTF_8));
+            assertTrue(new File(outputDir, "manifest.json").isFile());
+            assertTrue(FileUtils.contentEquals(imageTarFileCopy, writeToFile(workingDir, imageTarBytes)));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testExtractWithoutImageTarfileCopy() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File outputDir = DockerTarStreamExtractor.getTarExtractionDirectory(workingDir, "test.tar");
+            final List<File> layerTars = new DockerTarStreamExtractor().extract(new ByteArrayInputStream(createImageTar()), outputDir, null);
+
+            assertEquals(2, layerTars.size());
+            assertEquals(1, workingDir.listFiles().length);
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private File writeToFile(final File dir, final byte[] bytes) throws IOException {
+        final File file = new File(dir, "expected.tar");
+        FileUtils.writeByteArrayToFile(file, bytes);
+        return file;
+    }
+
+    private byte[] createImageTar() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(bytes)) {
+            addEntry(tarOutputStream, "manifest.json", "[{\"Config\":\"config.json\",\"RepoTags\":[\"test:1.0\"],\"Layers\":[\"layer1/layer.tar\",\"layer2/layer.tar\"]}]");
+            addEntry(tarOutputStream, "layer1/layer.tar", "layer one");
+            addEntry(tarOutputStream, "layer2/layer.tar", "layer two");
+        }
+        return bytes.toByteArray();
+    }
+
+    private void addEntry(final TarArchiveOutputStream tarOutputStream, final String name, final String contents) throws IOException {
+        final byte[] contentBytes = contents.getBytes(StandardCharsets.UTF_8);
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(contentBytes.length);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(contentBytes);
+        tarOutputStream.closeArchiveEntry();
+    }
+}
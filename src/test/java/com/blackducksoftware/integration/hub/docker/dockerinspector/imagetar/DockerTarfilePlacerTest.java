@@ -0,0 +1,37 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.DockerTarfilePlacer.PlacementStrategy;
+
+public class DockerTarfilePlacerTest {
+
+    @Test
+    public void testPlace() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File givenDockerTarfile = new File(workingDir, "given/image.tar");
+            FileUtils.writeStringToFile(givenDockerTarfile, "image contents", StandardCharsets.UTF_8);
+            final File finalDockerTarfile = new File(workingDir, "target/image.tar");
+            FileUtils.writeStringToFile(finalDockerTarfile, "left over from a previous run", StandardCharsets.UTF_8);
+
+            final PlacementStrategy placementStrategy = new DockerTarfilePlacer().place(givenDockerTarfile, finalDockerTarfile);
+
+            assertNotEquals(PlacementStrategy.NONE, placementStrategy);
+            assertEquals("image contents", FileUtils.readFileToString(finalDockerTarfile, StandardCharsets.UTF_8));
+            assertEquals(PlacementStrategy.NONE, new DockerTarfilePlacer().place(givenDockerTarfile, givenDockerTarfile));
+            assertEquals("image contents", FileUtils.readFileToString(givenDockerTarfile, StandardCharsets.UTF_8));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+}
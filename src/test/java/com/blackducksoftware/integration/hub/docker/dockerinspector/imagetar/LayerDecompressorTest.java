@@ -0,0 +1,100 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+
+public class LayerDecompressorTest {
+    private static final byte[] LAYER_TAR = "not really a tar, but it will do".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testDecompressByMediaType() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try (final LayerDecompressor layerDecompressor = new LayerDecompressor(3)) {
+            final Future<File> gzipLayerTar = layerDecompressor.submit("application/vnd.oci.image.layer.v1.tar+gzip", writeBlob(workingDir, "gzip", gzip(LAYER_TAR)), new File(workingDir, "gzip/layer.tar"));
+            final Future<File> zstdLayerTar = layerDecompressor.submit("application/vnd.oci.image.layer.v1.tar+zstd", writeBlob(workingDir, "zstd", zstd(LAYER_TAR)), new File(workingDir, "zstd/layer.tar"));
+            final Future<File> uncompressedLayerTar = layerDecompressor.submit("application/vnd.oci.image.layer.v1.tar", writeBlob(workingDir, "tar", LAYER_TAR), new File(workingDir, "tar/layer.tar"));
+
+            final List<File> layerTars = layerDecompressor.getAll(Arrays.asList(gzipLayerTar, zstdLayerTar, uncompressedLayerTar));
+
+            for (final File layerTar : layerTars) {
+                assertArrayEquals(LAYER_TAR, FileUtils.readFileToByteArray(layerTar));
+            }
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testDecompressByContent() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            // A pigz-style layer: several concatenated gzip members
+            final ByteArrayOutputStream multiMemberGzip = new ByteArrayOutputStream();
+            multiMemberGzip.write(gzip(Arrays.copyOfRange(LAYER_TAR, 0, 10)));
+            multiMemberGzip.write(gzip(Arrays.copyOfRange(LAYER_TAR, 10, LAYER_TAR.length)));
+            final File layerTar = LayerDecompressor.decompress("", writeBlob(workingDir, "gzip", multiMemberGzip.toByteArray()), new File(workingDir, "gzip/layer.tar"));
+
+            assertArrayEquals(LAYER_TAR, FileUtils.readFileToByteArray(layerTar));
+            assertArrayEquals(LAYER_TAR, readAll(LayerDecompressor.decompressIfCompressed(new ByteArrayInputStream(zstd(LAYER_TAR)))));
+            assertArrayEquals(LAYER_TAR, readAll(LayerDecompressor.decompressIfCompressed(new ByteArrayInputStream(LAYER_TAR))));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptLayer() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try (final LayerDecompressor layerDecompressor = new LayerDecompressor(1)) {
+            final byte[] truncatedGzip = Arrays.copyOf(gzip(LAYER_TAR), 12);
+            layerDecompressor.getAll(Arrays.asList(layerDecompressor.submit("application/vnd.docker.image.rootfs.diff.tar.gzip", writeBlob(workingDir, "gzip", truncatedGzip), new File(workingDir, "gzip/layer.tar"))));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private File writeBlob(final File workingDir, final String name, final byte[] blob) throws IOException {
+        final File blobFile = new File(workingDir, name + ".blob");
+        FileUtils.writeByteArrayToFile(blobFile, blob);
+        return blobFile;
+    }
+
+    private byte[] readAll(final InputStream inputStream) throws IOException {
+        try (InputStream closingInputStream = inputStream) {
+            return IOUtils.toByteArray(closingInputStream);
+        }
+    }
+
+    private byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)) {
+            gzipOutputStream.write(content);
+        }
+        return gzipped.toByteArray();
+    }
+
+    private byte[] zstd(final byte[] content) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ZstdCompressorOutputStream zstdOutputStream = new ZstdCompressorOutputStream(compressed)) {
+            zstdOutputStream.write(content);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.google.gson.JsonObject;
+
+public class OciImageLayoutTest {
+    private File workingDir;
+    private File layoutDir;
+    private byte[] layerTar;
+    private String layerDigest;
+    private String configDigest;
+    private String manifestDigest;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDir = TestUtils.createTempDirectory();
+        layoutDir = new File(workingDir, "alpine");
+        layerTar = createLayerTar("etc/os-release", "ID=alpine");
+        layerDigest = writeBlob(gzip(layerTar));
+        configDigest = writeBlob("{\"architecture\":\"amd64\",\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8));
+        manifestDigest = writeBlob(String.format(
+                "{\"schemaVersion\":2,\"config\":{\"mediaType\":\"application/vnd.oci.image.config.v1+json\",\"digest\":\"%s\"},\"layers\":[{\"mediaType\":\"application/vnd.oci.image.layer.v1.tar+gzip\",\"digest\":\"%s\"}]}",
+                configDigest, layerDigest).getBytes(StandardCharsets.UTF_8));
+        FileUtils.writeStringToFile(new File(layoutDir, "oci-layout"), "{\"imageLayoutVersion\":\"1.0.0\"}", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(layoutDir, "index.json"),
+                String.format("{\"schemaVersion\":2,\"manifests\":[{\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",\"digest\":\"%s\",\"annotations\":{\"org.opencontainers.image.ref.name\":\"3.7\"}}]}",
+                        manifestDigest),
+                StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() {
+        TestUtils.deleteDirIfExists(workingDir);
+    }
+
+    @Test
+    public void testIsOciImageLayout() {
+        assertTrue(OciImageLayout.isOciImageLayout(layoutDir));
+        assertFalse(OciImageLayout.isOciImageLayout(new File(layoutDir, "index.json")));
+        assertFalse(OciImageLayout.isOciImageLayout(workingDir));
+    }
+
+    @Test
+    public void testExtract() throws IOException {
+        final File imageTarDirectory = new File(workingDir, "target");
+        final ImageTarContents imageTarContents = new OciImageLayout().extract(layoutDir, "", "3.7", imageTarDirectory, new File(workingDir, "working"), true);
+
+        assertEquals(1, imageTarContents.getLayerTars().size());
+        assertArrayEquals(layerTar, FileUtils.readFileToByteArray(imageTarContents.getLayerTars().get(0)));
+        assertTrue(imageTarContents.getDockerTarFile().isFile());
+        final JsonObject manifest = DockerTarIndex.of(imageTarContents.getDockerTarFile()).readManifest().get(0).getAsJsonObject();
+        assertEquals("alpine:3.7", manifest.getAsJsonArray("RepoTags").get(0).getAsString());
+        assertEquals(String.format("%s/layer.tar", layerDigest.substring("sha256:".length())), manifest.getAsJsonArray("Layers").get(0).getAsString());
+    }
+
+    @Test
+    public void testExtractWithoutImageTarfile() throws IOException {
+        final ImageTarContents imageTarContents = new OciImageLayout().extract(layoutDir, "test/alpine", "", new File(workingDir, "target"), new File(workingDir, "working"), false);
+
+        assertEquals(1, imageTarContents.getLayerTars().size());
+        assertFalse(imageTarContents.getDockerTarFile().exists());
+    }
+
+    @Test
+    public void testGetImageConfigDigest() throws IOException {
+        assertEquals(configDigest, new OciImageLayout().getImageConfigDigest(layoutDir, "3.7"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownTag() throws IOException {
+        new OciImageLayout().getImageConfigDigest(layoutDir, "3.8");
+    }
+
+    @Test
+    public void testIndexWithoutAmd64() throws IOException {
+        // An attestation manifest, then arm64: arm64 is the only linux image
+        writeIndex(String.format("{\"digest\":\"%s\",\"platform\":{\"architecture\":\"unknown\",\"os\":\"unknown\"}},{\"digest\":\"%s\",\"platform\":{\"architecture\":\"arm64\",\"os\":\"linux\",\"variant\":\"v8\"}}",
+                configDigest, manifestDigest));
+
+        assertEquals(configDigest, new OciImageLayout().getImageConfigDigest(layoutDir, "3.7"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testIndexWithoutLinux() throws IOException {
+        writeIndex(String.format("{\"digest\":\"%s\",\"platform\":{\"architecture\":\"amd64\",\"os\":\"windows\"}}", manifestDigest));
+
+        new OciImageLayout().getImageConfigDigest(layoutDir, "3.7");
+    }
+
+    // Tags a (multi-platform) image index of the given descriptors 3.7
+    private void writeIndex(final String descriptors) throws IOException {
+        final String indexDigest = writeBlob(String.format("{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.index.v1+json\",\"manifests\":[%s]}", descriptors).getBytes(StandardCharsets.UTF_8));
+        FileUtils.writeStringToFile(new File(layoutDir, "index.json"),
+                String.format("{\"schemaVersion\":2,\"manifests\":[{\"mediaType\":\"application/vnd.oci.image.index.v1+json\",\"digest\":\"%s\",\"annotations\":{\"org.opencontainers.image.ref.name\":\"3.7\"}}]}",
+                        indexDigest),
+                StandardCharsets.UTF_8);
+    }
+
+    private String writeBlob(final byte[] blob) throws IOException {
+        final String hex = DigestUtils.sha256Hex(blob);
+        FileUtils.writeByteArrayToFile(new File(layoutDir, "blobs/sha256/" + hex), blob);
+        return "sha256:" + hex;
+    }
+
+    private byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)) {
+            gzipOutputStream.write(content);
+        }
+        return gzipped.toByteArray();
+    }
+
+    private byte[] createLayerTar(final String name, final String contents) throws IOException {
+        final ByteArrayOutputStream layerTarBytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(layerTarBytes)) {
+            final byte[] contentBytes = contents.getBytes(StandardCharsets.UTF_8);
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(contentBytes.length);
+            tarOutputStream.putArchiveEntry(entry);
+            tarOutputStream.write(contentBytes);
+            tarOutputStream.closeArchiveEntry();
+        }
+        return layerTarBytes.toByteArray();
+    }
+}
@@ -0,0 +1,213 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
+
+public class ParallelLayerExtractorTest {
+
+    @Test
+    public void testWhiteoutsAppliedInLayerOrder() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File layer1 = new File(workingDir, "layer1/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer1)) {
+                addDir(tarOutputStream, "etc/");
+                addFile(tarOutputStream, "etc/removed", "layer1");
+                addFile(tarOutputStream, "etc/replaced", "layer1");
+                addDir(tarOutputStream, "opaque/");
+                addFile(tarOutputStream, "opaque/hidden", "layer1");
+            }
+            final File layer2 = new File(workingDir, "layer2/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer2)) {
+                addDir(tarOutputStream, "etc/");
+                addFile(tarOutputStream, "etc/.wh.removed", "");
+                addFile(tarOutputStream, "etc/replaced", "layer2");
+                addDir(tarOutputStream, "opaque/");
+                addFile(tarOutputStream, "opaque/.wh..wh..opq", "");
+                addFile(tarOutputStream, "opaque/visible", "layer2");
+                addSymlink(tarOutputStream, "etc/link", "replaced");
+                addHardLink(tarOutputStream, "etc/hardlink", "etc/replaced");
+            }
+            // Layer 3 re-adds a file that layer 2 whited out
+            final File layer3 = new File(workingDir, "layer3/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer3)) {
+                addDir(tarOutputStream, "etc/");
+                addFile(tarOutputStream, "etc/removed", "layer3");
+            }
+            final List<File> layerTars = Arrays.asList(layer3, layer1, layer2);
+            final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping("test", "1.0", Arrays.asList("layer1", "layer2", "layer3")));
+
+            final File rootDir = new ParallelLayerExtractor(3).extractDockerLayers(workingDir, "test", "1.0", layerTars, layerMappings);
+
+            assertEquals("layer3", FileUtils.readFileToString(new File(rootDir, "etc/removed"), StandardCharsets.UTF_8));
+            assertEquals("layer2", FileUtils.readFileToString(new File(rootDir, "etc/replaced"), StandardCharsets.UTF_8));
+            assertEquals("layer2", FileUtils.readFileToString(new File(rootDir, "etc/hardlink"), StandardCharsets.UTF_8));
+            assertTrue(Files.isSymbolicLink(new File(rootDir, "etc/link").toPath()));
+            assertFalse(new File(rootDir, "opaque/hidden").exists());
+            assertTrue(new File(rootDir, "opaque/visible").exists());
+            assertFalse(new File(rootDir, "etc/.wh.removed").exists());
+            assertFalse(new File(workingDir, "layerStaging").exists());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testSymlinkFromLowerLayerNotFollowed() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File hostDir = new File(workingDir, "host");
+            FileUtils.write(new File(hostDir, "victim"), "host", StandardCharsets.UTF_8);
+            FileUtils.write(new File(hostDir, "x/kept"), "host", StandardCharsets.UTF_8);
+            final File layer1 = new File(workingDir, "layer1/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer1)) {
+                addSymlink(tarOutputStream, "a", hostDir.getAbsolutePath());
+                addDir(tarOutputStream, "etc/");
+                addFile(tarOutputStream, "etc/file", "layer1");
+            }
+            // Whiteouts and a hard link that, followed through layer 1's symlink, would change the host dir
+            final File layer2 = new File(workingDir, "layer2/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer2)) {
+                addFile(tarOutputStream, "a/.wh.victim", "");
+                addFile(tarOutputStream, "a/x/.wh..wh..opq", "");
+                addHardLink(tarOutputStream, "a/link", "etc/file");
+            }
+            final List<File> layerTars = Arrays.asList(layer1, layer2);
+            final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping("test", "1.0", Arrays.asList("layer1", "layer2")));
+
+            final File rootDir = new ParallelLayerExtractor(2).extractDockerLayers(new File(workingDir, "working"), "test", "1.0", layerTars, layerMappings);
+
+            assertTrue(new File(hostDir, "victim").exists());
+            assertTrue(new File(hostDir, "x/kept").exists());
+            assertFalse(new File(hostDir, "link").exists());
+            assertTrue(Files.isSymbolicLink(new File(rootDir, "a").toPath()));
+            assertEquals("layer1", FileUtils.readFileToString(new File(rootDir, "etc/file"), StandardCharsets.UTF_8));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testPathAllowList() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File layer1 = new File(workingDir, "layer1/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer1)) {
+                addDir(tarOutputStream, "var/");
+                addDir(tarOutputStream, "var/lib/");
+                addDir(tarOutputStream, "var/lib/dpkg/");
+                addFile(tarOutputStream, "var/lib/dpkg/status", "layer1");
+                addFile(tarOutputStream, "var/lib/dpkg/available", "layer1");
+                addDir(tarOutputStream, "usr/");
+                addFile(tarOutputStream, "usr/big", "layer1");
+            }
+            final File layer2 = new File(workingDir, "layer2/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer2)) {
+                addDir(tarOutputStream, "var/");
+                addDir(tarOutputStream, "var/lib/");
+                addDir(tarOutputStream, "var/lib/dpkg/");
+                addFile(tarOutputStream, "var/lib/dpkg/.wh.available", "");
+                addFile(tarOutputStream, "var/lib/other", "layer2");
+            }
+            final List<File> layerTars = Arrays.asList(layer1, layer2);
+            final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping("test", "1.0", Arrays.asList("layer1", "layer2")));
+
+            final File rootDir = new ParallelLayerExtractor(1, Arrays.asList("var/lib/dpkg")).extractDockerLayers(workingDir, "test", "1.0", layerTars, layerMappings);
+
+            assertEquals("layer1", FileUtils.readFileToString(new File(rootDir, "var/lib/dpkg/status"), StandardCharsets.UTF_8));
+            assertFalse(new File(rootDir, "var/lib/dpkg/available").exists());
+            assertFalse(new File(rootDir, "var/lib/other").exists());
+            assertFalse(new File(rootDir, "usr").exists());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testLayerTarsReadInPlace() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File layer1 = new File(workingDir, "layers/layer1/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer1)) {
+                addDir(tarOutputStream, "etc/");
+                addFile(tarOutputStream, "etc/removed", "layer1");
+                addFile(tarOutputStream, "etc/replaced", "layer1");
+            }
+            final File layer2 = new File(workingDir, "layers/layer2/layer.tar");
+            try (TarArchiveOutputStream tarOutputStream = createLayerTar(layer2)) {
+                addDir(tarOutputStream, "etc/");
+                addFile(tarOutputStream, "etc/.wh.removed", "");
+                addFile(tarOutputStream, "etc/replaced", "layer2");
+            }
+            final File dockerTarFile = new File(workingDir, "image.tar");
+            try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(dockerTarFile))) {
+                addFile(tarOutputStream, "layer2/layer.tar", FileUtils.readFileToByteArray(layer2));
+                addFile(tarOutputStream, "layer1/layer.tar", FileUtils.readFileToByteArray(layer1));
+            }
+            final File extractionWorkingDir = new File(workingDir, "working");
+            final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping("test", "1.0", Arrays.asList("layer1", "layer2")));
+
+            final File rootDir = new ParallelLayerExtractor(2).extractDockerLayers(extractionWorkingDir, "test", "1.0", DockerTarIndex.of(dockerTarFile), layerMappings);
+
+            assertEquals("layer2", FileUtils.readFileToString(new File(rootDir, "etc/replaced"), StandardCharsets.UTF_8));
+            assertFalse(new File(rootDir, "etc/removed").exists());
+            // Nothing but the container file system was written
+            assertEquals(1, extractionWorkingDir.listFiles().length);
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private TarArchiveOutputStream createLayerTar(final File layerTar) throws IOException {
+        layerTar.getParentFile().mkdirs();
+        return new TarArchiveOutputStream(new FileOutputStream(layerTar));
+    }
+
+    private void addDir(final TarArchiveOutputStream tarOutputStream, final String name) throws IOException {
+        tarOutputStream.putArchiveEntry(new TarArchiveEntry(name));
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private void addFile(final TarArchiveOutputStream tarOutputStream, final String name, final String contents) throws IOException {
+        addFile(tarOutputStream, name, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void addFile(final TarArchiveOutputStream tarOutputStream, final String name, final byte[] contentBytes) throws IOException {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(contentBytes.length);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(contentBytes);
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private void addSymlink(final TarArchiveOutputStream tarOutputStream, final String name, final String linkName) throws IOException {
+        final TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_SYMLINK);
+        entry.setLinkName(linkName);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    private void addHardLink(final TarArchiveOutputStream tarOutputStream, final String name, final String linkName) throws IOException {
+        final TarArchiveEntry entry = new TarArchiveEntry(name, TarArchiveEntry.LF_LINK);
+        entry.setLinkName(linkName);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,120 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
+import com.blackducksoftware.integration.hub.imageinspector.imageformat.docker.manifest.ManifestLayerMapping;
+
+public class TargetOsScannerTest {
+
+    @Test
+    public void testWhitedOutPackageManagerIgnored() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            // The base layer has an rpm database, which the next layer removes; the top layer has nothing of interest
+            final byte[] layer1 = createLayerTar("var/", "var/lib/", "var/lib/rpm/", "var/lib/rpm/Packages", "lib/", "lib/apk/", "lib/apk/db/", "lib/apk/db/installed");
+            final byte[] layer2 = createLayerTar("var/", "var/lib/", "var/lib/.wh.rpm");
+            final byte[] layer3 = createLayerTar("etc/", "etc/hosts");
+            final File dockerTarFile = new File(workingDir, "image.tar");
+            final String manifest = "[{\"Config\":\"abc.json\",\"RepoTags\":[\"test:1.0\"],\"Layers\":[\"layer1/layer.tar\",\"layer2/layer.tar\",\"layer3/layer.tar\"]}]";
+            try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(dockerTarFile))) {
+                addFile(tarOutputStream, "layer3/layer.tar", layer3);
+                addFile(tarOutputStream, "layer1/layer.tar", layer1);
+                addFile(tarOutputStream, "layer2/layer.tar", layer2);
+                addFile(tarOutputStream, "manifest.json", manifest.getBytes(StandardCharsets.UTF_8));
+            }
+
+            final Optional<ImageInspectorOsEnum> inspectorOs = new TargetOsScanner().detectInspectorOs(dockerTarFile, "test", "1.0");
+
+            assertEquals(ImageInspectorOsEnum.ALPINE, inspectorOs.get());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testNewestLayerTarWins() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            // The newer layer has a dpkg database, so the older layer (with an rpm database) does not matter
+            final File layer1 = writeLayerTar(workingDir, "layer1", createLayerTar("var/", "var/lib/", "var/lib/rpm/", "var/lib/rpm/Packages"));
+            final File layer2 = writeLayerTar(workingDir, "layer2", createLayerTar("var/", "var/lib/", "var/lib/dpkg/", "var/lib/dpkg/.wh..wh..opq", "var/lib/dpkg/status"));
+            final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping("test", "1.0", Arrays.asList("layer1", "layer2")));
+
+            final Optional<ImageInspectorOsEnum> inspectorOs = new TargetOsScanner().detectInspectorOs(Arrays.asList(layer1, layer2), layerMappings);
+
+            assertEquals(ImageInspectorOsEnum.UBUNTU, inspectorOs.get());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testLayerTarsReadInPlace() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final File dockerTarFile = new File(workingDir, "image.tar");
+            try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new FileOutputStream(dockerTarFile))) {
+                addFile(tarOutputStream, "layer1/layer.tar", createLayerTar("var/", "var/lib/", "var/lib/dpkg/", "var/lib/dpkg/status"));
+                addFile(tarOutputStream, "layer2/layer.tar", createLayerTar("var/", "var/lib/", "var/lib/rpm/", "var/lib/rpm/Packages"));
+            }
+            final List<ManifestLayerMapping> layerMappings = Arrays.asList(new ManifestLayerMapping("test", "1.0", Arrays.asList("layer1", "layer2")));
+
+            final Optional<ImageInspectorOsEnum> inspectorOs = new TargetOsScanner().detectInspectorOs(DockerTarIndex.of(dockerTarFile), layerMappings);
+
+            assertEquals(ImageInspectorOsEnum.CENTOS, inspectorOs.get());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    @Test
+    public void testNotATarfile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            assertFalse(new TargetOsScanner().detectInspectorOs(new File(workingDir, "missing.tar"), "test", "1.0").isPresent());
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private File writeLayerTar(final File workingDir, final String layer, final byte[] layerTarBytes) throws IOException {
+        final File layerTar = new File(workingDir, layer + "/layer.tar");
+        FileUtils.writeByteArrayToFile(layerTar, layerTarBytes);
+        return layerTar;
+    }
+
+    private byte[] createLayerTar(final String... entryNames) throws IOException {
+        final ByteArrayOutputStream layerTarBytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(layerTarBytes)) {
+            for (final String entryName : entryNames) {
+                addFile(tarOutputStream, entryName, new byte[0]);
+            }
+        }
+        return layerTarBytes.toByteArray();
+    }
+
+    private void addFile(final TarArchiveOutputStream tarOutputStream, final String name, final byte[] contents) throws IOException {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(contents.length);
+        tarOutputStream.putArchiveEntry(entry);
+        tarOutputStream.write(contents);
+        tarOutputStream.closeArchiveEntry();
+    }
+}
@@ -0,0 +1,46 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.metrics;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings.Phase;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+
+public class InspectorMetricsTest {
+
+    @Test
+    public void testTextfile() throws IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final InspectorMetrics inspectorMetrics = new InspectorMetrics();
+            inspectorMetrics.recordImageInspected(true);
+            inspectorMetrics.recordImageInspected(false);
+            inspectorMetrics.recordFailure(new HubIntegrationException("test"));
+            inspectorMetrics.recordPhase(Phase.DOCKER_SAVE, 1500L, 2048L);
+            inspectorMetrics.recordServiceStart(true, 3000L, 4);
+            inspectorMetrics.recordServiceRedirect("UBUNTU", "ALPINE");
+            inspectorMetrics.recordBdioCacheLookup(true);
+            final File textfile = new File(workingDir, "hub_docker_inspector.prom");
+
+            inspectorMetrics.writeTextfile(textfile);
+
+            final String metrics = FileUtils.readFileToString(textfile, StandardCharsets.UTF_8);
+            assertTrue(metrics.contains("hub_docker_inspector_images_inspected_total{result=\"success\",} 1.0"));
+            assertTrue(metrics.contains("hub_docker_inspector_failures_total{exception=\"HubIntegrationException\",} 1.0"));
+            assertTrue(metrics.contains("hub_docker_inspector_phase_bytes_sum{phase=\"dockerSave\",} 2048.0"));
+            assertTrue(metrics.contains("hub_docker_inspector_phase_duration_seconds_bucket{phase=\"dockerSave\","));
+            assertTrue(metrics.contains("hub_docker_inspector_service_health_check_retries_total 3.0"));
+            assertTrue(metrics.contains("hub_docker_inspector_service_redirects_total{from=\"UBUNTU\",to=\"ALPINE\",} 1.0"));
+            assertTrue(metrics.contains("hub_docker_inspector_bdio_cache_lookups_total{result=\"hit\",} 1.0"));
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+}
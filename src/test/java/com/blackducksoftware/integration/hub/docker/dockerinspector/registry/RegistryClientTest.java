@@ -0,0 +1,92 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class RegistryClientTest {
+    private static final String DIGEST = "sha256:0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+    private HttpServer registry;
+    private RegistryClient registryClient;
+    private final AtomicInteger tokenRequests = new AtomicInteger(0);
+
+    @Before
+    public void setUp() throws IOException {
+        registry = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        registry.createContext("/token", exchange -> {
+            tokenRequests.incrementAndGet();
+            respond(exchange, 200, "{\"token\":\"testtoken\"}");
+        });
+        registry.createContext("/v2/", exchange -> {
+            if (!"Bearer testtoken".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().set("WWW-Authenticate",
+                        String.format("Bearer realm=\"http://127.0.0.1:%d/token\",service=\"test\",scope=\"repository:library/alpine:pull\"", registry.getAddress().getPort()));
+                respond(exchange, 401, "");
+            } else if ("/v2/library/alpine/manifests/3.7".equals(exchange.getRequestURI().getPath())) {
+                exchange.getResponseHeaders().set(RegistryClient.DIGEST_HEADER, DIGEST);
+                respond(exchange, 200, "");
+            } else {
+                respond(exchange, 404, "");
+            }
+        });
+        registry.start();
+        registryClient = new RegistryClient();
+    }
+
+    @After
+    public void tearDown() {
+        registryClient.close();
+        registry.stop(0);
+    }
+
+    @Test
+    public void testManifestDigestWithToken() throws IOException, IntegrationException {
+        final ImageReference imageReference = new ImageReference(String.format("127.0.0.1:%d", registry.getAddress().getPort()), "library/alpine", "3.7");
+
+        assertEquals(DIGEST, registryClient.getManifestDigest(imageReference));
+        assertEquals(DIGEST, registryClient.getManifestDigest(imageReference));
+        // The token is reused
+        assertEquals(1, tokenRequests.get());
+    }
+
+    @Test(expected = IntegrationException.class)
+    public void testManifestNotFound() throws IOException, IntegrationException {
+        registryClient.getManifestDigest(new ImageReference(String.format("127.0.0.1:%d", registry.getAddress().getPort()), "library/alpine", "nosuchtag"));
+    }
+
+    @Test
+    public void testParseImageReference() {
+        assertEquals("registry-1.docker.io/library/alpine:latest", ImageReference.parse("alpine", null).toString());
+        assertEquals("registry-1.docker.io/blackducksoftware/hub-docker-inspector:4.3.0", ImageReference.parse("blackducksoftware/hub-docker-inspector", "4.3.0").toString());
+        assertEquals("registry-1.docker.io/library/centos:7", ImageReference.parse("docker.io/centos", "7").toString());
+        assertEquals("localhost:5000/test/alpine:1.0", ImageReference.parse("localhost:5000/test/alpine", "1.0").toString());
+        assertEquals("http://localhost:5000", ImageReference.parse("localhost:5000/test/alpine", "1.0").getBaseUrl());
+        assertEquals("https://registry.example.com", ImageReference.parse("registry.example.com/alpine", "1.0").getBaseUrl());
+    }
+
+    private void respond(final HttpExchange exchange, final int statusCode, final String body) throws IOException {
+        final byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        if ("HEAD".equals(exchange.getRequestMethod()) || bodyBytes.length == 0) {
+            exchange.sendResponseHeaders(statusCode, -1);
+        } else {
+            exchange.sendResponseHeaders(statusCode, bodyBytes.length);
+            try (final OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(bodyBytes);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,253 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.imagetar.ImageTarContents;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { RegistryImageAcquirer.class, BlobDownloader.class, BlobStore.class, RegistryClient.class })
+public class RegistryImageAcquirerTest {
+    private static final String MANIFEST_LIST_TYPE = "application/vnd.docker.distribution.manifest.list.v2+json";
+    private static final String MANIFEST_TYPE = "application/vnd.docker.distribution.manifest.v2+json";
+    private static final String LAYER_TYPE = "application/vnd.docker.image.rootfs.diff.tar.gzip";
+
+    @Autowired
+    private RegistryImageAcquirer registryImageAcquirer;
+
+    @Autowired
+    private RegistryClient registryClient;
+
+    @MockBean
+    private Config config;
+
+    @MockBean
+    private ProgramPaths programPaths;
+
+    @MockBean
+    private PhaseTimings phaseTimings;
+
+    private HttpServer registry;
+    private File workingDir;
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private final AtomicInteger layerBlobRequests = new AtomicInteger(0);
+    // When set, the first request for the layer blob gets only part of it before the connection is dropped
+    private boolean interruptFirstLayerDownload = false;
+    private final List<String> rangeRequests = new ArrayList<>();
+    private final Map<String, byte[]> manifests = new HashMap<>();
+    private byte[] layerTar;
+    private String layerDigest;
+    private String configDigest;
+
+    @Before
+    public void setUp() throws IOException {
+        layerTar = createLayerTar("etc/os-release", "ID=alpine");
+        final byte[] layerBlob = gzip(layerTar);
+        layerDigest = digest(layerBlob);
+        blobs.put(layerDigest, layerBlob);
+        final byte[] configBlob = "{\"architecture\":\"amd64\",\"os\":\"linux\"}".getBytes(StandardCharsets.UTF_8);
+        configDigest = digest(configBlob);
+        blobs.put(configDigest, configBlob);
+
+        final byte[] manifest = String.format("{\"schemaVersion\":2,\"mediaType\":\"%s\",\"config\":{\"digest\":\"%s\",\"size\":%d},\"layers\":[{\"mediaType\":\"%s\",\"digest\":\"%s\",\"size\":%d}]}",
+                MANIFEST_TYPE, configDigest, configBlob.length, LAYER_TYPE, layerDigest, layerBlob.length).getBytes(StandardCharsets.UTF_8);
+        final String manifestDigest = digest(manifest);
+        manifests.put(manifestDigest, manifest);
+        manifests.put("3.7", String.format("{\"schemaVersion\":2,\"mediaType\":\"%s\",\"manifests\":[{\"digest\":\"sha256:%s\",\"platform\":{\"architecture\":\"arm64\",\"os\":\"linux\"}},{\"digest\":\"%s\",\"platform\":{\"architecture\":\"amd64\",\"os\":\"linux\"}}]}",
+                MANIFEST_LIST_TYPE, DigestUtils.sha256Hex("arm64"), manifestDigest).getBytes(StandardCharsets.UTF_8));
+
+        registry = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        registry.createContext("/v2/library/alpine/manifests/", exchange -> {
+            final String reference = exchange.getRequestURI().getPath().substring("/v2/library/alpine/manifests/".length());
+            respond(exchange, manifests.containsKey(reference) ? 200 : 404, manifests.getOrDefault(reference, new byte[0]));
+        });
+        // Blobs are served from "storage" via a redirect, as most registries do
+        registry.createContext("/v2/library/alpine/blobs/", exchange -> {
+            exchange.getResponseHeaders().set("Location", "/storage/" + exchange.getRequestURI().getPath().substring("/v2/library/alpine/blobs/".length()));
+            respond(exchange, 307, new byte[0]);
+        });
+        registry.createContext("/storage/", exchange -> {
+            final String digest = exchange.getRequestURI().getPath().substring("/storage/".length());
+            final byte[] blob = blobs.getOrDefault(digest, new byte[0]);
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if (digest.equals(layerDigest) && layerBlobRequests.incrementAndGet() == 1 && interruptFirstLayerDownload) {
+                exchange.sendResponseHeaders(200, blob.length);
+                exchange.getResponseBody().write(blob, 0, blob.length / 2);
+                exchange.getResponseBody().flush();
+                exchange.close();
+            } else if (range != null) {
+                rangeRequests.add(range);
+                final int offset = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+                respond(exchange, 206, Arrays.copyOfRange(blob, offset, blob.length));
+            } else {
+                respond(exchange, blobs.containsKey(digest) ? 200 : 404, blob);
+            }
+        });
+        registry.start();
+        workingDir = TestUtils.createTempDirectory();
+        Mockito.when(config.getDockerRegistryDownloadThreadCount()).thenReturn(2);
+        Mockito.when(config.getDockerRegistryBlobStoreMaxSizeMb()).thenReturn(100L);
+        Mockito.when(programPaths.getHubDockerPgmDirPathHost()).thenReturn(workingDir.getAbsolutePath());
+    }
+
+    @After
+    public void tearDown() {
+        registryClient.close();
+        registry.stop(0);
+        TestUtils.deleteDirIfExists(workingDir);
+    }
+
+    @Test
+    public void testAcquire() throws IOException, IntegrationException {
+        final ImageTarContents imageTarContents = acquire(true);
+
+        assertEquals(1, imageTarContents.getLayerTars().size());
+        assertTrue(FileUtils.contentEquals(imageTarContents.getLayerTars().get(0), writeTempFile(layerTar)));
+        final File extractionDir = imageTarContents.getLayerTars().get(0).getParentFile().getParentFile();
+        final String manifestJson = FileUtils.readFileToString(new File(extractionDir, "manifest.json"), StandardCharsets.UTF_8);
+        assertTrue(manifestJson.contains(String.format("\"RepoTags\":[\"%s:3.7\"]", getImageRepo())));
+        assertTrue(new File(extractionDir, toHex(configDigest) + ".json").isFile());
+        assertTrue(new File(workingDir, "blobStore/sha256/" + toHex(layerDigest)).isFile());
+
+        assertTrue(imageTarContents.isDockerTarFileSaved());
+        final List<String> entryNames = new ArrayList<>();
+        try (TarArchiveInputStream tarInputStream = new TarArchiveInputStream(new FileInputStream(imageTarContents.getDockerTarFile()))) {
+            TarArchiveEntry entry;
+            while ((entry = tarInputStream.getNextTarEntry()) != null) {
+                entryNames.add(entry.getName());
+            }
+        }
+        assertEquals(3, entryNames.size());
+        assertTrue(entryNames.contains("manifest.json"));
+        assertEquals(configDigest, registryImageAcquirer.getImageConfigDigest(getImageRepo(), "3.7"));
+    }
+
+    @Test
+    public void testBlobsReusedFromStore() throws IOException, IntegrationException {
+        acquire(false);
+        final ImageTarContents imageTarContents = acquire(false);
+
+        assertEquals(1, layerBlobRequests.get());
+        assertTrue(FileUtils.contentEquals(imageTarContents.getLayerTars().get(0), writeTempFile(layerTar)));
+    }
+
+    @Test
+    public void testInterruptedDownloadResumed() throws IOException, IntegrationException {
+        interruptFirstLayerDownload = true;
+        final ImageTarContents imageTarContents = acquire(false);
+
+        assertEquals(2, layerBlobRequests.get());
+        assertEquals(1, rangeRequests.size());
+        assertTrue(rangeRequests.get(0).matches("bytes=[1-9][0-9]*-"));
+        assertTrue(FileUtils.contentEquals(imageTarContents.getLayerTars().get(0), writeTempFile(layerTar)));
+        assertFalse(new File(workingDir, "blobStore/sha256/" + toHex(layerDigest) + ".partial").exists());
+    }
+
+    @Test
+    public void testLayerDigestMismatch() throws IOException {
+        blobs.put(layerDigest, gzip(createLayerTar("etc/os-release", "ID=tampered")));
+        try {
+            acquire(false);
+            fail("Expected a digest mismatch");
+        } catch (final IntegrationException e) {
+            assertTrue(e.getMessage().startsWith("Digest mismatch"));
+        }
+        assertFalse(new File(workingDir, "blobStore/sha256/" + toHex(layerDigest)).exists());
+        assertFalse(new File(workingDir, "blobStore/sha256/" + toHex(layerDigest) + ".partial").exists());
+    }
+
+    private ImageTarContents acquire(final boolean saveImageTarFile) throws IOException, IntegrationException {
+        return registryImageAcquirer.acquire(getImageRepo(), "3.7", new File(workingDir, "target"), new File(workingDir, "working"), saveImageTarFile);
+    }
+
+    private String toHex(final String digest) {
+        return digest.substring("sha256:".length());
+    }
+
+    private String getImageRepo() {
+        return String.format("127.0.0.1:%d/library/alpine", registry.getAddress().getPort());
+    }
+
+    private String digest(final byte[] content) {
+        return "sha256:" + DigestUtils.sha256Hex(content);
+    }
+
+    private File writeTempFile(final byte[] content) throws IOException {
+        final File file = new File(workingDir, "expected.tar");
+        FileUtils.writeByteArrayToFile(file, content);
+        return file;
+    }
+
+    private byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)) {
+            gzipOutputStream.write(content);
+        }
+        return gzipped.toByteArray();
+    }
+
+    private byte[] createLayerTar(final String name, final String contents) throws IOException {
+        final ByteArrayOutputStream layerTarBytes = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(layerTarBytes)) {
+            final byte[] contentBytes = contents.getBytes(StandardCharsets.UTF_8);
+            final TarArchiveEntry entry = new TarArchiveEntry(name);
+            entry.setSize(contentBytes.length);
+            tarOutputStream.putArchiveEntry(entry);
+            tarOutputStream.write(contentBytes);
+            tarOutputStream.closeArchiveEntry();
+        }
+        return layerTarBytes.toByteArray();
+    }
+
+    private void respond(final HttpExchange exchange, final int statusCode, final byte[] body) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod()) || body.length == 0) {
+            exchange.sendResponseHeaders(statusCode, -1);
+        } else {
+            exchange.sendResponseHeaders(statusCode, body.length);
+            try (final OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+        exchange.close();
+    }
+}
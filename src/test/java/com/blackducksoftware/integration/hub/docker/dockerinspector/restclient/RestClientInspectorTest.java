@@ -0,0 +1,48 @@
+package com.blackducksoftware.integration.hub.docker.dockerinspector.restclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.bdio.BdioWriter;
+import com.blackducksoftware.integration.hub.bdio.SimpleBdioFactory;
+import com.blackducksoftware.integration.hub.bdio.graph.MutableDependencyGraph;
+import com.blackducksoftware.integration.hub.bdio.model.Forge;
+import com.blackducksoftware.integration.hub.bdio.model.SimpleBdioDocument;
+import com.blackducksoftware.integration.hub.bdio.model.externalid.ExternalId;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.imageinspector.lib.PackageManagerEnum;
+
+public class RestClientInspectorTest {
+
+    @Test
+    public void testDeriveOutputBdioFilename() throws IOException, IntegrationException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            final SimpleBdioFactory simpleBdioFactory = new SimpleBdioFactory();
+            final Forge forge = PackageManagerEnum.DPKG.getForge();
+            final MutableDependencyGraph dependencyGraph = simpleBdioFactory.createMutableDependencyGraph();
+            for (int i = 0; i < 100; i++) {
+                final String name = String.format("package%03d", i);
+                dependencyGraph.addChildToRoot(simpleBdioFactory.createDependency(name, "1.0", simpleBdioFactory.createArchitectureExternalId(forge, name, "1.0", "amd64")));
+            }
+            final ExternalId projectExternalId = simpleBdioFactory.createPathExternalId(forge, "test_1.0_var_lib_dpkg");
+            final SimpleBdioDocument simpleBdioDocument = simpleBdioFactory.createSimpleBdioDocument("test_1.0_var_lib_dpkg", "testProject", "testVersion", projectExternalId, dependencyGraph);
+            final File bdioFile = new File(workingDir, ".getbdio_test.tmp");
+            try (BdioWriter bdioWriter = simpleBdioFactory.createBdioWriter(new FileWriter(bdioFile))) {
+                simpleBdioFactory.writeSimpleBdioDocument(bdioWriter, simpleBdioDocument);
+            }
+
+            final String outputBdioFilename = new RestClientInspector().deriveOutputBdioFilename(bdioFile);
+
+            assertEquals(new BdioFilename("test_1.0_var_lib_dpkg", "testProject", "testVersion", forge.getName()).getBdioFilename(), outputBdioFilename);
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.blackducksoftware.integration.hub.docker.imageinspector.restclient;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,14 +18,18 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.InspectorImages;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.common.PhaseTimings;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.HubDockerClient;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.metrics.InspectorMetrics;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ContainerPaths;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ImageInspectorClientStartServices;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ImageInspectorServices;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.RestConnectionCreator;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.RestRequestor;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ServiceContainerPool;
 import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.response.SimpleResponse;
 import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
 import com.blackducksoftware.integration.hub.imageinspector.lib.OperatingSystemEnum;
@@ -60,6 +68,18 @@ public class IiClientContainersStartedAsNeededTest {
     @Mock
     private ContainerPaths containerPaths;
 
+    @Mock
+    private ProgramPaths programPaths;
+
+    @Mock
+    private ServiceContainerPool serviceContainerPool;
+
+    @Mock
+    private PhaseTimings phaseTimings;
+
+    @Mock
+    private InspectorMetrics inspectorMetrics;
+
     @Test
     public void test() throws IntegrationException, IOException {
         Mockito.when(config.isImageInspectorServiceStart()).thenReturn(true);
@@ -75,20 +95,29 @@ public class IiClientContainersStartedAsNeededTest {
         Mockito.when(hubDockerClient.getDockerClient()).thenReturn(dockerClient);
 
         final RestConnection restConnection = Mockito.mock(RestConnection.class);
-        Mockito.when(restConnectionCreator.createNonRedirectingConnection(Mockito.any(URI.class), Mockito.anyInt())).thenReturn(restConnection);
+        Mockito.when(restConnectionCreator.getNonRedirectingConnection(Mockito.any(URI.class), Mockito.anyInt())).thenReturn(restConnection);
 
         Mockito.when(restRequestor.executeSimpleGetRequest(Mockito.any(RestConnection.class), Mockito.any(URI.class), Mockito.anyString())).thenReturn("{\"status\":\"UP\"}");
         // Mockito.when(restRequestor.executeSimpleGetRequest(Mockito.any(RestConnection.class), Mockito.anyString(), Mockito.anyString())).thenReturn("testResponse");
-        final SimpleResponse response = new SimpleResponse(RestConstants.OK_200, null, "testResult");
+        final SimpleResponse response = new SimpleResponse(RestConstants.OK_200, null, null);
         Mockito.when(restRequestor.executeGetBdioRequest(Mockito.any(RestConnection.class), Mockito.any(URI.class), Mockito.anyString(), Mockito.anyString(),
-                Mockito.anyString(), Mockito.anyString(), Mockito.anyBoolean())).thenReturn(response);
+                Mockito.anyString(), Mockito.anyString(), Mockito.anyBoolean(), Mockito.any(File.class))).thenAnswer(invocation -> {
+                    FileUtils.write((File) invocation.getArguments()[7], "testResult", StandardCharsets.UTF_8);
+                    return response;
+                });
 
         Mockito.when(containerPaths.getContainerPathToOutputDir()).thenReturn("/opt/blackduck/hub-imageinspector-ws/shared/output");
         Mockito.when(inspectorImages.getInspectorImageName(Mockito.any(OperatingSystemEnum.class))).thenReturn("blackduck/hub-imageinspector-ws");
         Mockito.when(inspectorImages.getInspectorImageTag(Mockito.any(OperatingSystemEnum.class))).thenReturn("1.1.1");
 
         assertEquals(true, imageInspectorClientContainersStartedAsNeeded.isApplicable());
-        assertEquals("testResult", imageInspectorClientContainersStartedAsNeeded.getBdio("/tmp/t.tar", null, null, "/tmp/t.tar", "containerFileSystemFilename", true));
+        final File bdioFile = File.createTempFile("IiClientContainersStartedAsNeededTest", ".jsonld");
+        try {
+            final File returnedBdioFile = imageInspectorClientContainersStartedAsNeeded.getBdio("/tmp/t.tar", null, null, "/tmp/t.tar", "containerFileSystemFilename", true, bdioFile);
+            assertEquals("testResult", FileUtils.readFileToString(returnedBdioFile, StandardCharsets.UTF_8));
+        } finally {
+            FileUtils.deleteQuietly(bdioFile);
+        }
     }
 
 }
@@ -0,0 +1,43 @@
+package com.blackducksoftware.integration.hub.docker.imageinspector.restclient;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.RestConnectionCreator;
+import com.blackducksoftware.integration.rest.connection.RestConnection;
+
+@RunWith(SpringRunner.class)
+public class RestConnectionCreatorTest {
+
+    @InjectMocks
+    private RestConnectionCreator restConnectionCreator;
+
+    @Mock
+    private Config config;
+
+    @Test
+    public void testConnectionsShared() throws Exception {
+        Mockito.when(config.getImageInspectorServiceConnectionsPerRoute()).thenReturn(4);
+        try {
+            final URI alpineUri = new URI("http://localhost:9000");
+            final RestConnection alpineConnection = restConnectionCreator.getNonRedirectingConnection(alpineUri, 120);
+
+            assertSame(alpineConnection, restConnectionCreator.getNonRedirectingConnection(new URI("http://localhost:9000"), 120));
+            assertNotSame(alpineConnection, restConnectionCreator.getNonRedirectingConnection(new URI("http://localhost:9002"), 120));
+            assertNotSame(alpineConnection, restConnectionCreator.getNonRedirectingConnection(alpineUri, 60));
+            assertNotSame(alpineConnection, restConnectionCreator.getRedirectingConnection(alpineUri, 120));
+        } finally {
+            restConnectionCreator.close();
+        }
+    }
+}
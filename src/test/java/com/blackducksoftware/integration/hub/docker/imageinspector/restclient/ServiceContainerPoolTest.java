@@ -0,0 +1,67 @@
+package com.blackducksoftware.integration.hub.docker.imageinspector.restclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.TestUtils;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.Config;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.config.ProgramPaths;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.dockerclient.DockerClientManager;
+import com.blackducksoftware.integration.hub.docker.dockerinspector.restclient.ServiceContainerPool;
+import com.blackducksoftware.integration.hub.imageinspector.api.ImageInspectorOsEnum;
+import com.github.dockerjava.api.model.Container;
+
+@RunWith(SpringRunner.class)
+public class ServiceContainerPoolTest {
+
+    @InjectMocks
+    private ServiceContainerPool serviceContainerPool;
+
+    @Mock
+    private Config config;
+
+    @Mock
+    private ProgramPaths programPaths;
+
+    @Mock
+    private DockerClientManager dockerClientManager;
+
+    @Test
+    public void testEvictIdleContainers() throws IntegrationException, IOException {
+        final File workingDir = TestUtils.createTempDirectory();
+        try {
+            Mockito.when(programPaths.getHubDockerPgmDirPathHost()).thenReturn(workingDir.getAbsolutePath());
+            Mockito.when(config.getImageInspectorServicePoolIdleMinutes()).thenReturn(60L);
+            final long twoHoursAgoSeconds = System.currentTimeMillis() / 1000L - 2L * 60L * 60L;
+            final Map<ImageInspectorOsEnum, Container> pooledContainers = new HashMap<>();
+            pooledContainers.put(ImageInspectorOsEnum.ALPINE, mockContainer("alpineContainer", twoHoursAgoSeconds));
+            pooledContainers.put(ImageInspectorOsEnum.UBUNTU, mockContainer("ubuntuContainer", twoHoursAgoSeconds));
+            Mockito.when(dockerClientManager.getPooledServiceContainers()).thenReturn(pooledContainers);
+
+            serviceContainerPool.recordUse(ImageInspectorOsEnum.UBUNTU);
+            serviceContainerPool.evictIdleContainers();
+
+            Mockito.verify(dockerClientManager).stopRemoveContainer("alpineContainer");
+            Mockito.verify(dockerClientManager, Mockito.never()).stopRemoveContainer("ubuntuContainer");
+        } finally {
+            TestUtils.deleteDirIfExists(workingDir);
+        }
+    }
+
+    private Container mockContainer(final String id, final long createdSeconds) {
+        final Container container = Mockito.mock(Container.class);
+        Mockito.when(container.getId()).thenReturn(id);
+        Mockito.when(container.getCreated()).thenReturn(createdSeconds);
+        return container;
+    }
+}